@@ -0,0 +1,22 @@
+#!/bin/bash
+
+# Builds the simulator and assembler (without the JavaFX GUI) plus the
+# benchmarks in src/bench/java, then runs them. Arguments go to BenchRunner,
+# e.g. ./run_bench.sh CpuStep -wi 3 -i 5 -rf bench.csv
+
+mkdir -p temp/bench
+
+javac -d temp/bench \
+    src/main/java/com/gwu/simulator/*.java \
+    src/main/java/com/gwu/assembler/Assembler.java \
+    src/main/java/com/gwu/assembler/Instruction.java \
+    src/main/java/com/gwu/assembler/Opcode.java \
+    $(find src/bench/java -name '*.java') || exit 1
+
+java -cp temp/bench com.gwu.bench.BenchRunner "$@"
+status=$?
+
+# Clean up
+rm -rf temp
+
+exit $status
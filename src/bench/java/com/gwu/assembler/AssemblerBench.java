@@ -0,0 +1,57 @@
+package com.gwu.assembler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.gwu.bench.Benchmark;
+import com.gwu.bench.Param;
+import com.gwu.bench.Setup;
+
+/**
+ * Both assembler passes over a generated source of {@code lines} lines:
+ * a mix of labels, forward and backward symbolic references, memory,
+ * register, shift, I/O and DATA lines, and comments (about {@code lines}
+ * lines; the last block is completed).
+ */
+public class AssemblerBench {
+    @Param({"1000", "10000", "100000"})
+    public int lines;
+
+    private List<String> source;
+    private Assembler assembler;
+
+    @Setup
+    public void setup() {
+        source = generate(lines);
+        assembler = new Assembler();
+    }
+
+    @Benchmark
+    public int assemble() {
+        return assembler.assemble(source).size();
+    }
+
+    static List<String> generate(int count) {
+        List<String> out = new ArrayList<>(count);
+        out.add("LOC 6");
+        int n = 0;
+        while (out.size() + 1 < count) {
+            String here = "L" + n;
+            String next = "L" + (n + 1);
+            out.add(here + ": LDR " + (n & 3) + ",0," + (n & 31) + " ; load");
+            out.add("AMR 1,0," + ((n * 7) & 31));
+            out.add("STR 2,1," + ((n * 3) & 31) + ",1");
+            out.add("AIR 3," + (n & 31));
+            out.add("SRC 0," + (n & 15) + ",1,0");
+            out.add("TRR 0,1");
+            out.add("JZ 0,0," + next + "   ; forward reference");
+            out.add("LDX 1," + here);
+            out.add("; " + here + " done");
+            out.add("OUT 2,1");
+            out.add("DATA " + here);
+            n++;
+        }
+        out.add("L" + n + ": HLT");
+        return out;
+    }
+}
@@ -0,0 +1,231 @@
+package com.gwu.bench;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the benchmark suite in the style of JMH's average-time mode: for every
+ * benchmark and parameter combination, a number of timed warmup iterations,
+ * then measured iterations, reporting nanoseconds per operation with a 99%
+ * confidence interval. Needs nothing beyond the JDK and the simulator
+ * classes (no JavaFX), so it runs headless.
+ *
+ * Command line usage:
+ *   java -cp build/bench com.gwu.bench.BenchRunner [regex] [options]
+ *     regex                    only benchmarks whose Class.method name matches
+ *     -wi <n>                  warmup iterations (default 3)
+ *     -i <n>                   measured iterations (default 5)
+ *     -r <ms>                  time per iteration (default 1000)
+ *     -rf <file>               also write the results as CSV
+ *     -l                       list the benchmarks and exit
+ * Run from the repository root; some benchmarks load Program1.txt and resources/*.asm.
+ */
+public class BenchRunner {
+    // Benchmark classes, in report order
+    private static final String[] BENCHMARKS = {
+        "com.gwu.simulator.CpuStepBench",
+        "com.gwu.simulator.MemoryBench",
+        "com.gwu.simulator.CacheBench",
+        "com.gwu.simulator.ProgramBench",
+        "com.gwu.assembler.AssemblerBench",
+    };
+    private static final double Z_99 = 2.576;
+
+    private int warmupIterations = 3;
+    private int iterations = 5;
+    private long iterationNanos = 1_000_000_000L;
+
+    /** One measured benchmark and parameter combination. */
+    public static final class Result {
+        public final String name;
+        public final String params;
+        public final double score; // ns/op
+        public final double error; // half-width of the 99% interval
+
+        Result(String name, String params, double score, double error) {
+            this.name = name;
+            this.params = params;
+            this.score = score;
+            this.error = error;
+        }
+    }
+
+    public static void main(String[] args) throws Throwable {
+        BenchRunner runner = new BenchRunner();
+        Pattern filter = Pattern.compile(".*");
+        String csvPath = null;
+        boolean listOnly = false;
+        for (int i = 0; i < args.length; i++) {
+            String value = (i + 1 < args.length) ? args[i + 1] : null;
+            switch (args[i]) {
+                case "-wi" -> { runner.warmupIterations = Integer.parseInt(value); i++; }
+                case "-i" -> { runner.iterations = Integer.parseInt(value); i++; }
+                case "-r" -> { runner.iterationNanos = Long.parseLong(value) * 1_000_000L; i++; }
+                case "-rf" -> { csvPath = value; i++; }
+                case "-l" -> listOnly = true;
+                default -> filter = Pattern.compile(args[i]);
+            }
+        }
+
+        List<Result> results = new ArrayList<>();
+        for (String className : BENCHMARKS) {
+            Class<?> type = Class.forName(className);
+            for (Method method : benchmarkMethods(type)) {
+                String name = type.getSimpleName() + "." + method.getName();
+                if (!filter.matcher(name).find()) {
+                    continue;
+                }
+                if (listOnly) {
+                    System.out.println(name);
+                    continue;
+                }
+                for (String[] combination : parameterCombinations(type)) {
+                    Result result = runner.run(type, method, combination);
+                    results.add(result);
+                    System.out.printf("%-45s %-28s %14.3f +- %10.3f  ns/op%n",
+                            result.name, result.params, result.score, result.error);
+                }
+            }
+        }
+        if (csvPath != null) {
+            writeCsv(csvPath, results);
+        }
+    }
+
+    /** Measures one benchmark method for one parameter combination. */
+    Result run(Class<?> type, Method method, String[] combination) throws Throwable {
+        Object instance = type.getDeclaredConstructor().newInstance();
+        String params = applyParameters(instance, combination);
+        for (Method setup : type.getMethods()) {
+            if (setup.isAnnotationPresent(Setup.class)) {
+                setup.invoke(instance);
+            }
+        }
+
+        MethodHandle handle = MethodHandles.publicLookup().unreflect(method).bindTo(instance);
+        boolean takesBlackhole = method.getParameterCount() == 1;
+        boolean returnsValue = method.getReturnType() != void.class;
+        OperationsPerInvocation opi = method.getAnnotation(OperationsPerInvocation.class);
+        int opsPerCall = opi != null ? opi.value() : 1;
+        Blackhole blackhole = new Blackhole();
+
+        for (int k = 0; k < warmupIterations; k++) {
+            iteration(handle, takesBlackhole, returnsValue, blackhole);
+        }
+        double[] scores = new double[iterations];
+        for (int k = 0; k < iterations; k++) {
+            long[] timing = iteration(handle, takesBlackhole, returnsValue, blackhole);
+            scores[k] = (double) timing[0] / (timing[1] * (double) opsPerCall);
+        }
+
+        double mean = Arrays.stream(scores).average().orElse(0);
+        double variance = 0;
+        for (double score : scores) {
+            variance += (score - mean) * (score - mean);
+        }
+        double error = iterations > 1 ? Z_99 * Math.sqrt(variance / (iterations - 1)) / Math.sqrt(iterations) : 0;
+        return new Result(type.getSimpleName() + "." + method.getName(), params, mean, error);
+    }
+
+    /**
+     * Calls the method back to back for one iteration time.
+     * @return {elapsed nanoseconds, calls}
+     */
+    private long[] iteration(MethodHandle handle, boolean takesBlackhole, boolean returnsValue,
+                             Blackhole blackhole) throws Throwable {
+        long calls = 0;
+        long start = System.nanoTime();
+        long deadline = start + iterationNanos;
+        long now;
+        do {
+            Object value = takesBlackhole ? handle.invoke(blackhole) : handle.invoke();
+            if (returnsValue) {
+                blackhole.consume(value);
+            }
+            calls++;
+            now = System.nanoTime();
+        } while (now < deadline);
+        blackhole.publish();
+        return new long[] {now - start, calls};
+    }
+
+    private static List<Method> benchmarkMethods(Class<?> type) {
+        List<Method> methods = new ArrayList<>();
+        for (Method method : type.getMethods()) {
+            if (method.isAnnotationPresent(Benchmark.class)) {
+                methods.add(method);
+            }
+        }
+        methods.sort(Comparator.comparing(Method::getName));
+        return methods;
+    }
+
+    /** Every combination of @Param values, one value per @Param field (in field name order). */
+    private static List<String[]> parameterCombinations(Class<?> type) {
+        List<Field> fields = paramFields(type);
+        List<String[]> combinations = new ArrayList<>();
+        combinations.add(new String[fields.size()]);
+        for (int f = 0; f < fields.size(); f++) {
+            List<String[]> expanded = new ArrayList<>();
+            for (String[] partial : combinations) {
+                for (String value : fields.get(f).getAnnotation(Param.class).value()) {
+                    String[] next = partial.clone();
+                    next[f] = value;
+                    expanded.add(next);
+                }
+            }
+            combinations = expanded;
+        }
+        return combinations;
+    }
+
+    private static List<Field> paramFields(Class<?> type) {
+        List<Field> fields = new ArrayList<>();
+        for (Field field : type.getFields()) {
+            if (field.isAnnotationPresent(Param.class)) {
+                fields.add(field);
+            }
+        }
+        fields.sort(Comparator.comparing(Field::getName));
+        return fields;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static String applyParameters(Object instance, String[] combination) throws IllegalAccessException {
+        List<Field> fields = paramFields(instance.getClass());
+        StringBuilder text = new StringBuilder();
+        for (int f = 0; f < fields.size(); f++) {
+            Field field = fields.get(f);
+            String value = combination[f];
+            Class<?> type = field.getType();
+            if (type == int.class) {
+                field.setInt(instance, Integer.parseInt(value));
+            } else if (type.isEnum()) {
+                field.set(instance, Enum.valueOf((Class<Enum>) type, value));
+            } else {
+                field.set(instance, value);
+            }
+            text.append(text.length() == 0 ? "" : ",").append(field.getName()).append('=').append(value);
+        }
+        return text.toString();
+    }
+
+    private static void writeCsv(String path, List<Result> results) throws IOException {
+        try (PrintWriter out = new PrintWriter(new FileWriter(path))) {
+            out.println("\"Benchmark\",\"Params\",\"Score\",\"Score Error (99%)\",\"Unit\"");
+            for (Result r : results) {
+                out.printf("\"%s\",\"%s\",%.3f,%.3f,\"ns/op\"%n", r.name, r.params, r.score, r.error);
+            }
+        }
+    }
+}
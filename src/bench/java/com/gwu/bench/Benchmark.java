@@ -0,0 +1,15 @@
+package com.gwu.bench;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a benchmark method: public, no arguments or a single {@link Blackhole}.
+ * A non-void result is passed to the blackhole so the work cannot be optimized away.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Benchmark {
+}
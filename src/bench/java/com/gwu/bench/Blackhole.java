@@ -0,0 +1,35 @@
+package com.gwu.bench;
+
+/**
+ * Consumes benchmark results so the JIT cannot prove them unused and
+ * remove the work that produced them.
+ */
+public final class Blackhole {
+    private int intSink;
+    private long longSink;
+    private Object objectSink;
+    private volatile int published;
+
+    public void consume(int value) {
+        intSink ^= value;
+    }
+
+    public void consume(long value) {
+        longSink ^= value;
+    }
+
+    public void consume(boolean value) {
+        intSink ^= value ? 1 : 0;
+    }
+
+    public void consume(Object value) {
+        if (value != null && (System.identityHashCode(value) & 0xFFFF) == 0xFFFF) {
+            objectSink = value;
+        }
+    }
+
+    /** Makes everything consumed so far observable; called by the runner after each iteration. */
+    void publish() {
+        published = intSink ^ (int) longSink ^ (objectSink != null ? 1 : 0);
+    }
+}
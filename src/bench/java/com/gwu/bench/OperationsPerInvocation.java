@@ -0,0 +1,17 @@
+package com.gwu.bench;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Number of operations one call of the benchmark method performs. Methods
+ * that time a few nanoseconds of work loop internally so the reflective call
+ * does not dominate; scores are reported per operation.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface OperationsPerInvocation {
+    int value();
+}
@@ -0,0 +1,16 @@
+package com.gwu.bench;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Values for a public String, int or enum field. Every benchmark in the
+ * class runs once per combination of parameter values.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Param {
+    String[] value();
+}
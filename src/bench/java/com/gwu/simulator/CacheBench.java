@@ -0,0 +1,79 @@
+package com.gwu.simulator;
+
+import java.util.Random;
+
+import com.gwu.bench.Benchmark;
+import com.gwu.bench.OperationsPerInvocation;
+import com.gwu.bench.Param;
+import com.gwu.bench.Setup;
+
+/**
+ * {@link Cache#lookup} and {@link Cache#write} at a given hit ratio. The cache
+ * is filled with the hot words first; lookups do not allocate, so they hit
+ * exactly {@code hitPercent} of the time. Write misses do allocate and can
+ * evict hot words, so writes hit less often than that. The cost per access
+ * should not depend on {@code lines}; write misses also measure the
+ * replacement {@code policy}.
+ */
+public class CacheBench {
+    static final int ACCESSES = 1024;
+    static final int HOT_WORDS = 8;
+
+    @Param({"0", "50", "90", "100"})
+    public int hitPercent;
+
+    @Param({"16", "256", "2048"})
+    public int lines;
+
+    @Param({"fifo", "lru", "plru", "random"})
+    public String policy;
+
+    private Cache cache;
+    private final MemoryBackend memory = MemoryBackend.create("heap", 2048);
+    private int[] addresses;
+
+    @Setup
+    public void setup() {
+        cache = new Cache(1, lines, 1, policy);
+        for (int a = 0; a < HOT_WORDS; a++) {
+            cache.write(a, (short) a, memory);
+        }
+        addresses = accessPattern(ACCESSES, hitPercent, 2048, new Random(6461));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public int read() {
+        int hits = 0;
+        for (int address : addresses) {
+            if (cache.lookup(address) != Cache.MISS) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public int write() {
+        int last = 0;
+        for (int k = 0; k < addresses.length; k++) {
+            last = cache.write(addresses[k], (short) k, memory);
+        }
+        return last;
+    }
+
+    /**
+     * Addresses where {@code hotPercent}% fall in the first HOT_WORDS words
+     * and the rest are spread over the other words of a {@code size}-word memory.
+     */
+    static int[] accessPattern(int count, int hotPercent, int size, Random random) {
+        int[] addresses = new int[count];
+        for (int k = 0; k < count; k++) {
+            addresses[k] = random.nextInt(100) < hotPercent
+                    ? random.nextInt(HOT_WORDS)
+                    : HOT_WORDS + random.nextInt(size - HOT_WORDS);
+        }
+        return addresses;
+    }
+}
@@ -0,0 +1,120 @@
+package com.gwu.simulator;
+
+import com.gwu.bench.Benchmark;
+import com.gwu.bench.OperationsPerInvocation;
+import com.gwu.bench.Param;
+import com.gwu.bench.Setup;
+
+/**
+ * {@link CPU#step()} on loops made of one instruction class each. Every loop
+ * ends with an indirect JMA back to its start, so it runs forever.
+ */
+public class CpuStepBench {
+    static final int STEPS = 1024;
+    static final int START = 0100;
+
+    public enum Mix { LOAD_STORE, ALU, SHIFT_ROTATE, JUMPS }
+
+    @Param({"LOAD_STORE", "ALU", "SHIFT_ROTATE", "JUMPS"})
+    public Mix mix;
+
+    private CPU cpu;
+
+    @Setup
+    public void setup() {
+        Memory memory = new Memory();
+        memory.setValueAt(020, (short) START); // loop pointer
+        memory.setValueAt(021, (short) 7);
+        memory.setValueAt(022, (short) 3);
+        memory.setValueAt(023, (short) 01000);
+        if (mix == Mix.JUMPS) { // jump targets
+            int[] targets = {START, START + 3, START + 4, START + 5, START + 010};
+            for (int k = 0; k < targets.length; k++) {
+                memory.setValueAt(024 + k, (short) targets[k]);
+            }
+        }
+        int[] program = program(mix);
+        for (int k = 0; k < program.length; k++) {
+            memory.setValueAt(START + k, (short) program[k]);
+        }
+        memory.getCache().clear();
+        cpu = new CPU(memory);
+        cpu.setPC(START);
+        for (int k = 0; k < 100_000; k++) {
+            cpu.step();
+        }
+        if (cpu.isHalted()) {
+            throw new IllegalStateException(mix + " loop halted with MFR " + cpu.getMFR());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STEPS)
+    public int step() {
+        for (int k = 0; k < STEPS; k++) {
+            cpu.step();
+        }
+        return cpu.getGPR(0);
+    }
+
+    /** Loop body for a mix, starting at START and ending in JMA @020. */
+    static int[] program(Mix mix) {
+        switch (mix) {
+            case LOAD_STORE:
+                return new int[] {
+                    word(1, 0, 0, 0, 021),   // LDR R0,021
+                    word(2, 0, 0, 0, 030),   // STR R0,030
+                    word(1, 1, 0, 0, 022),   // LDR R1,022
+                    word(2, 1, 0, 0, 031),   // STR R1,031
+                    word(3, 2, 0, 0, 023),   // LDA R2,023
+                    word(33, 0, 1, 0, 022),  // LDX X1,022
+                    word(34, 0, 1, 0, 032),  // STX X1,032
+                    word(1, 3, 0, 1, 020),   // LDR R3,@020
+                    word(13, 0, 0, 1, 020),  // JMA @020
+                };
+            case ALU:
+                return new int[] {
+                    word(4, 0, 0, 0, 021),   // AMR R0,021
+                    word(5, 1, 0, 0, 022),   // SMR R1,022
+                    word(6, 2, 0, 0, 5),     // AIR R2,5
+                    word(7, 3, 0, 0, 3),     // SIR R3,3
+                    word(20, 0, 2, 0, 0),    // MLT R0,R2
+                    word(22, 0, 1, 0, 0),    // TRR R0,R1
+                    word(23, 2, 3, 0, 0),    // AND R2,R3
+                    word(24, 1, 2, 0, 0),    // ORR R1,R2
+                    word(25, 3, 0, 0, 0),    // NOT R3
+                    word(1, 3, 0, 0, 021),   // LDR R3,021
+                    word(21, 0, 3, 0, 0),    // DVD R0,R3
+                    word(13, 0, 0, 1, 020),  // JMA @020
+                };
+            case SHIFT_ROTATE:
+                return new int[] {
+                    word(1, 0, 0, 0, 023),   // LDR R0,023
+                    word(31, 0, 0, 0, 3),    // SRC R0,3,L,L
+                    word(31, 0, 2, 0, 2),    // SRC R0,2,R,L
+                    word(31, 0, 3, 0, 1),    // SRC R0,1,R,A
+                    word(32, 0, 0, 0, 4),    // RRC R0,4,L
+                    word(32, 0, 2, 0, 5),    // RRC R0,5,R
+                    word(31, 1, 0, 0, 7),    // SRC R1,7,L,L
+                    word(32, 1, 2, 0, 15),   // RRC R1,15,R
+                    word(13, 0, 0, 1, 020),  // JMA @020
+                };
+            default: // JUMPS
+                return new int[] {
+                    word(1, 0, 0, 0, 021),   // 100 LDR R0,021
+                    word(10, 0, 0, 1, 024),  // 101 JZ R0,@024 (not taken)
+                    word(11, 0, 0, 1, 025),  // 102 JNE R0,@025 (taken, to 103)
+                    word(12, 2, 0, 1, 026),  // 103 JCC 2,@026 (to 104 either way)
+                    word(1, 1, 0, 0, 022),   // 104 LDR R1,022
+                    word(16, 1, 0, 1, 027),  // 105 SOB R1,@027 (to 105 while R1 > 0)
+                    word(14, 0, 0, 1, 030),  // 106 JSR @030
+                    word(13, 0, 0, 1, 020),  // 107 JMA @020
+                    word(15, 0, 0, 0, 0),    // 110 RFS 0
+                };
+        }
+    }
+
+    static int word(int opcode, int r, int ix, int i, int address) {
+        return opcode << 10 | r << 8 | ix << 6 | i << 5 | address;
+    }
+}
@@ -0,0 +1,52 @@
+package com.gwu.simulator;
+
+import java.util.Random;
+
+import com.gwu.bench.Benchmark;
+import com.gwu.bench.OperationsPerInvocation;
+import com.gwu.bench.Param;
+import com.gwu.bench.Setup;
+
+/**
+ * {@link Memory#getValueAt} and {@link Memory#setValueAt} through the cache.
+ * {@code hotPercent} of the accesses go to an 8-word working set that fits
+ * in the cache, the rest anywhere in memory; misses also evict hot words, so
+ * the real hit ratio is somewhat lower. {@code cache} is the geometry
+ * (sets:ways:words per block).
+ */
+public class MemoryBench {
+    static final int ACCESSES = 1024;
+
+    @Param({"0", "50", "90", "100"})
+    public int hotPercent;
+
+    @Param({"1:16:1", "4:4:1", "4:2:4"})
+    public String cache;
+
+    private Memory memory;
+    private int[] addresses;
+
+    @Setup
+    public void setup() {
+        memory = new Memory(Cache.parse(cache));
+        addresses = CacheBench.accessPattern(ACCESSES, hotPercent, memory.getSize(), new Random(6461));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public int getValueAt() {
+        int sum = 0;
+        for (int address : addresses) {
+            sum += memory.getValueAt(address);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public void setValueAt() {
+        for (int k = 0; k < addresses.length; k++) {
+            memory.setValueAt(addresses[k], (short) k);
+        }
+    }
+}
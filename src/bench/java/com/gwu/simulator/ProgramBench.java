@@ -0,0 +1,93 @@
+package com.gwu.simulator;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import com.gwu.assembler.Assembler;
+import com.gwu.bench.Benchmark;
+import com.gwu.bench.Param;
+import com.gwu.bench.Setup;
+
+/**
+ * A whole program run, end to end: reset, load, then execute until HLT (or
+ * the instruction budget) on each engine. Program1.txt reads
+ * test/program1_input.txt; the resources/*.asm examples are assembled once
+ * in setup. Printer output is discarded.
+ */
+public class ProgramBench {
+    static final long BUDGET = 100_000;
+    static final String INPUT = "test/program1_input.txt";
+
+    @Param({"Program1.txt", "resources/IO.asm", "resources/MR_LS.asm", "resources/RM_RR_AL.asm",
+            "resources/reg_to_reg.asm", "resources/sample.asm", "resources/shift_rotate.asm"})
+    public String program;
+
+    @Param({"INTERPRETER", "BLOCK", "JIT"})
+    public EngineType engine;
+
+    private Memory memory;
+    private CPU cpu;
+    private LoadImage image;
+    private int entry;
+    private String input;
+
+    @Setup
+    public void setup() throws IOException {
+        memory = new Memory();
+        if (program.endsWith(".asm")) {
+            List<String> lines = Files.readAllLines(Path.of(program));
+            Map<Integer, Integer> code = new Assembler().assemble(lines);
+            Path load = Files.createTempFile("bench", ".txt");
+            StringBuilder text = new StringBuilder();
+            code.forEach((address, value) -> text.append(String.format("%06o %06o%n", address, value & 0xFFFF)));
+            Files.writeString(load, text);
+            image = LoadImage.read(load.toString(), memory.getSize());
+            Files.delete(load);
+            entry = entryPoint(lines);
+        } else {
+            image = LoadImage.read(program, memory.getSize());
+            entry = 0100;
+        }
+        input = Files.readString(Path.of(INPUT));
+        cpu = new CPU(memory);
+        cpu.setEngine(engine);
+        cpu.setPrinter(new BufferedPrinter((text, offset, length) -> { }));
+    }
+
+    @Benchmark
+    public long run() {
+        memory.reset();
+        memory.load(image);
+        cpu.reset();
+        cpu.setPC(entry);
+        cpu.setConsoleInputSupplier(new StreamConsoleInput(new StringReader(input)));
+        long executed = cpu.execute(BUDGET);
+        cpu.flushOutput();
+        return executed;
+    }
+
+    /** Address of the first instruction that is not DATA (LOC operands are decimal, as in the assembler). */
+    static int entryPoint(List<String> lines) {
+        int location = 0;
+        for (String raw : lines) {
+            String line = raw.contains(";") ? raw.substring(0, raw.indexOf(';')) : raw;
+            line = line.substring(line.indexOf(':') + 1).trim();
+            if (line.isEmpty() || raw.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\\s+");
+            if (parts[0].equalsIgnoreCase("LOC")) {
+                location = Integer.parseInt(parts[1]);
+            } else if (parts[0].equalsIgnoreCase("DATA")) {
+                location++;
+            } else {
+                return location;
+            }
+        }
+        return 0;
+    }
+}
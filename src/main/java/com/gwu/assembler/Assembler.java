@@ -21,6 +21,20 @@ public class Assembler {
         }
     }
 
+    /**
+     * Assembles source lines in memory (both passes, no files written).
+     * Nothing from an earlier call is kept, even if this one fails.
+     * @return Machine code by address, in source order (a view, replaced by the next call)
+     */
+    public Map<Integer, Integer> assemble(List<String> lines) {
+        symbolTable.clear();
+        memory.clear();
+        listingEntries.clear();
+        pass1(lines);
+        pass2(lines);
+        return Collections.unmodifiableMap(memory);
+    }
+
     // -------- Pass 1: Build Symbol Table --------
     private void pass1(List<String> lines) {
         locationCounter = 0;
@@ -357,8 +371,7 @@ public class Assembler {
         }
 
         Assembler assembler = new Assembler();
-        assembler.pass1(lines);
-        assembler.pass2(lines);
+        assembler.assemble(lines);
 
         assembler.writeOutputFiles(listingFileName, loadFileName, lines);
         System.out.println("Assembly completed! Check resources -> output");
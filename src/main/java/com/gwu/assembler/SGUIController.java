@@ -1,26 +1,45 @@
 package com.gwu.assembler;
 
 import java.io.IOException;
-import java.util.ArrayDeque;
-import java.util.Deque;
-import java.util.function.Consumer;
+import java.util.function.BiConsumer;
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 
+import com.gwu.simulator.Breakpoints;
+import com.gwu.simulator.BufferedPrinter;
+import com.gwu.simulator.Cache;
 import com.gwu.simulator.CPU;
+import com.gwu.simulator.InputChannel;
 import com.gwu.simulator.Memory;
-import com.gwu.simulator.Cache.CacheLine;
+import com.gwu.simulator.MemoryBackend;
+import com.gwu.simulator.MachineDriver;
+import com.gwu.simulator.MachineSnapshot;
+import com.gwu.simulator.AsyncTraceSink;
+import com.gwu.simulator.TextTracer;
+import com.gwu.simulator.TraceLevel;
+import com.gwu.simulator.WriteMode;
 
 public class SGUIController {
-    private CPU cpu;
-    private Memory memory;
+    // Displays are refreshed from the latest snapshot at most this often (30 Hz)
+    private static final long REFRESH_INTERVAL_NANOS = 1_000_000_000L / 30;
+    // The printer pane keeps only the most recent output
+    private static final int MAX_PRINTER_CHARS = 64 * 1024;
+    // Tail of printer text kept for the halt summary
+    private static final int PRINTER_TAIL_CHARS = 1024;
+
+    // The CPU and Memory belong to the driver's execution thread; the UI only
+    // posts commands to it and reads the snapshots it publishes.
+    private MachineDriver driver;
+    private MachineSnapshot shown; // snapshot currently on screen
     private StringBuilder printerBuffer = new StringBuilder();
-    // FIFO queue for console input values (octal words)
-    private final Deque<Integer> consoleInputQueue = new ArrayDeque<>();
+    // Console keyboard device: filled by the FX thread, drained by the CPU
+    private final InputChannel consoleInputChannel = new InputChannel(256);
     // Track input flow per run
-    private int inputsConsumedThisRun = 0;
+    private long inputsTakenBeforeRun = 0;
     private boolean waitingForInputAnnounced = false;
+    private boolean breakAnnounced = false;
     // Print a labeled summary once per run when CPU halts
     private boolean summaryPrinted = false;
 
@@ -38,18 +57,59 @@ public class SGUIController {
     @FXML private Button ixr1Btn, ixr2Btn, ixr3Btn;
     @FXML private Button pcBtn, marBtn, mbrBtn, irBtn;
     @FXML private TextArea cacheContent;
+    private boolean splitCache; // the cache pane shows the L1 data cache
 
     @FXML
     public void initialize() {
-        memory = new Memory();
-        cpu = new CPU(memory);
+        // Cache geometry, e.g. -Dsim.cache=4:2:4 (sets:ways:words per block), or split
+        // with -Dsim.l1i=... -Dsim.l1d=... and an L2 with -Dsim.l2=...; the pane shows the (L1 data) cache.
+        // -Dsim.memory=4096 sets the memory size in words, -Dsim.memoryBackend=offheap keeps it off the heap
+        MemoryBackend backend = MemoryBackend.create(System.getProperty("sim.memoryBackend", "heap"),
+                Integer.parseInt(System.getProperty("sim.memory", String.valueOf(Memory.DEFAULT_SIZE))));
+        Memory memory = Memory.withCaches(System.getProperty("sim.cache"), System.getProperty("sim.l1i"),
+                System.getProperty("sim.l1d"), System.getProperty("sim.l2"), backend);
+        splitCache = memory.isSplit();
+        // -Dsim.write=back makes the data cache write-back; dirty lines are marked with *
+        memory.setWriteMode(WriteMode.valueOf("WRITE_" + System.getProperty("sim.write", "through").toUpperCase()));
+        // -Dsim.prefetch=next:2 or stride adds a prefetcher in front of the data cache
+        memory.setPrefetcher(System.getProperty("sim.prefetch", "none"));
+        CPU cpu = new CPU(memory);
         // Wire UI I/O to CPU
-        cpu.setConsoleInputSupplier(this::readFromConsole);
-        cpu.setPrinterConsumer(this::printToOutput);
+        cpu.setPrinter(new BufferedPrinter(this::printBatch));
+        // Instruction trace to stdout, off unless started with -Dsim.trace=opcode|registers
+        TraceLevel traceLevel = TraceLevel.valueOf(System.getProperty("sim.trace", "off").toUpperCase());
+        if (traceLevel != TraceLevel.OFF) {
+            cpu.setTracer(new TextTracer(traceLevel, new AsyncTraceSink(System.out)));
+        }
+        // Breakpoints, e.g. -Dsim.break=120,134:R1==5 -Dsim.watch=500-510 -Dsim.watchRead=600 (octal)
+        Breakpoints breakpoints = new Breakpoints();
+        for (String spec : System.getProperty("sim.break", "").split(",")) {
+            if (!spec.isBlank()) breakpoints.addBreakpoint(spec);
+        }
+        for (String range : System.getProperty("sim.watch", "").split(",")) {
+            if (!range.isBlank()) breakpoints.addWatchpoint(Breakpoints.Kind.WRITE, range);
+        }
+        for (String range : System.getProperty("sim.watchRead", "").split(",")) {
+            if (!range.isBlank()) breakpoints.addWatchpoint(Breakpoints.Kind.READ, range);
+        }
+        if (breakpoints.getCount() > 0) {
+            cpu.setBreakpoints(breakpoints);
+        }
+        driver = new MachineDriver(cpu, memory, consoleInputChannel);
         // No table; cache content shown in a text area
         setupListeners();
         setupIPLProgram();
-        updateDisplays();
+        new AnimationTimer() {
+            private long lastRefresh;
+
+            @Override
+            public void handle(long now) {
+                if (now - lastRefresh >= REFRESH_INTERVAL_NANOS) {
+                    lastRefresh = now;
+                    refreshDisplays();
+                }
+            }
+        }.start();
     }
 
     private void setupListeners() {
@@ -68,21 +128,21 @@ public class SGUIController {
         consoleInput.setOnAction(e -> handleConsoleInput());
 
         // GPR button handlers
-        gpr0Btn.setOnAction(e -> updateRegister(val -> cpu.setGPR(0, val)));
-        gpr1Btn.setOnAction(e -> updateRegister(val -> cpu.setGPR(1, val)));
-        gpr2Btn.setOnAction(e -> updateRegister(val -> cpu.setGPR(2, val)));
-        gpr3Btn.setOnAction(e -> updateRegister(val -> cpu.setGPR(3, val)));
+        gpr0Btn.setOnAction(e -> updateRegister((cpu, val) -> cpu.setGPR(0, val)));
+        gpr1Btn.setOnAction(e -> updateRegister((cpu, val) -> cpu.setGPR(1, val)));
+        gpr2Btn.setOnAction(e -> updateRegister((cpu, val) -> cpu.setGPR(2, val)));
+        gpr3Btn.setOnAction(e -> updateRegister((cpu, val) -> cpu.setGPR(3, val)));
 
         // IXR button handlers
-        ixr1Btn.setOnAction(e -> updateRegister(val -> cpu.setIXR(1, val)));
-        ixr2Btn.setOnAction(e -> updateRegister(val -> cpu.setIXR(2, val)));
-        ixr3Btn.setOnAction(e -> updateRegister(val -> cpu.setIXR(3, val)));
+        ixr1Btn.setOnAction(e -> updateRegister((cpu, val) -> cpu.setIXR(1, val)));
+        ixr2Btn.setOnAction(e -> updateRegister((cpu, val) -> cpu.setIXR(2, val)));
+        ixr3Btn.setOnAction(e -> updateRegister((cpu, val) -> cpu.setIXR(3, val)));
 
         // Special register button handlers
-        pcBtn.setOnAction(e -> updateRegister(cpu::setPC));
-        marBtn.setOnAction(e -> updateRegister(cpu::setMAR));
-        mbrBtn.setOnAction(e -> updateRegister(cpu::setMBR));
-        irBtn.setOnAction(e -> updateRegister(cpu::setIR));
+        pcBtn.setOnAction(e -> updateRegister(CPU::setPC));
+        marBtn.setOnAction(e -> updateRegister(CPU::setMAR));
+        mbrBtn.setOnAction(e -> updateRegister(CPU::setMBR));
+        irBtn.setOnAction(e -> updateRegister(CPU::setIR));
 
         // Allow direct editing of PC field (octal). Commit on Enter or when field loses focus
         pc.setOnAction(e -> applyPcFromField());
@@ -107,7 +167,7 @@ public class SGUIController {
 
     private void handleConsoleInput() {
         // Accept one or many decimal values separated by spaces/commas/newlines
-        if (consoleInputQueue.size() >= 21) {
+        if (consoleInputChannel.size() >= 21) {
             printToOutput("Error: All 21 values already entered (20 list + 1 search). Click Run to execute.");
             consoleInput.clear();
             return;
@@ -119,19 +179,21 @@ public class SGUIController {
         }
 
         String[] tokens = input.trim().split("[\\s,]+");
-        int sizeBefore = consoleInputQueue.size();
+        int sizeBefore = consoleInputChannel.size();
         int added = 0;
+        int last = 0;
         int skippedInvalid = 0;
         int ignoredExtra = 0;
 
         for (String t : tokens) {
-            if (consoleInputQueue.size() >= 21) {
+            if (consoleInputChannel.size() >= 21) {
                 ignoredExtra += 1;
                 continue;
             }
             try {
                 int value = Integer.parseInt(t, 10);
-                consoleInputQueue.addLast(value);
+                consoleInputChannel.offer(value);
+                last = value;
                 added++;
             } catch (NumberFormatException ex) {
                 skippedInvalid++;
@@ -139,7 +201,6 @@ public class SGUIController {
         }
 
         if (added == 1) {
-            int last = consoleInputQueue.peekLast();
             printToOutput("Input queued: " + last);
         } else if (added > 1) {
             printToOutput(String.format("Bulk input queued: %d values", added));
@@ -151,7 +212,7 @@ public class SGUIController {
             printToOutput(String.format("Note: Ignored %d extra value(s) beyond 21 total inputs", ignoredExtra));
         }
 
-        int sizeAfter = consoleInputQueue.size();
+        int sizeAfter = consoleInputChannel.size();
         if (sizeBefore < 20 && sizeAfter >= 20 && sizeAfter < 21) {
             printToOutput(">>> 20 values entered. Now enter the SEARCH VALUE <<<");
         }
@@ -164,66 +225,86 @@ public class SGUIController {
 
     public void printToOutput(String text) {
         if (Platform.isFxApplicationThread()) {
-            printerOutput.appendText(text + "\n");
-            printerBuffer.append(text).append("\n");
+            appendPrinterText(text + "\n");
         } else {
             Platform.runLater(() -> printToOutput(text));
         }
     }
 
-    public int readFromConsole() {
-        Integer v = consoleInputQueue.pollFirst();
-        if (v != null) {
-            inputsConsumedThisRun++;
+    // Printer device sink: called on the execution thread with a batch of lines
+    private void printBatch(char[] text, int offset, int length) {
+        String batch = new String(text, offset, length);
+        Platform.runLater(() -> appendPrinterText(batch));
+    }
+
+    private void appendPrinterText(String text) {
+        printerOutput.appendText(text);
+        int excess = printerOutput.getLength() - MAX_PRINTER_CHARS;
+        if (excess > 0) {
+            printerOutput.deleteText(0, excess);
+        }
+        printerBuffer.append(text);
+        if (printerBuffer.length() > PRINTER_TAIL_CHARS) {
+            printerBuffer.delete(0, printerBuffer.length() - PRINTER_TAIL_CHARS);
+        }
+    }
+
+    /** Announces once per wait that the program is blocked on console input. */
+    private void announceInputWait(MachineSnapshot s) {
+        if (!s.isWaitingForInput()) {
             waitingForInputAnnounced = false;
-            return v;
-        }
-        
-        // Check if we've already consumed all expected inputs for Program1
-        if (inputsConsumedThisRun >= 21) {
-            // All inputs consumed, don't ask for more
-            // This prevents "Waiting for input #22" message
-            return -1;  // Signal CPU to retry (program should be done by now)
-        }
-        
-        // No input available: announce once per wait state
-        if (!waitingForInputAnnounced) {
-            int nextIdx = inputsConsumedThisRun + 1;
-            printToOutput(String.format("Waiting for input #%d (enter 21 values: 20 list + 1 search)", nextIdx));
-            waitingForInputAnnounced = true;
-        }
-        return -1;  // Signal CPU to retry
+            return;
+        }
+        long consumed = consoleInputChannel.getTakenCount() - inputsTakenBeforeRun;
+        // Program1 reads exactly 21 values; don't ask for a 22nd
+        if (waitingForInputAnnounced || consumed >= 21) {
+            return;
+        }
+        printToOutput(String.format("Waiting for input #%d (enter 21 values: 20 list + 1 search)", consumed + 1));
+        waitingForInputAnnounced = true;
+    }
+
+    /** Announces once per stop that a breakpoint or watchpoint stopped the run. */
+    private void announceBreak(MachineSnapshot s) {
+        if (s.getBreakKind() == null) {
+            breakAnnounced = false;
+            return;
+        }
+        if (!breakAnnounced) {
+            printToOutput(s.getBreakKind() == Breakpoints.Kind.PC
+                    ? String.format("Breakpoint at 0o%o; press Run to continue", s.getBreakAddress())
+                    : String.format("%s watchpoint at 0o%o (PC 0o%o); press Run to continue",
+                            s.getBreakKind() == Breakpoints.Kind.READ ? "Read" : "Write",
+                            s.getBreakAddress(), s.getPC()));
+            breakAnnounced = true;
+        }
     }
 
     private void handleSingleStep() {
-        cpu.step();
-        updateDisplays();
+        driver.step();
     }
 
     private void handleRun() {
-        inputsConsumedThisRun = 0;
+        inputsTakenBeforeRun = consoleInputChannel.getTakenCount();
         waitingForInputAnnounced = false;
         summaryPrinted = false;
-        // If previous program halted, restart from program entry without requiring IPL
-        if (cpu.isHalted()) {
-            cpu.reset();
-            cpu.setPC(64); // 0o100
-            printToOutput("Restarting program from 0o100. Enter 21 inputs if not already queued, then wait for output.");
-        }
-        cpu.unhalt(); // Ensure CPU is not halted before running
-        cpu.run(() -> {
-            Platform.runLater(this::updateDisplays);
+        driver.submit((cpu, memory) -> {
+            // If previous program halted, restart from program entry without requiring IPL
+            if (cpu.isHalted()) {
+                cpu.reset();
+                cpu.setPC(64); // 0o100
+                printToOutput("Restarting program from 0o100. Enter 21 inputs if not already queued, then wait for output.");
+            }
         });
+        driver.run();
     }
 
     private void handleHalt() {
-        cpu.halt();
-        updateDisplays();
+        driver.halt();
     }
 
     private void handleIPL() {
         setupIPLProgram();
-        updateDisplays();
     }
 
     private void setupIPLProgram() {
@@ -233,57 +314,65 @@ public class SGUIController {
             return;
         }
 
-        try {
-            memory.reset(); // Clear memory before loading new program
-            memory.loadProgramFromFile(programPath);
-            cpu.reset();  // Reset CPU state after loading program
-            cpu.setPC(64); // 0o100 - program entry point
-            // Clear any previously queued console inputs for a fresh run
-            consoleInputQueue.clear();
-            inputsConsumedThisRun = 0;
-            waitingForInputAnnounced = false;
-            summaryPrinted = false;
-            updateDisplays();
-            printToOutput("Program loaded successfully: " + programPath);
-            printToOutput("PC set to 0o100 (program start address)");
-            printToOutput("Ready: Enter 20 list values, then enter the SEARCH value and click Run.");
-        } catch (IOException e) {
-            printToOutput("Error loading program: " + e.getMessage());
-        }
+        // Clear any previously queued console inputs for a fresh run
+        consoleInputChannel.clear();
+        inputsTakenBeforeRun = consoleInputChannel.getTakenCount();
+        waitingForInputAnnounced = false;
+        summaryPrinted = false;
+        driver.halt();
+        driver.submit((cpu, memory) -> {
+            try {
+                memory.reset(); // Clear memory before loading new program
+                memory.resetStats(); // hit and miss counts start from the IPL
+                memory.loadProgramFromFile(programPath);
+                cpu.reset();  // Reset CPU state after loading program
+                cpu.setPC(64); // 0o100 - program entry point
+                printToOutput("Program loaded successfully: " + programPath);
+                printToOutput("PC set to 0o100 (program start address)");
+                printToOutput("Ready: Enter 20 list values, then enter the SEARCH value and click Run.");
+            } catch (IOException e) {
+                printToOutput("Error loading program: " + e.getMessage());
+            }
+        });
     }
-    
-    private void updateDisplays() {
-        if (Platform.isFxApplicationThread()) {
-            updateDisplaysInternal();
-        } else {
-            Platform.runLater(this::updateDisplaysInternal);
+
+    /** Called by the refresh timer on the FX thread; redraws only when a new snapshot was published. */
+    private void refreshDisplays() {
+        MachineSnapshot snapshot = driver.getSnapshot();
+        if (snapshot != shown) {
+            shown = snapshot;
+            updateDisplays(snapshot);
+            announceInputWait(snapshot);
+            announceBreak(snapshot);
         }
     }
 
-    private void updateDisplaysInternal() {
+    private void updateDisplays(MachineSnapshot s) {
         // Update register displays with octal values
-        gpr0.setText(String.format("%o", cpu.getGPR(0)));
-        gpr1.setText(String.format("%o", cpu.getGPR(1)));
-        gpr2.setText(String.format("%o", cpu.getGPR(2)));
-        gpr3.setText(String.format("%o", cpu.getGPR(3)));
+        gpr0.setText(String.format("%o", s.getGPR(0)));
+        gpr1.setText(String.format("%o", s.getGPR(1)));
+        gpr2.setText(String.format("%o", s.getGPR(2)));
+        gpr3.setText(String.format("%o", s.getGPR(3)));
 
         // Update IXR displays
-        ixr1.setText(String.format("%o", cpu.getIXR(1)));
-        ixr2.setText(String.format("%o", cpu.getIXR(2)));
-        ixr3.setText(String.format("%o", cpu.getIXR(3)));
+        ixr1.setText(String.format("%o", s.getIXR(1)));
+        ixr2.setText(String.format("%o", s.getIXR(2)));
+        ixr3.setText(String.format("%o", s.getIXR(3)));
 
-        // Update control registers
-        pc.setText(String.format("%o", cpu.getPC()));
-        ir.setText(String.format("%o", cpu.getIR()));
-        mar.setText(String.format("%o", cpu.getMAR()));
-        mbr.setText(String.format("%o", cpu.getMBR()));
-        cc.setText(String.format("%o", cpu.getCC()));
-        mfr.setText(String.format("%o", cpu.getMFR()));
+        // Update control registers (leave PC alone while the user is editing it)
+        if (!pc.isFocused()) {
+            pc.setText(String.format("%o", s.getPC()));
+        }
+        ir.setText(String.format("%o", s.getIR()));
+        mar.setText(String.format("%o", s.getMAR()));
+        mbr.setText(String.format("%o", s.getMBR()));
+        cc.setText(String.format("%o", s.getCC()));
+        mfr.setText(String.format("%o", s.getMFR()));
 
-        updateCacheDisplay();
+        updateCacheDisplay(s);
 
         // When the program halts, append a clear, labeled summary using the last two numeric OUTs
-        if (cpu.isHalted() && !summaryPrinted) {
+        if (s.isHalted() && !summaryPrinted) {
             try {
                 // Find the last two numeric lines printed by the program (OUT outputs)
                 String[] lines = printerBuffer.toString().split("\n");
@@ -334,46 +423,51 @@ public class SGUIController {
         }
     }
 
-    private void updateCacheDisplay() {
+    private void updateCacheDisplay(MachineSnapshot s) {
         if (cacheContent == null) return;
+        Cache.Stats stats = s.getMemoryStats().getDataCache();
         StringBuilder sb = new StringBuilder();
-        CacheLine[] lines = memory.getCache().getLines();
-        for (int i = 0; i < lines.length; i++) {
-            CacheLine line = lines[i];
-            if (line.isValid()) {
-                // Index label in decimal (00-15), tag and data remain octal
-                sb.append(String.format("%02d: %06o  %06o", i, line.getTag(), line.getData() & 0xFFFF));
-            } else {
-                sb.append(String.format("%02d: ------  ------", i));
+        int ways = s.getCacheWays();
+        int words = s.getCacheBlockWords();
+        if (s.getCacheSets() > 1 || words > 1 || !s.getCachePolicy().equals(Cache.DEFAULT_POLICY) || splitCache) {
+            sb.append(String.format("%s%d sets x %d ways x %d words, %s%n", splitCache ? "L1D: " : "",
+                    s.getCacheSets(), ways, words, s.getCachePolicy()));
+        }
+        for (int i = 0; i < s.getCacheLineCount(); i++) {
+            // Index label in decimal (00-15, or set.way), tag and data remain octal
+            sb.append(s.getCacheSets() > 1 ? String.format("%02d.%d:", i / ways, i % ways) : String.format("%02d:", i));
+            sb.append(s.isCacheLineValid(i)
+                    ? String.format(" %06o%s", s.getCacheTag(i), s.isCacheLineDirty(i) ? "*" : " ") : " ------ ");
+            for (int w = 0; w < words; w++) {
+                sb.append(s.isCacheLineValid(i) ? String.format(" %06o", s.getCacheData(i, w) & 0xFFFF) : " ------");
             }
-            sb.append('\n');
+            sb.append(String.format("  x%d%n", stats.getLineFills(i))); // times the line was filled
         }
+        sb.append(String.format("hits %d, misses %d (%.1f%%), evictions %d, conflicts %d%n", stats.getHits(),
+                stats.getMisses(), stats.getHitRatio(), stats.getEvictions(), stats.getConflicts()));
         cacheContent.setText(sb.toString());
     }
 
 
 
     private void loadFromMemory() {
-        cpu.manual_load();
-        updateDisplays();
+        driver.submit((cpu, memory) -> cpu.manual_load());
     }
 
     private void loadFromMemoryAndIncrement() {
-        cpu.manual_load_plus();
-        updateDisplays();
+        driver.submit((cpu, memory) -> cpu.manual_load_plus());
     }
 
     private void storeToMemory() {
-        cpu.manual_store();
-        updateDisplays();
+        driver.submit((cpu, memory) -> cpu.manual_store());
     }
 
     private void storeToMemoryAndIncrement() {
-        cpu.manual_store_plus();
-        updateDisplays();
+        driver.submit((cpu, memory) -> cpu.manual_store_plus());
     }
 
-    private void updateRegister(Consumer<Integer> setter) {
+    // Sends a register write to the execution thread
+    private void updateRegister(BiConsumer<CPU, Integer> setter) {
         String octalValue = octalInput.getText();
         if (!octalValue.isEmpty()) {
             try {
@@ -383,8 +477,8 @@ public class SGUIController {
                 int value = Integer.parseInt(absValue, 8);
                 if (isNegative) value = -value;
                 
-                setter.accept(value);
-                updateDisplays();
+                int newValue = value;
+                driver.submit((cpu, memory) -> setter.accept(cpu, newValue));
             } catch (NumberFormatException e) {
                 System.err.println("Invalid octal input: " + octalValue);
             }
@@ -398,20 +492,19 @@ public class SGUIController {
         text = text.trim();
         if (text.isEmpty()) {
             // Revert to current PC if cleared
-            pc.setText(String.format("%o", cpu.getPC()));
+            pc.setText(String.format("%o", driver.getSnapshot().getPC()));
             return;
         }
         if (!text.matches("[0-7]+")) {
             // Invalid - revert
-            pc.setText(String.format("%o", cpu.getPC()));
+            pc.setText(String.format("%o", driver.getSnapshot().getPC()));
             return;
         }
         try {
             int value = Integer.parseInt(text, 8);
-            cpu.setPC(value);
-            updateDisplays();
+            driver.submit((cpu, memory) -> cpu.setPC(value));
         } catch (NumberFormatException ex) {
-            pc.setText(String.format("%o", cpu.getPC()));
+            pc.setText(String.format("%o", driver.getSnapshot().getPC()));
         }
     }
 }
\ No newline at end of file
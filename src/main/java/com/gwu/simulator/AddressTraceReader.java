@@ -0,0 +1,71 @@
+package com.gwu.simulator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.gwu.simulator.AddressTraceRecorder.*;
+
+/**
+ * Maps a file written by {@link AddressTraceRecorder} once, read-only.
+ * Any number of threads can replay it at the same time: {@link #records}
+ * hands each one its own view of the same mapping, so the file is neither
+ * copied nor read again.
+ */
+public class AddressTraceReader {
+    private final MappedByteBuffer mapped;
+    private final int recordCount;
+
+    public AddressTraceReader(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            if (header.getInt(0) != MAGIC || header.getShort(4) != VERSION) {
+                throw new IOException("Not an address trace (or unsupported version): " + file);
+            }
+            long count = header.getLong(8);
+            if (count < 0 || HEADER_SIZE + count * RECORD_SIZE > channel.size()) {
+                throw new IOException("Truncated address trace: " + file);
+            }
+            if (count > (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE) {
+                throw new IOException("Address trace too large to map: " + count + " records");
+            }
+            recordCount = (int) count;
+            // The mapping stays valid after the channel is closed
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, (long) recordCount * RECORD_SIZE);
+        }
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /** A view of every record, for one thread; views share the mapping but not their position. */
+    public IntBuffer records() {
+        return mapped.duplicate().asIntBuffer();
+    }
+
+    /** Word address of a record. */
+    public static int address(int record) {
+        return record & 0xFFFF;
+    }
+
+    /** {@code KIND_FETCH}, {@code KIND_READ} or {@code KIND_WRITE}. */
+    public static int kind(int record) {
+        return (record >>> KIND_SHIFT) & 3;
+    }
+
+    /** Class of the fetched instruction (fetch records only). */
+    public static TimingModel.InstructionClass instructionClass(int record) {
+        return TimingModel.InstructionClass.values()[(record >>> CLASS_SHIFT) & 0xF];
+    }
+
+    /** True if the fetched instruction was a taken jump (fetch records only). */
+    public static boolean isTakenJump(int record) {
+        return (record & TAKEN_JUMP) != 0;
+    }
+}
@@ -0,0 +1,113 @@
+package com.gwu.simulator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Tracer that records the address of every memory access the CPU makes,
+ * tagged as an instruction fetch, a data read (indirect address words
+ * included) or a data write, in the order they happen. {@link CacheSweep}
+ * replays the file through many cache configurations without rerunning the
+ * program. Front panel Load and Store are not recorded.
+ *
+ * File layout (all big-endian):
+ * <pre>
+ *   header   (16 bytes)  magic "CSAM", version, unused, record count (8 bytes)
+ *   records  4 bytes each
+ * </pre>
+ * Record layout:
+ * <pre>
+ *   bits  0-15  word address
+ *   bits 16-17  KIND_FETCH, KIND_READ or KIND_WRITE
+ *   bits 18-21  fetches: TimingModel.InstructionClass ordinal of the instruction
+ *   bit  22     fetches: the instruction was a taken jump
+ * </pre>
+ * The class and jump bits let a replay charge execute cycles as
+ * {@link TimingModel} would.
+ */
+public class AddressTraceRecorder implements Tracer, AutoCloseable {
+    static final int MAGIC = 0x4353414D; // "CSAM"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 4;
+
+    static final int KIND_FETCH = 0;
+    static final int KIND_READ = 1;
+    static final int KIND_WRITE = 2;
+    static final int KIND_SHIFT = 16;
+    static final int CLASS_SHIFT = 18;
+    static final int TAKEN_JUMP = 1 << 22;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_INSTRUCTION_BYTES = 64; // fetch, indirect word and data access, with room
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private long records;
+    private int fetchPosition; // buffer position of the current instruction's fetch record
+
+    public AddressTraceRecorder(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        buffer.putInt(MAGIC).putShort((short) VERSION).putShort((short) 0).putLong(0);
+    }
+
+    @Override
+    public void beforeInstruction(CPU cpu, int pc) {
+        // Flush only between instructions, so the fetch record can still be completed below
+        if (buffer.remaining() < MAX_INSTRUCTION_BYTES) {
+            flush();
+        }
+        fetchPosition = buffer.position();
+        put(KIND_FETCH, pc);
+    }
+
+    @Override
+    public void afterInstruction(CPU cpu, int pc, DecodedInstruction instr) {
+        TimingModel.InstructionClass c = TimingModel.InstructionClass.of(instr.opcode);
+        int bits = c.ordinal() << CLASS_SHIFT;
+        if (c == TimingModel.InstructionClass.JUMP && cpu.getPC() != ((pc + 1) & 0xFFF)) {
+            bits |= TAKEN_JUMP;
+        }
+        buffer.putInt(fetchPosition, buffer.getInt(fetchPosition) | bits);
+    }
+
+    @Override
+    public void memoryAccess(CPU cpu, boolean write, int address) {
+        put(write ? KIND_WRITE : KIND_READ, address);
+    }
+
+    private void put(int kind, int address) {
+        buffer.putInt((kind << KIND_SHIFT) | (address & 0xFFFF));
+        records++;
+    }
+
+    private void flush() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException ex) {
+            throw new java.io.UncheckedIOException("Could not write address trace", ex);
+        }
+        buffer.clear();
+    }
+
+    /** Number of accesses recorded so far. */
+    public long getRecordCount() {
+        return records;
+    }
+
+    /** Writes what is buffered, fills in the record count and closes the file. */
+    @Override
+    public void close() throws IOException {
+        flush();
+        buffer.putLong(records).flip();
+        channel.write(buffer, 8);
+        channel.close();
+    }
+}
@@ -0,0 +1,99 @@
+package com.gwu.simulator;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes trace records on a background thread so the CPU never waits on the
+ * console or a file. Records are queued as objects and turned into text
+ * (via toString) only on the writer thread.
+ *
+ * The queue is bounded: if the writer falls behind, the execution thread
+ * blocks until there is room rather than dropping records.
+ */
+public class AsyncTraceSink implements AutoCloseable {
+    private static final int QUEUE_CAPACITY = 1 << 14;
+    private static final Object END = new Object(); // tells the writer thread to finish
+
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Writer writer;
+    private final Thread thread;
+    private volatile IOException failure;
+
+    public AsyncTraceSink(OutputStream out) {
+        this(new OutputStreamWriter(out));
+    }
+
+    public AsyncTraceSink(Writer writer) {
+        this.writer = (writer instanceof BufferedWriter) ? writer : new BufferedWriter(writer, 1 << 16);
+        this.thread = new Thread(this::drain, "trace-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /** Queues one record; its toString() becomes one line of output. */
+    public void accept(Object record) {
+        try {
+            queue.put(record);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        List<Object> batch = new ArrayList<>(256);
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, 255);
+                for (Object record : batch) {
+                    if (record == END) {
+                        write(null);
+                        return;
+                    }
+                    write(record);
+                }
+                batch.clear();
+                if (queue.isEmpty()) {
+                    write(null); // idle: make what we have visible
+                }
+            }
+        } catch (InterruptedException e) {
+            // closing
+        }
+    }
+
+    /** Writes one record, or flushes if it is null. After a write error records are discarded. */
+    private void write(Object record) {
+        if (failure != null) {
+            return; // keep draining so the execution thread never blocks on a dead sink
+        }
+        try {
+            if (record == null) {
+                writer.flush();
+            } else {
+                writer.write(record.toString());
+                writer.write(System.lineSeparator());
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    /** Writes everything queued so far and stops the writer thread. Does not close the underlying stream. */
+    @Override
+    public void close() throws IOException {
+        accept(END);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.gwu.simulator;
+
+/**
+ * A straight-line run of instructions ending at a jump (JZ, JNE, JCC, JMA,
+ * JSR, RFS, SOB, JGE), HLT, an illegal opcode or the block length limit.
+ * The instructions are decoded up front and executed back to back; the block
+ * keeps direct links to the blocks that followed it last time so the engine
+ * does not need to look them up again.
+ */
+public class BasicBlock {
+    final int start;
+    final int end; // address of the last instruction (inclusive)
+    final DecodedInstruction[] instructions;
+    boolean valid = true;
+
+    // JIT tier state (see BlockEngine)
+    int executions;          // times this block ran in the interpreter
+    CompiledBlock compiled;  // translated code, or null
+    int compiledLength;      // instructions covered by the translated code
+    boolean jitAttempted;
+
+    // Breakpoint check cache (see containsBreakpoint)
+    private Breakpoints checkedBreakpoints;
+    private int checkedVersion;
+    private boolean hasBreakpoint;
+
+    // Successor links, filled in as the block is executed
+    BasicBlock fallthrough; // block at end + 1
+    BasicBlock taken;       // most recent block reached by a jump
+
+    BasicBlock(int start, DecodedInstruction[] instructions) {
+        this.start = start;
+        this.end = start + instructions.length - 1;
+        this.instructions = instructions;
+    }
+
+    /**
+     * Executes up to {@code limit} instructions of this block.
+     * Stops early if the CPU halts, an IN stalls, a watchpoint is hit, control
+     * leaves the straight line, or a store invalidates the block.
+     * @return Number of instructions executed
+     */
+    int execute(CPU cpu, int limit) {
+        int count = Math.min(limit, instructions.length);
+        for (int k = 0; k < count; k++) {
+            DecodedInstruction instr = instructions[k];
+            cpu.fetch();
+            instr.handler.execute(cpu, instr);
+            if (cpu.isHalted() || cpu.isBreakHit()) {
+                return k + 1;
+            }
+            if (cpu.isInputStalled()) {
+                return k; // IN rolled the PC back, so it did not execute
+            }
+            if (cpu.getPC() != start + k + 1 || !valid) {
+                return k + 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Executes up to {@code limit} instructions one at a time, checking PC
+     * breakpoints before each, for blocks that contain one.
+     * @param first True if this is the first instruction of the run
+     * @return Number of instructions executed
+     */
+    int stepThrough(CPU cpu, int limit, boolean first) {
+        int executed = 0;
+        while (executed < limit && covers(cpu.getPC()) && valid) {
+            if (cpu.stopsAt(cpu.getPC(), first && executed == 0)) {
+                break;
+            }
+            int pc = cpu.getPC();
+            cpu.step();
+            if (cpu.isInputStalled()) {
+                break;
+            }
+            executed++;
+            if (cpu.isHalted() || cpu.isBreakHit() || cpu.getPC() != pc + 1) {
+                break;
+            }
+        }
+        return executed;
+    }
+
+    /** True if a PC breakpoint lies inside this block; cached until the breakpoints change. */
+    boolean containsBreakpoint(Breakpoints breakpoints) {
+        if (breakpoints != checkedBreakpoints || breakpoints.getVersion() != checkedVersion) {
+            checkedBreakpoints = breakpoints;
+            checkedVersion = breakpoints.getVersion();
+            hasBreakpoint = breakpoints.anyBreakpointIn(start, end);
+        }
+        return hasBreakpoint;
+    }
+
+    /** True if this block contains the given address. */
+    boolean covers(int address) {
+        return address >= start && address <= end;
+    }
+
+    public int getStart() { return start; }
+    public int getEnd() { return end; }
+    public int length() { return instructions.length; }
+}
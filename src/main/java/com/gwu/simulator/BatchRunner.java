@@ -0,0 +1,301 @@
+package com.gwu.simulator;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import com.gwu.simulator.RunStats.StopReason;
+
+/**
+ * Runs one load image against many console input vectors in parallel.
+ * Every job gets its own CPU, Memory and Cache; the parsed {@link LoadImage}
+ * is shared read-only. Jobs run on a work-stealing {@link ForkJoinPool} and
+ * results are handed back in completion order while the batch is running.
+ *
+ * With an off-heap memory backend the batch allocates one block of native
+ * memory, a bank per worker thread, up front; each job borrows a bank and
+ * zeroes it instead of allocating memory of its own.
+ *
+ * Command line usage:
+ *   java -cp Simulator.jar com.gwu.simulator.BatchRunner load.txt corpus [options]
+ *     corpus                  a file with one input vector per line, or a directory
+ *                             with one input file per job
+ *     --out <dir>             write each job's printer output to dir/name.out
+ *     --threads <n>           worker threads (default: available processors)
+ *     --pc <octal>            start address (default 100)
+ *     --engine <name>         interpreter (default), block or jit
+ *     --max-instructions <n>  instruction budget per job (default 10000000)
+ *     --max-millis <n>        wall time budget per job
+ *     --memory-size <n>       words of memory per job (default 2048)
+ *     --memory-backend <name> heap (default) or offheap
+ * One line per job is printed as it finishes; the batch summary goes to stderr.
+ */
+public class BatchRunner {
+
+    /** One run: a name (used for the output file) and its console input. */
+    public static final class Job {
+        public final String name;
+        public final String input;
+
+        public Job(String name, String input) {
+            this.name = name;
+            this.input = input;
+        }
+    }
+
+    /** Outcome of one job. {@code error} is set instead of {@code stats} if the job threw. */
+    public static final class Result {
+        public final Job job;
+        public final RunStats stats;
+        public final String output;     // printer output, or null when written to a file
+        public final Path outputFile;   // null when kept in memory
+        public final String error;
+
+        Result(Job job, RunStats stats, String output, Path outputFile, String error) {
+            this.job = job;
+            this.stats = stats;
+            this.output = output;
+            this.outputFile = outputFile;
+            this.error = error;
+        }
+
+        public boolean isFailed() {
+            return error != null || stats.getReason() == StopReason.FAULT;
+        }
+
+        @Override
+        public String toString() {
+            if (error != null) {
+                return job.name + "  ERROR " + error;
+            }
+            return String.format("%s  %s  %d instructions  %s", job.name, stats.getReason(), stats.getInstructions(),
+                    outputFile != null ? outputFile : "[" + output.strip().replace('\n', ' ') + "]");
+        }
+    }
+
+    /** Totals for a whole batch. */
+    public static final class BatchStats {
+        public final int jobs;
+        public final int failed;
+        public final long instructions;
+        public final long wallNanos;
+
+        BatchStats(int jobs, int failed, long instructions, long wallNanos) {
+            this.jobs = jobs;
+            this.failed = failed;
+            this.instructions = instructions;
+            this.wallNanos = wallNanos;
+        }
+
+        public double getJobsPerSecond() {
+            return wallNanos <= 0 ? 0.0 : jobs * 1e9 / wallNanos;
+        }
+
+        /** Simulated instructions per second over all jobs, in millions. */
+        public double getMips() {
+            return wallNanos <= 0 ? 0.0 : instructions * 1000.0 / wallNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Jobs: %d (failed %d), instructions: %d, wall time: %.3f ms, jobs/s: %.1f, MIPS: %.2f",
+                    jobs, failed, instructions, wallNanos / 1_000_000.0, getJobsPerSecond(), getMips());
+        }
+    }
+
+    private final LoadImage image;
+    private int startPc = 64; // 0o100 - program entry point
+    private EngineType engine = EngineType.INTERPRETER;
+    private long instructionLimit = 10_000_000L;
+    private long timeLimitMillis;
+    private Path outputDirectory;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int memorySize = Memory.DEFAULT_SIZE;
+    private String memoryBackend = "heap";
+    private BlockingQueue<MemoryBackend> banks; // off-heap banks not in use, during run(); null on the heap
+
+    public BatchRunner(LoadImage image) {
+        this.image = image;
+    }
+
+    public void setStartPc(int pc) { startPc = pc; }
+    public void setEngine(EngineType engine) { this.engine = engine; }
+    public void setInstructionLimit(long instructions) { instructionLimit = instructions; }
+    public void setTimeLimitMillis(long millis) { timeLimitMillis = millis; }
+    public void setParallelism(int threads) { parallelism = threads; }
+
+    /** Words of memory per job and their {@link MemoryBackend}, heap (the default) or offheap. */
+    public void setMemory(int words, String backend) {
+        Memory.checkSize(words); // now rather than in every job
+        memorySize = words;
+        memoryBackend = backend;
+    }
+
+    /** Printer output of each job goes to {@code dir/<job name>.out}; null keeps it in the Result. */
+    public void setOutputDirectory(Path dir) { outputDirectory = dir; }
+
+    /**
+     * Runs every job and passes each result to {@code results} as soon as it
+     * is done. The consumer is called on the calling thread, one result at a time.
+     */
+    public BatchStats run(List<Job> jobs, Consumer<Result> results) throws IOException, InterruptedException {
+        if (outputDirectory != null) {
+            Files.createDirectories(outputDirectory);
+        }
+        long start = System.nanoTime();
+        BlockingQueue<Result> done = new LinkedBlockingQueue<>();
+        if (!memoryBackend.equals("heap")) {
+            MemoryBackend all = MemoryBackend.create(memoryBackend, Math.multiplyExact(parallelism, memorySize));
+            banks = new ArrayBlockingQueue<>(parallelism);
+            for (int k = 0; k < parallelism; k++) {
+                banks.add(all.slice(k * memorySize, memorySize));
+            }
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        int failed = 0;
+        long instructions = 0;
+        try {
+            for (Job job : jobs) {
+                pool.execute(() -> done.add(runJob(job)));
+            }
+            for (int k = 0; k < jobs.size(); k++) {
+                Result result = done.take();
+                if (result.isFailed()) failed++;
+                if (result.stats != null) instructions += result.stats.getInstructions();
+                results.accept(result);
+            }
+        } finally {
+            pool.shutdownNow();
+            banks = null;
+        }
+        return new BatchStats(jobs.size(), failed, instructions, System.nanoTime() - start);
+    }
+
+    /** Runs one job on a fresh machine. Never throws, not even Errors; failures are reported in the Result. */
+    Result runJob(Job job) {
+        BlockingQueue<MemoryBackend> banks = this.banks;
+        MemoryBackend bank = null;
+        try {
+            bank = (banks == null) ? MemoryBackend.create("heap", memorySize) : banks.take();
+            Cache cache = new Cache();
+            Memory memory = new Memory(cache, cache, null, bank); // zeroes the bank
+            memory.load(image);
+            CPU cpu = new CPU(memory);
+            cpu.setEngine(engine);
+            cpu.setPC(startPc);
+
+            HeadlessRunner runner = new HeadlessRunner(cpu);
+            runner.setInput(new StringReader(job.input));
+            runner.setInstructionLimit(instructionLimit);
+            if (timeLimitMillis > 0) {
+                runner.setTimeLimitMillis(timeLimitMillis);
+            }
+            if (outputDirectory == null) {
+                StringWriter printed = new StringWriter();
+                runner.setOutput(printed);
+                return new Result(job, runner.run(), printed.toString(), null, null);
+            }
+            Path file = outputDirectory.resolve(job.name + ".out");
+            try (Writer out = Files.newBufferedWriter(file)) {
+                runner.setOutput(out);
+                RunStats stats = runner.run();
+                return new Result(job, stats, null, file, null);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return new Result(job, null, null, null, ex.toString());
+        } catch (Throwable ex) {
+            // Errors too (e.g. StackOverflowError from a runaway program): run() waits for a Result per job
+            return new Result(job, null, null, null, ex.toString());
+        } finally {
+            if (banks != null && bank != null) {
+                banks.add(bank);
+            }
+        }
+    }
+
+    /**
+     * Reads an input corpus: a directory holds one input file per job (named
+     * after the file); any other file holds one input vector per line (named
+     * after the line number). Blank lines and lines starting with # are skipped.
+     */
+    public static List<Job> readCorpus(Path corpus) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        if (Files.isDirectory(corpus)) {
+            try (Stream<Path> files = Files.list(corpus)) {
+                for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile).sorted()::iterator) {
+                    String name = file.getFileName().toString();
+                    int dot = name.lastIndexOf('.');
+                    jobs.add(new Job(dot > 0 ? name.substring(0, dot) : name, Files.readString(file)));
+                }
+            }
+        } else {
+            List<String> lines = Files.readAllLines(corpus);
+            for (int n = 0; n < lines.size(); n++) {
+                String line = lines.get(n).trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                jobs.add(new Job(String.format("job%06d", n + 1), line));
+            }
+        }
+        return jobs;
+    }
+
+    private static final String USAGE = "Usage: BatchRunner <load-file> <corpus-file|dir> [--out dir] [--threads n]"
+            + " [--pc octal] [--engine interpreter|block|jit] [--max-instructions n] [--max-millis n]"
+            + " [--memory-size n] [--memory-backend heap|offheap]";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        Path outputDirectory = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int startPc = 64; // 0o100 - program entry point
+        EngineType engine = EngineType.INTERPRETER;
+        long maxInstructions = 10_000_000L;
+        long maxMillis = 0;
+        int memorySize = Memory.DEFAULT_SIZE;
+        String memoryBackend = "heap";
+        for (int i = 2; i < args.length; i += 2) {
+            if (i + 1 == args.length) { // every option takes a value
+                System.err.println("Missing value for " + args[i]);
+                System.err.println(USAGE);
+                System.exit(2);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--out" -> outputDirectory = Paths.get(value);
+                case "--threads" -> threads = Integer.parseInt(value);
+                case "--pc" -> startPc = Integer.parseInt(value, 8);
+                case "--engine" -> engine = EngineType.valueOf(value.toUpperCase());
+                case "--max-instructions" -> maxInstructions = Long.parseLong(value);
+                case "--max-millis" -> maxMillis = Long.parseLong(value);
+                case "--memory-size" -> memorySize = Integer.parseInt(value);
+                case "--memory-backend" -> memoryBackend = value;
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        BatchRunner batch = new BatchRunner(LoadImage.read(args[0], memorySize));
+        batch.setMemory(memorySize, memoryBackend);
+        batch.setOutputDirectory(outputDirectory);
+        batch.setParallelism(threads);
+        batch.setStartPc(startPc);
+        batch.setEngine(engine);
+        batch.setInstructionLimit(maxInstructions);
+        batch.setTimeLimitMillis(maxMillis);
+
+        List<Job> jobs = readCorpus(Paths.get(args[1]));
+        // Autoflush, so each job's line appears as soon as it finishes
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)), true);
+        BatchStats stats = batch.run(jobs, result -> out.println(result));
+        out.flush();
+        System.err.println(stats);
+        System.exit(stats.failed > 0 ? 1 : 0);
+    }
+}
@@ -0,0 +1,246 @@
+package com.gwu.simulator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static com.gwu.simulator.BinaryTraceRecorder.*;
+
+/**
+ * Reads trace files written by {@link BinaryTraceRecorder}.
+ * Chunks whose header shows they cannot match a {@link Filter} (PC range or
+ * opcode set) are skipped without decoding; only matching chunks are mapped
+ * and decoded.
+ */
+public class BinaryTraceReader implements AutoCloseable {
+
+    /** Header of one chunk of records. */
+    public static final class Chunk {
+        final long offset;
+        final int payloadBytes;
+        public final int recordCount;
+        public final int pcMin;
+        public final int pcMax;
+        public final long opcodeMask;
+        public final long firstIndex;
+
+        Chunk(long offset, ByteBuffer header) {
+            this.offset = offset;
+            this.payloadBytes = header.getInt(4);
+            this.recordCount = header.getInt(8);
+            this.pcMin = header.getShort(12) & 0xFFFF;
+            this.pcMax = header.getShort(14) & 0xFFFF;
+            this.opcodeMask = header.getLong(16);
+            this.firstIndex = header.getLong(24);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("instructions %d-%d  PC %06o-%06o  %d bytes", firstIndex,
+                    firstIndex + recordCount - 1, pcMin, pcMax, payloadBytes);
+        }
+    }
+
+    /** Which records a scan reports. The default matches everything. */
+    public static final class Filter {
+        private int pcLow = 0;
+        private int pcHigh = 0xFFF;
+        private long opcodes = -1L;
+
+        /** Only records with {@code low <= PC <= high}. */
+        public Filter pcRange(int low, int high) {
+            pcLow = low;
+            pcHigh = high;
+            return this;
+        }
+
+        /** Only records for the given opcodes (may be called repeatedly to add more). */
+        public Filter opcode(int opcode) {
+            if (opcode < 0 || opcode > 63) {
+                throw new IllegalArgumentException("Invalid opcode: " + opcode);
+            }
+            opcodes = (opcodes == -1L ? 0 : opcodes) | (1L << opcode);
+            return this;
+        }
+
+        boolean mayMatch(Chunk chunk) {
+            return chunk.pcMax >= pcLow && chunk.pcMin <= pcHigh && (chunk.opcodeMask & opcodes) != 0;
+        }
+
+        boolean matches(Record record) {
+            return record.pc >= pcLow && record.pc <= pcHigh && (opcodes & (1L << record.getOpcode())) != 0;
+        }
+    }
+
+    /**
+     * One decoded instruction. A scan reuses the same instance for every
+     * record, so copy out anything that must outlive the callback.
+     */
+    public static final class Record {
+        long index;
+        int pc;
+        int ir;
+        int ea;
+        boolean hasEa;
+        int mbr;
+        int writtenMask;
+        final int[] registers = new int[REGISTER_COUNT]; // R0-R3, X1-X3 after the instruction
+        int cc;
+        int mfr;
+        boolean ccChanged;
+        boolean mfrChanged;
+
+        /** Position of this instruction in the run, counting from 0. */
+        public long getIndex() { return index; }
+        public int getPC() { return pc; }
+        public int getIR() { return ir; }
+        public int getOpcode() { return (ir >> 10) & 0x3F; }
+        /** Effective address; meaningful only if {@link #hasEffectiveAddress()}, since it can be negative. */
+        public int getEffectiveAddress() { return ea; }
+        /** True if the instruction computed an effective address (F_EA). */
+        public boolean hasEffectiveAddress() { return hasEa; }
+        public int getMBR() { return mbr; }
+        /** Bit k set if register k (R0-R3 = 0-3, X1-X3 = 4-6) was written. */
+        public int getWrittenMask() { return writtenMask; }
+        public int getGPR(int i) { return registers[i]; }
+        public int getIXR(int i) { return registers[3 + i]; }
+        public int getCC() { return cc; }
+        public int getMFR() { return mfr; }
+        public boolean isCCChanged() { return ccChanged; }
+        public boolean isMFRChanged() { return mfrChanged; }
+    }
+
+    private final FileChannel channel;
+    private final List<Chunk> chunks = new ArrayList<>();
+
+    public BinaryTraceReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            channel.read(header, 0);
+            if (header.getInt(0) != FILE_MAGIC || header.getShort(4) != VERSION) {
+                throw new IOException("Not a trace file (or unsupported version): " + file);
+            }
+            int chunkSize = header.getInt(8);
+            long size = channel.size();
+            ByteBuffer chunkHeader = ByteBuffer.allocate(CHUNK_HEADER_SIZE);
+            for (long offset = FILE_HEADER_SIZE; offset + CHUNK_HEADER_SIZE <= size; offset += chunkSize) {
+                chunkHeader.clear();
+                channel.read(chunkHeader, offset);
+                if (chunkHeader.getInt(0) == CHUNK_MAGIC && chunkHeader.getInt(8) > 0) {
+                    chunks.add(new Chunk(offset, chunkHeader));
+                }
+            }
+            // A rolled-over file holds its chunks out of order
+            chunks.sort(Comparator.comparingLong(c -> c.firstIndex));
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /** Chunk headers in instruction order. */
+    public List<Chunk> getChunks() {
+        return Collections.unmodifiableList(chunks);
+    }
+
+    /** Total instructions in the file (less than the run length if the file rolled over). */
+    public long getRecordCount() {
+        long count = 0;
+        for (Chunk chunk : chunks) {
+            count += chunk.recordCount;
+        }
+        return count;
+    }
+
+    /**
+     * Decodes every chunk that may match {@code filter} and passes matching records to {@code visitor}.
+     * @return Number of records passed to the visitor
+     */
+    public long scan(Filter filter, Consumer<Record> visitor) throws IOException {
+        return scan(filter, Long.MAX_VALUE, visitor);
+    }
+
+    /** Like {@link #scan(Filter, Consumer)} but stops after {@code limit} matching records. */
+    public long scan(Filter filter, long limit, Consumer<Record> visitor) throws IOException {
+        Record record = new Record();
+        long matched = 0;
+        for (Chunk chunk : chunks) {
+            if (matched >= limit) {
+                break;
+            }
+            if (!filter.mayMatch(chunk)) {
+                continue;
+            }
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, chunk.offset,
+                    CHUNK_HEADER_SIZE + chunk.payloadBytes);
+            in.position(CHUNK_HEADER_SIZE);
+            int expectedPc = 0;
+            for (int n = 0; n < chunk.recordCount && matched < limit; n++) {
+                decode(in, record, expectedPc);
+                record.index = chunk.firstIndex + n;
+                expectedPc = record.pc + 1;
+                if (filter.matches(record)) {
+                    visitor.accept(record);
+                    matched++;
+                }
+            }
+        }
+        return matched;
+    }
+
+    private static void decode(ByteBuffer in, Record record, int expectedPc) {
+        int flags = in.get() & 0xFF;
+        record.pc = (flags & F_JUMP) != 0 ? expectedPc + unzigzag(getVarint(in)) : expectedPc;
+        record.ir = in.getShort() & 0xFFFF;
+        record.hasEa = (flags & F_EA) != 0;
+        record.ea = record.hasEa ? record.pc + unzigzag(getVarint(in)) : -1;
+        record.mbr = (flags & F_MBR) != 0 ? in.getShort() & 0xFFFF : record.ir;
+        record.writtenMask = 0;
+        if ((flags & F_REGS) != 0) {
+            int mask = in.get() & 0xFF;
+            record.writtenMask = mask;
+            for (int k = 0; k < REGISTER_COUNT; k++) {
+                if ((mask & (1 << k)) != 0) record.registers[k] = in.getShort() & 0xFFFF;
+            }
+        }
+        if ((flags & F_KEY) != 0) {
+            for (int k = 0; k < REGISTER_COUNT; k++) {
+                record.registers[k] = in.getShort() & 0xFFFF;
+            }
+        }
+        record.ccChanged = (flags & F_CC) != 0;
+        record.mfrChanged = (flags & F_MFR) != 0;
+        if ((flags & (F_CC | F_KEY)) != 0) record.cc = in.get() & 0xFF;
+        if ((flags & (F_MFR | F_KEY)) != 0) record.mfr = in.get() & 0xFF;
+    }
+
+    private static int getVarint(ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,246 @@
+package com.gwu.simulator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Tracer that records every instruction into a compact binary file, for
+ * traces of runs far too long for {@link TextTracer}. Read the file back with
+ * {@link BinaryTraceReader} or the {@link TraceTool} command.
+ *
+ * File layout (all big-endian):
+ * <pre>
+ *   file header  (16 bytes)  magic "CSAT", version, chunk size, max chunks
+ *   chunk 0      (chunk size bytes, the last chunk may be shorter)
+ *   chunk 1 ...
+ * </pre>
+ * Each chunk starts with a 32-byte header (magic, payload bytes, record
+ * count, lowest and highest PC, a 64-bit mask of the opcodes it contains and
+ * the index of its first instruction) so readers can skip chunks that cannot
+ * match a filter. Records are delta encoded against the previous record in
+ * the same chunk; every chunk starts from a key record holding all registers,
+ * so each chunk decodes on its own.
+ *
+ * Record layout:
+ * <pre>
+ *   flags                 1 byte (F_* bits)
+ *   PC                    zigzag varint of pc - (previous pc + 1)      if F_JUMP
+ *   IR                    2 bytes
+ *   EA                    zigzag varint of ea - pc                     if F_EA
+ *   MBR                   2 bytes, only when it differs from IR         if F_MBR
+ *   written register mask 1 byte (R0-R3, X1-X3) + 2 bytes per set bit    if F_REGS
+ *   all seven registers   7 x 2 bytes                                  if F_KEY
+ *   CC                    1 byte                                       if F_CC or F_KEY
+ *   MFR                   1 byte                                       if F_MFR or F_KEY
+ * </pre>
+ *
+ * The file is written through memory-mapped chunk windows, so recording is
+ * plain memory stores on the execution thread. With a chunk limit the file
+ * rolls over: new chunks overwrite the oldest ones and only the tail of the
+ * run is kept.
+ */
+public class BinaryTraceRecorder implements Tracer, AutoCloseable {
+    static final int FILE_MAGIC = 0x43534154;  // "CSAT"
+    static final int CHUNK_MAGIC = 0x43484E4B; // "CHNK"
+    static final int VERSION = 1;
+    static final int FILE_HEADER_SIZE = 16;
+    static final int CHUNK_HEADER_SIZE = 32;
+    static final int MAX_RECORD_SIZE = 32;
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    // Record flag bits
+    static final int F_JUMP = 0x01; // PC is not previous PC + 1
+    static final int F_EA = 0x02;   // instruction computed an effective address
+    static final int F_MBR = 0x04;  // MBR holds data rather than the instruction word
+    static final int F_REGS = 0x08; // registers written
+    static final int F_CC = 0x10;   // CC changed
+    static final int F_MFR = 0x20;  // MFR changed
+    static final int F_KEY = 0x40;  // first record of a chunk: full register state follows
+
+    static final int REGISTER_COUNT = 7; // R0-R3, X1-X3
+
+    private final FileChannel channel;
+    private final int chunkSize;
+    private final int maxChunks; // 0 = keep every chunk
+
+    private MappedByteBuffer chunk;
+    private long chunkNumber = -1;
+    private long chunkOffset;
+    private long instructionIndex;
+
+    // Current chunk header
+    private long firstIndex;
+    private int recordCount;
+    private int pcMin;
+    private int pcMax;
+    private long opcodeMask;
+
+    // Delta state
+    private int expectedPc;
+    private boolean keyPending;
+    private final int[] before = new int[REGISTER_COUNT + 2]; // registers, CC, MFR
+    private final int[] after = new int[REGISTER_COUNT + 2];
+
+    /** Records to {@code file} with the default chunk size and no rollover. */
+    public BinaryTraceRecorder(Path file) throws IOException {
+        this(file, DEFAULT_CHUNK_SIZE, 0);
+    }
+
+    /**
+     * @param chunkSize Bytes per chunk (at least 4096)
+     * @param maxChunks Chunks kept before the oldest is overwritten; 0 keeps everything
+     */
+    public BinaryTraceRecorder(Path file, int chunkSize, int maxChunks) throws IOException {
+        if (chunkSize < 4096) {
+            throw new IllegalArgumentException("Chunk size too small: " + chunkSize);
+        }
+        if (maxChunks < 0) {
+            throw new IllegalArgumentException("Invalid chunk limit: " + maxChunks);
+        }
+        this.chunkSize = chunkSize;
+        this.maxChunks = maxChunks;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        header.putInt(FILE_MAGIC).putShort((short) VERSION).putShort((short) 0)
+                .putInt(chunkSize).putInt(maxChunks).flip();
+        channel.write(header, 0);
+        nextChunk();
+    }
+
+    @Override
+    public void beforeInstruction(CPU cpu, int pc) {
+        snapshot(cpu, before);
+    }
+
+    @Override
+    public void afterInstruction(CPU cpu, int pc, DecodedInstruction instr) {
+        if (chunk.remaining() < MAX_RECORD_SIZE) {
+            nextChunk();
+        }
+        snapshot(cpu, after);
+        int ir = instr.word;
+        int ea = cpu.getLastEffectiveAddress();
+        int mbr = cpu.getMBR();
+
+        int mask = 0;
+        for (int k = 0; k < REGISTER_COUNT; k++) {
+            if (before[k] != after[k]) mask |= 1 << k;
+        }
+        int flags = 0;
+        if (pc != expectedPc) flags |= F_JUMP;
+        if (cpu.hasLastEffectiveAddress()) flags |= F_EA; // not ea >= 0: indexed addresses can be negative
+        if (mbr != ir) flags |= F_MBR;
+        if (mask != 0) flags |= F_REGS;
+        if (before[REGISTER_COUNT] != after[REGISTER_COUNT]) flags |= F_CC;
+        if (before[REGISTER_COUNT + 1] != after[REGISTER_COUNT + 1]) flags |= F_MFR;
+        if (keyPending) flags |= F_KEY;
+
+        MappedByteBuffer out = chunk;
+        out.put((byte) flags);
+        if ((flags & F_JUMP) != 0) putVarint(out, zigzag(pc - expectedPc));
+        out.putShort((short) ir);
+        if ((flags & F_EA) != 0) putVarint(out, zigzag(ea - pc));
+        if ((flags & F_MBR) != 0) out.putShort((short) mbr);
+        if ((flags & F_REGS) != 0) {
+            out.put((byte) mask);
+            for (int k = 0; k < REGISTER_COUNT; k++) {
+                if ((mask & (1 << k)) != 0) out.putShort((short) after[k]);
+            }
+        }
+        if ((flags & F_KEY) != 0) {
+            for (int k = 0; k < REGISTER_COUNT; k++) {
+                out.putShort((short) after[k]);
+            }
+        }
+        if ((flags & (F_CC | F_KEY)) != 0) out.put((byte) after[REGISTER_COUNT]);
+        if ((flags & (F_MFR | F_KEY)) != 0) out.put((byte) after[REGISTER_COUNT + 1]);
+
+        keyPending = false;
+        expectedPc = pc + 1;
+        recordCount++;
+        instructionIndex++;
+        if (pc < pcMin) pcMin = pc;
+        if (pc > pcMax) pcMax = pc;
+        opcodeMask |= 1L << instr.opcode;
+    }
+
+    private static void snapshot(CPU cpu, int[] regs) {
+        for (int i = 0; i < 4; i++) {
+            regs[i] = cpu.getGPR(i);
+        }
+        for (int i = 1; i <= 3; i++) {
+            regs[3 + i] = cpu.getIXR(i);
+        }
+        regs[REGISTER_COUNT] = cpu.getCC();
+        regs[REGISTER_COUNT + 1] = cpu.getMFR();
+    }
+
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /** Finishes the current chunk and maps the next one. */
+    private void nextChunk() {
+        if (chunk != null) {
+            writeChunkHeader();
+        }
+        chunkNumber++;
+        long slot = (maxChunks > 0) ? chunkNumber % maxChunks : chunkNumber;
+        chunkOffset = FILE_HEADER_SIZE + slot * chunkSize;
+        try {
+            chunk = channel.map(FileChannel.MapMode.READ_WRITE, chunkOffset, chunkSize);
+        } catch (IOException ex) {
+            throw new java.io.UncheckedIOException("Could not map trace chunk", ex);
+        }
+        firstIndex = instructionIndex;
+        recordCount = 0;
+        pcMin = Integer.MAX_VALUE;
+        pcMax = -1;
+        opcodeMask = 0;
+        expectedPc = 0;
+        keyPending = true;
+        chunk.position(CHUNK_HEADER_SIZE);
+        writeChunkHeader(); // an overwritten slot must not keep the old header
+    }
+
+    private void writeChunkHeader() {
+        chunk.putInt(0, CHUNK_MAGIC);
+        chunk.putInt(4, chunk.position() - CHUNK_HEADER_SIZE);
+        chunk.putInt(8, recordCount);
+        chunk.putShort(12, (short) (recordCount == 0 ? 0 : pcMin));
+        chunk.putShort(14, (short) (recordCount == 0 ? 0 : pcMax));
+        chunk.putLong(16, opcodeMask);
+        chunk.putLong(24, firstIndex);
+    }
+
+    /** Number of instructions recorded so far. */
+    public long getInstructionCount() {
+        return instructionIndex;
+    }
+
+    /** Writes the last chunk header, trims unused space at the end of the file and closes it. */
+    @Override
+    public void close() throws IOException {
+        writeChunkHeader();
+        chunk.force();
+        boolean lastSlot = maxChunks == 0 || chunkNumber < maxChunks;
+        if (lastSlot) {
+            channel.truncate(chunkOffset + chunk.position());
+        }
+        channel.close();
+    }
+}
@@ -0,0 +1,182 @@
+package com.gwu.simulator;
+
+import java.util.Arrays;
+
+/**
+ * Threaded-code execution engine. Memory is split into basic blocks at jump
+ * instructions; each block is decoded once into a chain of pre-resolved
+ * handlers and linked to its successors, so the hot loop runs whole blocks
+ * without going back to the fetch/decode dispatcher for every instruction.
+ *
+ * Instruction fetches still go through Memory, so MAR/MBR/IR and the cache
+ * end up exactly as they would with the interpreter.
+ * Blocks are invalidated when a store hits their address range.
+ *
+ * With the JIT tier enabled, each block counts its executions and is
+ * translated to JVM bytecode by {@link JitCompiler} once it has run
+ * JIT_THRESHOLD times. A store into translated code invalidates the block,
+ * which sends it back to the interpreter until it gets hot again.
+ *
+ * Blocks that contain a PC breakpoint are stepped one instruction at a time
+ * with the breakpoint checked before each; the others run as usual. While
+ * any watchpoint is set, translated code is not used, because it reads and
+ * writes memory without going through the CPU.
+ */
+public class BlockEngine implements Memory.StoreListener {
+    static final int MAX_BLOCK_LENGTH = 64;
+    static final int JIT_THRESHOLD = 1000;
+
+    private final Memory memory;
+    private final BasicBlock[] blocks;  // indexed by start address
+    private final boolean[] translated; // addresses covered by some block since the last flush
+    private final JitCompiler jit;      // null when the JIT tier is off
+    private final int[] jitState = new int[JitCompiler.STATE_SIZE];
+
+    public BlockEngine(Memory memory) {
+        this(memory, false);
+    }
+
+    public BlockEngine(Memory memory, boolean jitEnabled) {
+        this.memory = memory;
+        this.blocks = new BasicBlock[memory.getSize()];
+        this.translated = new boolean[memory.getSize()];
+        this.jit = jitEnabled ? new JitCompiler(memory.getSize()) : null;
+        memory.addStoreListener(this);
+    }
+
+    public boolean isJitEnabled() {
+        return jit != null;
+    }
+
+    /**
+     * Runs the CPU from its current PC until it halts, an IN stalls, a
+     * breakpoint or watchpoint is hit, or {@code maxInstructions} have executed.
+     * @return Number of instructions executed
+     */
+    public long run(CPU cpu, long maxInstructions) {
+        long executed = 0;
+        BasicBlock block = null;
+        Breakpoints breakpoints = cpu.getBreakpoints();
+        boolean useCompiled = breakpoints == null || !breakpoints.hasWatchpoints();
+        while (executed < maxInstructions && !cpu.isHalted()) {
+            int pc = cpu.getPC();
+            if (pc >= blocks.length) {
+                // Fetch will fault; let the interpreter raise it
+                cpu.step();
+                executed++;
+                continue;
+            }
+            block = (block == null) ? lookup(pc) : successor(block, pc);
+
+            int limit = (int) Math.min(maxInstructions - executed, MAX_BLOCK_LENGTH);
+            if (breakpoints != null && block.containsBreakpoint(breakpoints)) {
+                executed += block.stepThrough(cpu, limit, executed == 0);
+                if (cpu.isInputStalled() || cpu.isBreakHit()) {
+                    break;
+                }
+                continue;
+            }
+            if (block.compiled != null && limit >= block.compiledLength && useCompiled) {
+                cpu.saveState(jitState);
+                executed += block.compiled.run(jitState, memory, block);
+                cpu.loadState(jitState);
+                if (jitState[JitCompiler.STATE_FETCHED] != 0) {
+                    cpu.executeFetched(); // a fault the compiled code left to the interpreter
+                    executed++;
+                }
+                continue;
+            }
+            executed += block.execute(cpu, limit);
+            if (jit != null && !block.jitAttempted && block.valid && ++block.executions >= JIT_THRESHOLD) {
+                compile(block);
+            }
+            if (cpu.isInputStalled() || cpu.isBreakHit()) {
+                break;
+            }
+        }
+        return executed;
+    }
+
+    private void compile(BasicBlock block) {
+        block.jitAttempted = true;
+        block.compiled = jit.compile(block);
+        if (block.compiled != null) {
+            int length = 0;
+            while (length < block.instructions.length && JitCompiler.isSupported(block.instructions[length])) {
+                length++;
+            }
+            block.compiledLength = length;
+        }
+    }
+
+    /** Follows the cached successor link of {@code from}, translating and linking if needed. */
+    private BasicBlock successor(BasicBlock from, int pc) {
+        BasicBlock next = (pc == from.end + 1) ? from.fallthrough : from.taken;
+        if (next != null && next.valid && next.start == pc) {
+            return next;
+        }
+        next = lookup(pc);
+        if (from.valid) {
+            if (pc == from.end + 1) {
+                from.fallthrough = next;
+            } else {
+                from.taken = next;
+            }
+        }
+        return next;
+    }
+
+    /** Returns the block starting at {@code pc}, translating it on first use. */
+    BasicBlock lookup(int pc) {
+        BasicBlock block = blocks[pc];
+        if (block == null) {
+            block = translate(pc);
+            blocks[pc] = block;
+            for (int a = block.start; a <= block.end; a++) {
+                translated[a] = true;
+            }
+        }
+        return block;
+    }
+
+    private BasicBlock translate(int start) {
+        DecodedInstruction[] buffer = new DecodedInstruction[MAX_BLOCK_LENGTH];
+        int length = 0;
+        int address = start;
+        while (length < MAX_BLOCK_LENGTH && address < blocks.length) {
+            DecodedInstruction instr = DecodedInstruction.decode(memory.peek(address));
+            buffer[length++] = instr;
+            address++;
+            if (instr.endsBlock()) {
+                break;
+            }
+        }
+        return new BasicBlock(start, Arrays.copyOf(buffer, length));
+    }
+
+    @Override
+    public void wordStored(int address) {
+        if (!translated[address]) {
+            return;
+        }
+        // A block covering this address must start at most MAX_BLOCK_LENGTH - 1 words before it
+        for (int s = Math.max(0, address - MAX_BLOCK_LENGTH + 1); s <= address; s++) {
+            BasicBlock block = blocks[s];
+            if (block != null && block.covers(address)) {
+                block.valid = false;
+                blocks[s] = null;
+            }
+        }
+    }
+
+    @Override
+    public void allWordsChanged() {
+        for (BasicBlock block : blocks) {
+            if (block != null) {
+                block.valid = false;
+            }
+        }
+        Arrays.fill(blocks, null);
+        Arrays.fill(translated, false);
+    }
+}
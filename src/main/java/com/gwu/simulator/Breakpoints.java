@@ -0,0 +1,229 @@
+package com.gwu.simulator;
+
+import java.util.Arrays;
+
+/**
+ * PC breakpoints and memory read/write watchpoints over the 12-bit address
+ * space, kept as bitsets so the CPU can check an address with one bit test.
+ * A PC breakpoint may carry a {@link Condition} on a register; it then only
+ * stops when the condition holds.
+ *
+ * A PC breakpoint stops a run before the instruction at that address
+ * executes; a watchpoint stops it after the instruction that touched the
+ * watched word. Instruction fetches do not trigger read watchpoints.
+ * Single steps never stop at PC breakpoints.
+ *
+ * Change breakpoints only from the thread that runs the CPU (for the GUI,
+ * through a MachineDriver command).
+ */
+public class Breakpoints {
+    public static final int ADDRESS_SPACE = 1 << 12;
+
+    /** What stopped a run. */
+    public enum Kind { PC, READ, WRITE }
+
+    private final long[] pcBits = new long[ADDRESS_SPACE >> 6];
+    private final long[] readBits = new long[ADDRESS_SPACE >> 6];
+    private final long[] writeBits = new long[ADDRESS_SPACE >> 6];
+    private final Condition[] conditions = new Condition[ADDRESS_SPACE]; // null for unconditional
+    private int pcCount;    // addresses with a PC breakpoint
+    private int watchCount; // addresses with a read or write watch
+    private int version;    // bumped whenever PC breakpoints change (see BasicBlock)
+
+    /** Stops before the instruction at {@code pc}. */
+    public void addBreakpoint(int pc) {
+        addBreakpoint(pc, null);
+    }
+
+    /** Stops before the instruction at {@code pc} if {@code condition} (may be null) holds then. */
+    public void addBreakpoint(int pc, Condition condition) {
+        checkAddress(pc);
+        if (!isBreakpoint(pc)) {
+            pcCount++;
+        }
+        pcBits[pc >>> 6] |= 1L << pc;
+        conditions[pc] = condition;
+        version++;
+    }
+
+    /** Adds a breakpoint written as {@code <octal pc>[:<condition>]}, e.g. {@code 120:R1==5}. */
+    public void addBreakpoint(String spec) {
+        int colon = spec.indexOf(':');
+        int pc = Integer.parseInt((colon < 0 ? spec : spec.substring(0, colon)).trim(), 8);
+        addBreakpoint(pc, colon < 0 ? null : Condition.parse(spec.substring(colon + 1)));
+    }
+
+    public void removeBreakpoint(int pc) {
+        checkAddress(pc);
+        if (isBreakpoint(pc)) {
+            pcCount--;
+        }
+        pcBits[pc >>> 6] &= ~(1L << pc);
+        conditions[pc] = null;
+        version++;
+    }
+
+    /** Watches {@code low..high} (inclusive) for data reads ({@link Kind#READ}) or writes ({@link Kind#WRITE}). */
+    public void addWatchpoint(Kind kind, int low, int high) {
+        setWatch(watchBits(kind), low, high, true);
+    }
+
+    /** Adds a watchpoint over {@code <octal low>[-<octal high>]}. */
+    public void addWatchpoint(Kind kind, String range) {
+        String[] bounds = range.split("-");
+        int low = Integer.parseInt(bounds[0].trim(), 8);
+        addWatchpoint(kind, low, bounds.length > 1 ? Integer.parseInt(bounds[1].trim(), 8) : low);
+    }
+
+    public void removeWatchpoint(Kind kind, int low, int high) {
+        setWatch(watchBits(kind), low, high, false);
+    }
+
+    /** Removes every breakpoint and watchpoint. */
+    public void clear() {
+        Arrays.fill(pcBits, 0);
+        Arrays.fill(readBits, 0);
+        Arrays.fill(writeBits, 0);
+        Arrays.fill(conditions, null);
+        pcCount = 0;
+        watchCount = 0;
+        version++;
+    }
+
+    public boolean isBreakpoint(int pc) {
+        return (pcBits[pc >>> 6] & (1L << pc)) != 0;
+    }
+
+    public boolean isWatchedRead(int address) {
+        return (readBits[address >>> 6] & (1L << address)) != 0;
+    }
+
+    public boolean isWatchedWrite(int address) {
+        return (writeBits[address >>> 6] & (1L << address)) != 0;
+    }
+
+    /** Number of addresses with a PC breakpoint or a watchpoint. */
+    public int getCount() {
+        return pcCount + watchCount;
+    }
+
+    /** True if any address is watched; translated code cannot be used then. */
+    public boolean hasWatchpoints() {
+        return watchCount > 0;
+    }
+
+    /** True if a PC breakpoint lies in {@code low..high} (inclusive). */
+    public boolean anyBreakpointIn(int low, int high) {
+        for (int word = low >>> 6; word <= high >>> 6; word++) {
+            long bits = pcBits[word];
+            if (word == low >>> 6) {
+                bits &= -1L << low;
+            }
+            if (word == high >>> 6) {
+                bits &= -1L >>> (63 - (high & 63));
+            }
+            if (bits != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** True if the breakpoint at {@code pc} (known to be set) should stop now. */
+    boolean conditionHolds(CPU cpu, int pc) {
+        Condition condition = conditions[pc];
+        return condition == null || condition.test(cpu);
+    }
+
+    int getVersion() {
+        return version;
+    }
+
+    private long[] watchBits(Kind kind) {
+        switch (kind) {
+            case READ: return readBits;
+            case WRITE: return writeBits;
+            default: throw new IllegalArgumentException("Not a watchpoint kind: " + kind);
+        }
+    }
+
+    private void setWatch(long[] bits, int low, int high, boolean on) {
+        checkAddress(low);
+        checkAddress(high);
+        for (int address = low; address <= high; address++) {
+            boolean wasWatched = isWatchedRead(address) || isWatchedWrite(address);
+            if (on) {
+                bits[address >>> 6] |= 1L << address;
+            } else {
+                bits[address >>> 6] &= ~(1L << address);
+            }
+            boolean watched = isWatchedRead(address) || isWatchedWrite(address);
+            watchCount += (watched ? 1 : 0) - (wasWatched ? 1 : 0);
+        }
+    }
+
+    private static void checkAddress(int address) {
+        if (address < 0 || address >= ADDRESS_SPACE) {
+            throw new IllegalArgumentException("Address out of range: " + address);
+        }
+    }
+
+    /**
+     * A comparison of one register against a constant, e.g. {@code R1==5} or
+     * {@code X2>=100}. Registers are R0-R3, X1-X3 and CC; values are decimal
+     * and compared as signed 16-bit numbers.
+     */
+    public static final class Condition {
+        private static final String[] OPERATORS = {"==", "!=", "<=", ">=", "<", ">"};
+
+        private final String register;
+        private final String operator;
+        private final int value;
+
+        public Condition(String register, String operator, int value) {
+            this.register = register.toUpperCase();
+            this.operator = operator;
+            this.value = value;
+            if (!this.register.matches("R[0-3]|X[1-3]|CC")) {
+                throw new IllegalArgumentException("Unknown register: " + register);
+            }
+            if (!Arrays.asList(OPERATORS).contains(operator)) {
+                throw new IllegalArgumentException("Unknown operator: " + operator);
+            }
+        }
+
+        /** Parses {@code <register><operator><decimal value>}. */
+        public static Condition parse(String text) {
+            for (String operator : OPERATORS) {
+                int at = text.indexOf(operator);
+                if (at > 0) {
+                    return new Condition(text.substring(0, at).trim(), operator,
+                            Integer.parseInt(text.substring(at + operator.length()).trim()));
+                }
+            }
+            throw new IllegalArgumentException("Not a condition: " + text);
+        }
+
+        boolean test(CPU cpu) {
+            int actual;
+            switch (register.charAt(0)) {
+                case 'R': actual = (short) cpu.getGPR(register.charAt(1) - '0'); break;
+                case 'X': actual = (short) cpu.getIXR(register.charAt(1) - '0'); break;
+                default: actual = cpu.getCC(); break;
+            }
+            switch (operator) {
+                case "==": return actual == value;
+                case "!=": return actual != value;
+                case "<=": return actual <= value;
+                case ">=": return actual >= value;
+                case "<": return actual < value;
+                default: return actual > value;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return register + operator + value;
+        }
+    }
+}
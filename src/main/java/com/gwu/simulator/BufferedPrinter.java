@@ -0,0 +1,110 @@
+package com.gwu.simulator;
+
+/**
+ * Console printer device (devid 1). OUT appends the value's decimal text to
+ * a fixed-size char buffer without allocating; the buffer goes to the
+ * {@link PrinterSink} in one bulk write when it fills up, when the oldest
+ * unwritten character is older than the flush delay, or on {@link #flush()}.
+ *
+ * Not thread-safe: use it from the execution thread only.
+ */
+public class BufferedPrinter implements Device {
+    public static final int DEFAULT_CAPACITY = 8192;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 50;
+    private static final int MAX_VALUE_CHARS = 7; // "-32768" plus newline
+
+    private final PrinterSink sink;
+    private final char[] buffer;
+    private final long maxDelayNanos;
+    private int length;
+    private long firstPendingNanos; // when the oldest buffered character was added
+    private long charsWritten;
+
+    public BufferedPrinter(PrinterSink sink) {
+        this(sink, DEFAULT_CAPACITY, DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+    public BufferedPrinter(PrinterSink sink, int capacity, long maxDelayMillis) {
+        if (capacity < MAX_VALUE_CHARS) {
+            throw new IllegalArgumentException("Printer buffer too small: " + capacity);
+        }
+        this.sink = sink;
+        this.buffer = new char[capacity];
+        this.maxDelayNanos = maxDelayMillis * 1_000_000L;
+    }
+
+    /** OUT: prints the 16-bit word as signed decimal (bit 15 set means negative). */
+    @Override
+    public void write(int value) {
+        printDecimal((short) value);
+    }
+
+    /** Prints a 16-bit value as signed decimal on its own line. */
+    public void printDecimal(short word) {
+        if (buffer.length - length < MAX_VALUE_CHARS) {
+            flush();
+        }
+        markPending();
+        int value = word; // -(-32768) still fits
+        if (value < 0) {
+            buffer[length++] = '-';
+            value = -value;
+        }
+        // Write the digits backwards into place
+        int digits = 1;
+        for (int v = value / 10; v != 0; v /= 10) {
+            digits++;
+        }
+        for (int k = length + digits - 1; k >= length; k--) {
+            buffer[k] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+        buffer[length++] = '\n';
+        flushIfDue();
+    }
+
+    /** Prints a line of text. */
+    public void println(CharSequence text) {
+        for (int k = 0; k < text.length(); k++) {
+            if (length == buffer.length) {
+                flush();
+            }
+            markPending();
+            buffer[length++] = text.charAt(k);
+        }
+        if (length == buffer.length) {
+            flush();
+        }
+        markPending();
+        buffer[length++] = '\n';
+        flushIfDue();
+    }
+
+    /** Sends everything buffered to the sink. */
+    @Override
+    public void flush() {
+        if (length > 0) {
+            sink.write(buffer, 0, length);
+            charsWritten += length;
+            length = 0;
+        }
+    }
+
+    /** Characters handed to the sink so far. */
+    public long getCharsWritten() {
+        return charsWritten;
+    }
+
+    private void markPending() {
+        if (length == 0) {
+            firstPendingNanos = System.nanoTime();
+        }
+    }
+
+    private void flushIfDue() {
+        if (System.nanoTime() - firstPendingNanos >= maxDelayNanos) {
+            flush();
+        }
+    }
+}
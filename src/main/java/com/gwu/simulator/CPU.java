@@ -5,10 +5,21 @@ import java.util.function.Supplier;
 
 public class CPU {
     private boolean halted;
+    private boolean inputStalled; // last IN found no input and will be retried
+    private int stalledDevid;     // DEVID the stalled IN is waiting on
     private Memory memory;
-    // Optional UI/device hooks for I/O
-    private Supplier<Integer> consoleInputSupplier; // supplies next console input (octal int)
-    private Consumer<String> printerConsumer;       // consumes text lines for printer/console output
+    private final DecodeCache decodeCache; // decoded instructions by address
+    private EngineType engine = EngineType.INTERPRETER;
+    private BlockEngine blockEngine; // created when a block engine is first selected
+    private Tracer tracer;           // null when tracing is off
+    private int lastEA = -1;         // effective address of the last instruction, for tracers
+    private boolean hasLastEA;       // false if the last instruction computed none (lastEA can be negative)
+    private Breakpoints breakpoints; // null when none are set
+    private Breakpoints.Kind breakKind; // what stopped the last run, or null
+    private int breakAddress;
+    private int resumePc = -1;       // PC breakpoint the next run starts on without stopping
+    private int skipBreakAt = -1;    // resumePc as taken by the current run
+    private final DeviceBus devices = new DeviceBus(); // targets of IN, OUT and CHK
 
     private int PC; // 12-bit Program Counter
     private int IR; // 16-bit Instruction Register
@@ -21,16 +32,130 @@ public class CPU {
 
     public CPU(Memory memory) {
         this.memory = memory;
+        this.decodeCache = new DecodeCache(memory.getSize());
+        memory.addStoreListener(decodeCache);
         reset();
     }
 
+    /** Devices reachable through IN, OUT and CHK. */
+    public DeviceBus getDevices() {
+        return devices;
+    }
+
     // Wiring methods for I/O without coupling to UI classes
+
+    /**
+     * Console keyboard (devid 0): the supplier returns the next input value,
+     * or null if none is waiting. A supplier that is also a {@link Device}
+     * is attached as it is.
+     */
     public void setConsoleInputSupplier(Supplier<Integer> supplier) {
-        this.consoleInputSupplier = supplier;
+        if (supplier == null || supplier instanceof Device) {
+            devices.attach(DeviceBus.KEYBOARD, (Device) supplier);
+            return;
+        }
+        devices.attach(DeviceBus.KEYBOARD, new Device() {
+            @Override
+            public Integer read() {
+                return supplier.get();
+            }
+        });
     }
 
+    /** Unbuffered printer hook: called once per OUT to devid 1. Prefer {@link #setPrinter} for output-heavy programs. */
     public void setPrinterConsumer(Consumer<String> consumer) {
-        this.printerConsumer = consumer;
+        if (consumer == null) {
+            devices.attach(DeviceBus.PRINTER, null);
+            return;
+        }
+        devices.attach(DeviceBus.PRINTER, new Device() {
+            @Override
+            public void write(int value) {
+                consumer.accept(String.valueOf((short) value));
+            }
+        });
+    }
+
+    /** Buffered printer for OUT to devid 1; replaces any printer consumer. */
+    public void setPrinter(BufferedPrinter printer) {
+        devices.attach(DeviceBus.PRINTER, printer);
+    }
+
+    /** Writes out anything the devices are holding. */
+    public void flushOutput() {
+        devices.flush();
+    }
+
+    /** Selects the engine used by {@link #execute(long)}. Single steps always use the interpreter. */
+    public void setEngine(EngineType engine) {
+        if (engine != EngineType.INTERPRETER) {
+            boolean jit = engine == EngineType.JIT;
+            if (blockEngine == null || blockEngine.isJitEnabled() != jit) {
+                if (blockEngine != null) {
+                    memory.removeStoreListener(blockEngine);
+                }
+                blockEngine = new BlockEngine(memory, jit);
+            }
+        }
+        this.engine = engine;
+    }
+
+    public EngineType getEngine() {
+        return engine;
+    }
+
+    /**
+     * Installs a tracer that sees every executed instruction, or removes it
+     * when {@code tracer} is null. While a tracer is installed every engine
+     * falls back to the interpreter so no instruction is missed.
+     */
+    public void setTracer(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    public Tracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Effective address computed by the last traced instruction, or -1 if it
+     * had none. An indexed address can itself be negative, so check
+     * {@link #hasLastEffectiveAddress()} rather than the sign.
+     */
+    public int getLastEffectiveAddress() {
+        return lastEA;
+    }
+
+    /** True if the last traced instruction computed an effective address. */
+    public boolean hasLastEffectiveAddress() {
+        return hasLastEA;
+    }
+
+    /**
+     * Installs PC breakpoints and watchpoints checked by {@link #execute(long)},
+     * or removes them when {@code breakpoints} is null.
+     */
+    public void setBreakpoints(Breakpoints breakpoints) {
+        this.breakpoints = breakpoints;
+    }
+
+    public Breakpoints getBreakpoints() {
+        return breakpoints;
+    }
+
+    /** True if the last run stopped at a breakpoint or watchpoint. */
+    public boolean isBreakHit() {
+        return breakKind != null;
+    }
+
+    /** What stopped the last run, or null if it was not a breakpoint or watchpoint. */
+    public Breakpoints.Kind getBreakKind() {
+        return breakKind;
+    }
+
+    /** PC of the breakpoint, or the watched address, that stopped the last run. */
+    public int getBreakAddress() {
+        return breakAddress;
     }
 
     public void run(Runnable updateDisplay) {
@@ -49,114 +174,136 @@ public class CPU {
         runThread.start();
     }
 
+    /**
+     * Executes instructions back to back, without any display updates or delays,
+     * until the CPU halts, {@code maxInstructions} have run, an IN instruction
+     * finds no input waiting, or a breakpoint or watchpoint is hit. A run that
+     * starts on the breakpoint that stopped the previous one executes it.
+     * @param maxInstructions Upper bound on instructions to execute
+     * @return Number of instructions executed
+     */
+    public long execute(long maxInstructions) {
+        inputStalled = false;
+        breakKind = null;
+        skipBreakAt = resumePc;
+        resumePc = -1;
+        if (engine != EngineType.INTERPRETER && tracer == null) {
+            return blockEngine.run(this, maxInstructions);
+        }
+        if (breakpoints != null) {
+            return executeWithBreakpoints(maxInstructions);
+        }
+        long executed = 0;
+        while (executed < maxInstructions && !halted) {
+            step();
+            if (inputStalled) {
+                break; // IN was rolled back, so it does not count as executed
+            }
+            executed++;
+        }
+        return executed;
+    }
+
+    private long executeWithBreakpoints(long maxInstructions) {
+        long executed = 0;
+        while (executed < maxInstructions && !halted) {
+            if (stopsAt(PC, executed == 0)) {
+                break;
+            }
+            step();
+            if (inputStalled) {
+                break;
+            }
+            executed++;
+            if (breakKind != null) {
+                break; // watchpoint
+            }
+        }
+        return executed;
+    }
+
+    /**
+     * Checks for a PC breakpoint before the instruction at {@code pc} runs and
+     * records the hit.
+     * @param first True for the first instruction of a run
+     * @return true if execution must stop before this instruction
+     */
+    boolean stopsAt(int pc, boolean first) {
+        if (!breakpoints.isBreakpoint(pc) || (first && pc == skipBreakAt) || !breakpoints.conditionHolds(this, pc)) {
+            return false;
+        }
+        breakKind = Breakpoints.Kind.PC;
+        breakAddress = pc;
+        resumePc = pc;
+        return true;
+    }
+
+    /** True if the last IN instruction found no input and rolled the PC back to retry. */
+    public boolean isInputStalled() {
+        return inputStalled;
+    }
+
+    /** DEVID the last stalled IN was reading from. */
+    public int getStalledDevid() {
+        return stalledDevid;
+    }
+
     public void step() {
+        if (tracer != null) { // the only cost of tracing when it is off
+            tracedStep();
+            return;
+        }
+        int address = PC;
+        fetch();
+        DecodedInstruction instr = decodeCache.get(address, IR);
+        instr.handler.execute(this, instr);
+    }
+
+    private void tracedStep() {
+        int address = PC;
+        tracer.beforeInstruction(this, address);
+        lastEA = -1;
+        hasLastEA = false;
         fetch();
-        decodeAndExecute();
+        DecodedInstruction instr = decodeCache.get(address, IR);
+        instr.handler.execute(this, instr);
+        tracer.afterInstruction(this, address, instr);
     }
 
     public void fetch() {
-        readMemory(PC);
+        loadWord(PC, Memory.AccessType.FETCH); // fetches do not trigger read watchpoints
         setIR(MBR);
         setPC(PC + 1);
     }
 
-    public void decodeAndExecute() {
-        int opcode = (IR >> 10) & 0x3F;
-        System.out.println("Executing opcode: " + opcode);
-        
-        switch (opcode) {
-            case 0:  // HLT
-                executeHaltInstruction();
-                break;
-            case 1:  // LDR
-            case 2:  // STR
-            case 3:  // LDA
-            case 33: // LDX
-            case 34: // STX
-                executeLoadStoreInstruction();
-                break;
-            case 4:  // AMR
-                executeArithmeticMemory('+');
-                break;
-            case 5:  // SMR
-                executeArithmeticMemory('-');
-                break;
-            case 6:  // AIR
-                executeArithmeticImmediate('+');
-                break;
-            case 7:  // SIR
-                executeArithmeticImmediate('-');
-                break;
-            case 10: // JZ
-            case 11: // JNE
-            case 12: // JCC
-            case 13: // JMA
-            case 14: // JSR
-            case 15: // RFS
-            case 16: // SOB
-            case 17: // JGE
-                executeJumpInstruction(opcode);
-                break;
-            case 20: // MLT
-            case 21: // DVD
-            case 22: // TRR
-            case 23: // AND
-            case 24: // ORR
-            case 25: // NOT
-                executeArithmeticRegister(opcode);
-                break;
-            case 31: // SRC
-            case 32: // RRC
-                executeShiftRotate(opcode);
-                break;
-            case 61: // IN
-            case 62: // OUT
-                executeIO(opcode);
-                break;
-            default:
-                setMFR(1); // Set illegal opcode fault
-                System.out.println("Illegal opcode: " + opcode);
-                halt();
-        }
+    /**
+     * Executes the instruction in IR, already fetched from PC - 1 by compiled
+     * code that left it to the interpreter (see JitCompiler), without fetching it again.
+     */
+    void executeFetched() {
+        int address = (PC - 1) & 0xFFF;
+        DecodedInstruction instr = decodeCache.get(address, IR);
+        instr.handler.execute(this, instr);
     }
 
-    public void executeHaltInstruction() {
-        halt();
-    }
-
-    public void executeLoadStoreInstruction() {
-        int opcode = (IR >> 10) & 0x3F;
-        int r = (IR >> 8) & 0x3;
-        int ix = (IR >> 6) & 0x3;
-        int i = (IR >> 5) & 1;
-        int address = IR & 0x1F;
-        System.out.println("Load/Store Instruction" + opcode + " r" + r + " ix" + ix + " i" + i + " adr" + address);
-        if (opcode == 1) { // load register from memory
-            int ea = getEA(i, ix, address);
-            System.out.println("Effective Address: " + ea);
-            readMemory(ea);
-            setGPR(r, MBR);
-        } else if (opcode == 2) {
-            int ea = getEA(i, ix, address);
-            int valueToWrite = getGPR(r);
-            writeMemory(ea, valueToWrite);
-        } else if (opcode == 3) {
-            int ea = getEA(i, ix, address);
-            setGPR(r, ea);
-        } else if (opcode == 33) {
-            int ea = getEA(i, 0, address);
-            readMemory(ea);
-            setIXR(ix, MBR);
-        } else if (opcode == 34) {
-            int ea = getEA(i, 0, address);
-            int valueToWrite = getIXR(ix);
-            writeMemory(ea, valueToWrite);
+    /** Decodes whatever is in IR (bypassing the decode cache) and executes it. */
+    public void decodeAndExecute() {
+        DecodedInstruction instr = DecodedInstruction.decode(IR);
+        if (tracer != null) {
+            int address = (PC - 1) & 0xFFF; // fetch already advanced PC
+            tracer.beforeInstruction(this, address);
+            lastEA = -1;
+            hasLastEA = false;
+            instr.handler.execute(this, instr);
+            tracer.afterInstruction(this, address, instr);
+            return;
         }
+        instr.handler.execute(this, instr);
     }
 
     public void manual_load() {
-        System.out.println("Manual load from address: " + MAR);
         readMemory(MAR);
+        if (tracer != null) tracer.panelAccess(this, false, MAR, MBR);
     }
 
     public void manual_load_plus() {
@@ -165,8 +312,7 @@ public class CPU {
     }
 
     public void manual_store() {
-        System.out.println("Manual store to address: " + MAR);
-        System.out.println("Manual store to value: " + MBR);
+        if (tracer != null) tracer.panelAccess(this, true, MAR, MBR);
         writeMemory(MAR, MBR);
     }
 
@@ -265,10 +411,75 @@ public class CPU {
         return IXR[i - 1];
     }
 
+    /** Copies registers into the JIT state array (layout in JitCompiler.STATE_*). */
+    void saveState(int[] state) {
+        state[JitCompiler.STATE_PC] = PC;
+        state[JitCompiler.STATE_IR] = IR;
+        state[JitCompiler.STATE_MAR] = MAR;
+        state[JitCompiler.STATE_MBR] = MBR;
+        state[JitCompiler.STATE_CC] = CC;
+        System.arraycopy(GPR, 0, state, JitCompiler.STATE_GPR, GPR.length);
+        System.arraycopy(IXR, 0, state, JitCompiler.STATE_IXR, IXR.length);
+    }
+
+    /** Loads registers back from the JIT state array. */
+    void loadState(int[] state) {
+        setPC(state[JitCompiler.STATE_PC]);
+        setIR(state[JitCompiler.STATE_IR]);
+        setMAR(state[JitCompiler.STATE_MAR]);
+        setMBR(state[JitCompiler.STATE_MBR]);
+        setCC(state[JitCompiler.STATE_CC]);
+        for (int i = 0; i < GPR.length; i++)
+            setGPR(i, state[JitCompiler.STATE_GPR + i]);
+        for (int i = 0; i < IXR.length; i++)
+            setIXR(i + 1, state[JitCompiler.STATE_IXR + i]);
+    }
+
+    /** Register count in {@link #captureRegisters()}: PC IR MAR MBR CC MFR R0-R3 X1-X3 halted. */
+    static final int REGISTER_STATE_SIZE = 14;
+
+    /** Copies every architectural register (and the halted flag) for a checkpoint. */
+    int[] captureRegisters() {
+        return new int[] {
+            PC, IR, MAR, MBR, CC, MFR, GPR[0], GPR[1], GPR[2], GPR[3], IXR[0], IXR[1], IXR[2], halted ? 1 : 0
+        };
+    }
+
+    /** Restores registers saved by {@link #captureRegisters()}. */
+    void restoreRegisters(int[] regs) {
+        setPC(regs[0]);
+        setIR(regs[1]);
+        setMAR(regs[2]);
+        setMBR(regs[3]);
+        setCC(regs[4]);
+        setMFR(regs[5]);
+        for (int i = 0; i < GPR.length; i++)
+            setGPR(i, regs[6 + i]);
+        for (int i = 0; i < IXR.length; i++)
+            setIXR(i + 1, regs[10 + i]);
+        halted = regs[13] != 0;
+        inputStalled = false;
+    }
+
     private void readMemory(int address) {
+        readMemory(address, Memory.AccessType.READ);
+    }
+
+    private void readMemory(int address, Memory.AccessType type) {
+        loadWord(address, type);
+        if (tracer != null) {
+            tracer.memoryAccess(this, false, MAR);
+        }
+        if (breakpoints != null && breakpoints.isWatchedRead(MAR)) {
+            watchHit(Breakpoints.Kind.READ, MAR);
+        }
+    }
+
+    /** MAR = address, MBR = the word there, read as an instruction fetch, operand or indirect address word. */
+    private void loadWord(int address, Memory.AccessType type) {
         try {
             setMAR(address);
-            int content = memory.getValueAt(MAR);
+            int content = memory.read(MAR, type);
             setMBR(content);
         } catch (IllegalArgumentException ex) {
             // Memory bounds fault: set MFR bit (use 0x4) and halt
@@ -289,219 +500,242 @@ public class CPU {
             System.err.println("Memory write fault: " + ex.getMessage());
             halt();
         }
+        if (tracer != null) {
+            tracer.memoryAccess(this, true, MAR);
+        }
+        if (breakpoints != null && breakpoints.isWatchedWrite(MAR)) {
+            watchHit(Breakpoints.Kind.WRITE, MAR);
+        }
+    }
+
+    private void watchHit(Breakpoints.Kind kind, int address) {
+        breakKind = kind;
+        breakAddress = address;
     }
 
     private int getEA(int i, int ix, int address) {
         int ea = (ix == 0) ? address : address + (short) getIXR(ix);
         if (i == 1) {
-            readMemory(ea);
+            readMemory(ea, Memory.AccessType.INDIRECT);
             ea = MBR;
         }
+        lastEA = ea;
+        hasLastEA = true;
         return ea;
     }
 
-    private void executeArithmeticMemory(char op) {
-        int r = (IR >> 8) & 0x3;
-        int ix = (IR >> 6) & 0x3;
-        int i = (IR >> 5) & 1;
-        int address = IR & 0x1F;
-        
-        int ea = getEA(i, ix, address);
+
+    // ---- Instruction handlers, one per opcode (see DecodedInstruction) ----
+
+    void executeHalt(DecodedInstruction instr) {
+        halt();
+    }
+
+    void executeIllegalOpcode(DecodedInstruction instr) {
+        setMFR(1); // Set illegal opcode fault
+        System.err.println("Illegal opcode: " + instr.opcode);
+        halt();
+    }
+
+    void executeLoadRegister(DecodedInstruction instr) { // LDR
+        int ea = getEA(instr.i, instr.ix, instr.address);
         readMemory(ea);
-        int value = MBR;
-        
-        if (op == '+') {
-            value = getGPR(r) + value;
-        } else {
-            value = getGPR(r) - value;
-        }
-        
-        setGPR(r, value);
+        setGPR(instr.r, MBR);
+    }
+
+    void executeStoreRegister(DecodedInstruction instr) { // STR
+        int ea = getEA(instr.i, instr.ix, instr.address);
+        writeMemory(ea, getGPR(instr.r));
+    }
+
+    void executeLoadAddress(DecodedInstruction instr) { // LDA
+        int ea = getEA(instr.i, instr.ix, instr.address);
+        setGPR(instr.r, ea);
+    }
+
+    void executeLoadIndex(DecodedInstruction instr) { // LDX
+        int ea = getEA(instr.i, 0, instr.address);
+        readMemory(ea);
+        setIXR(instr.ix, MBR);
+    }
+
+    void executeStoreIndex(DecodedInstruction instr) { // STX
+        int ea = getEA(instr.i, 0, instr.address);
+        writeMemory(ea, getIXR(instr.ix));
+    }
+
+    void executeAddMemory(DecodedInstruction instr) { // AMR
+        int ea = getEA(instr.i, instr.ix, instr.address);
+        readMemory(ea);
+        int value = getGPR(instr.r) + MBR;
+        setGPR(instr.r, value);
         updateArithmeticFlags(value);
     }
 
-    private void executeArithmeticImmediate(char op) {
-        int r = (IR >> 8) & 0x3;
-        int immediate = IR & 0xFF;
-        
-        // Sign extend the 8-bit immediate value
-        if ((immediate & 0x80) != 0) {
-            immediate |= 0xFF00;
-        }
-        
-        int value;
-        if (op == '+') {
-            value = getGPR(r) + immediate;
-        } else {
-            value = getGPR(r) - immediate;
-        }
-        
-        setGPR(r, value);
+    void executeSubtractMemory(DecodedInstruction instr) { // SMR
+        int ea = getEA(instr.i, instr.ix, instr.address);
+        readMemory(ea);
+        int value = getGPR(instr.r) - MBR;
+        setGPR(instr.r, value);
         updateArithmeticFlags(value);
     }
 
-    private void executeArithmeticRegister(int opcode) {
-        int rx = (IR >> 8) & 0x3;
-        int ry = (IR >> 6) & 0x3;
-        
-        switch (opcode) {
-            case 20: // MLT
-                int result = getGPR(rx) * getGPR(ry);
-                setGPR(rx, result & 0xFFFF);
-                setGPR(rx + 1, (result >> 16) & 0xFFFF);
-                break;
-                
-            case 21: // DVD
-                if (getGPR(ry) == 0) {
-                    setMFR(2); // Divide by zero fault
-                    halt();
-                    return;
-                }
-                int quotient = getGPR(rx) / getGPR(ry);
-                int remainder = getGPR(rx) % getGPR(ry);
-                setGPR(rx, quotient);
-                setGPR(rx + 1, remainder);
-                break;
-                
-            case 22: // TRR
-                setCC((getGPR(rx) == getGPR(ry)) ? 1 : 0);
-                break;
-                
-            case 23: // AND
-                setGPR(rx, getGPR(rx) & getGPR(ry));
-                break;
-                
-            case 24: // ORR
-                setGPR(rx, getGPR(rx) | getGPR(ry));
-                break;
-                
-            case 25: // NOT
-                setGPR(rx, ~getGPR(rx));
-                break;
+    void executeAddImmediate(DecodedInstruction instr) { // AIR
+        int value = getGPR(instr.r) + instr.immediate;
+        setGPR(instr.r, value);
+        updateArithmeticFlags(value);
+    }
+
+    void executeSubtractImmediate(DecodedInstruction instr) { // SIR
+        int value = getGPR(instr.r) - instr.immediate;
+        setGPR(instr.r, value);
+        updateArithmeticFlags(value);
+    }
+
+    void executeJumpZero(DecodedInstruction instr) { // JZ
+        int ea = getEA(instr.i, instr.ix, instr.address);
+        if (getGPR(instr.r) == 0) setPC(ea);
+    }
+
+    void executeJumpNotEqual(DecodedInstruction instr) { // JNE
+        int ea = getEA(instr.i, instr.ix, instr.address);
+        if (getGPR(instr.r) != 0) setPC(ea);
+    }
+
+    void executeJumpConditionCode(DecodedInstruction instr) { // JCC
+        int ea = getEA(instr.i, instr.ix, instr.address);
+        if ((getCC() & (1 << instr.r)) != 0) setPC(ea);
+    }
+
+    void executeJump(DecodedInstruction instr) { // JMA
+        int ea = getEA(instr.i, instr.ix, instr.address);
+        setPC(ea);
+    }
+
+    void executeJumpSubroutine(DecodedInstruction instr) { // JSR
+        int ea = getEA(instr.i, instr.ix, instr.address);
+        setGPR(3, PC);  // Store return address in R3
+        setPC(ea);
+    }
+
+    void executeReturnFromSubroutine(DecodedInstruction instr) { // RFS
+        getEA(instr.i, instr.ix, instr.address);
+        setGPR(0, instr.word);  // Store return value in R0
+        setPC(getGPR(3));  // Return to address stored in R3
+    }
+
+    void executeSubtractOneAndBranch(DecodedInstruction instr) { // SOB
+        int ea = getEA(instr.i, instr.ix, instr.address);
+        setGPR(instr.r, getGPR(instr.r) - 1);
+        if (getGPR(instr.r) > 0) setPC(ea);
+    }
+
+    void executeJumpGreaterEqual(DecodedInstruction instr) { // JGE
+        int ea = getEA(instr.i, instr.ix, instr.address);
+        if (getGPR(instr.r) >= 0) setPC(ea);
+    }
+
+    void executeMultiply(DecodedInstruction instr) { // MLT
+        int rx = instr.r;
+        int result = getGPR(rx) * getGPR(instr.ix);
+        setGPR(rx, result & 0xFFFF);
+        setGPR(rx + 1, (result >> 16) & 0xFFFF);
+    }
+
+    void executeDivide(DecodedInstruction instr) { // DVD
+        int rx = instr.r;
+        int ry = instr.ix;
+        if (getGPR(ry) == 0) {
+            setMFR(2); // Divide by zero fault
+            halt();
+            return;
         }
+        int quotient = getGPR(rx) / getGPR(ry);
+        int remainder = getGPR(rx) % getGPR(ry);
+        setGPR(rx, quotient);
+        setGPR(rx + 1, remainder);
     }
 
-    private void executeJumpInstruction(int opcode) {
-        int r = (IR >> 8) & 0x3;
-        int ix = (IR >> 6) & 0x3;
-        int i = (IR >> 5) & 1;
-        int address = IR & 0x1F;
-        
-        int ea = getEA(i, ix, address);
-        
-        switch (opcode) {
-            case 10: // JZ
-                if (getGPR(r) == 0) setPC(ea);
-                break;
-                
-            case 11: // JNE
-                if (getGPR(r) != 0) setPC(ea);
-                break;
-                
-            case 12: // JCC
-                if ((getCC() & (1 << r)) != 0) setPC(ea);
-                break;
-                
-            case 13: // JMA
-                setPC(ea);
-                break;
-                
-            case 14: // JSR
-                setGPR(3, PC);  // Store return address in R3
-                setPC(ea);
-                break;
-                
-            case 15: // RFS
-                int returnValue = IR & 0xFFFF;
-                setGPR(0, returnValue);  // Store return value in R0
-                setPC(getGPR(3));  // Return to address stored in R3
-                break;
-                
-            case 16: // SOB
-                setGPR(r, getGPR(r) - 1);
-                if (getGPR(r) > 0) setPC(ea);
-                break;
-                
-            case 17: // JGE
-                if (getGPR(r) >= 0) setPC(ea);
-                break;
+    void executeTestEquality(DecodedInstruction instr) { // TRR
+        setCC((getGPR(instr.r) == getGPR(instr.ix)) ? 1 : 0);
+    }
+
+    void executeAnd(DecodedInstruction instr) { // AND
+        setGPR(instr.r, getGPR(instr.r) & getGPR(instr.ix));
+    }
+
+    void executeOr(DecodedInstruction instr) { // ORR
+        setGPR(instr.r, getGPR(instr.r) | getGPR(instr.ix));
+    }
+
+    void executeNot(DecodedInstruction instr) { // NOT
+        setGPR(instr.r, ~getGPR(instr.r));
+    }
+
+    void executeShift(DecodedInstruction instr) { // SRC
+        int al = (instr.ix >> 1) & 0x1; // 0 for left, 1 for right
+        int lr = instr.ix & 0x1;        // 0 for logical, 1 for arithmetic
+        int count = instr.address;
+        int value = getGPR(instr.r);
+
+        if (al == 0) { // Left shift (logical and arithmetic are the same)
+            value = value << count;
+        } else if (lr == 0) { // Logical right
+            value = value >>> count;
+        } else { // Arithmetic right
+            value = value >> count;
         }
+        setGPR(instr.r, value);
     }
 
-    private void executeShiftRotate(int opcode) {
-        int r = (IR >> 8) & 0x3;
-        int al = (IR >> 7) & 0x1;  // 0 for left, 1 for right
-        int lr = (IR >> 6) & 0x1;  // 0 for logical, 1 for arithmetic
-        int count = IR & 0x1F;
-        
-        int value = getGPR(r);
-        
-        if (opcode == 31) { // SRC
-            if (al == 0) { // Left shift
-                if (lr == 0) { // Logical
-                    value = value << count;
-                } else { // Arithmetic
-                    value = value << count;
-                }
-            } else { // Right shift
-                if (lr == 0) { // Logical
-                    value = value >>> count;
-                } else { // Arithmetic
-                    value = value >> count;
-                }
+    void executeRotate(DecodedInstruction instr) { // RRC
+        int al = (instr.ix >> 1) & 0x1; // 0 for left, 1 for right
+        int count = instr.address;
+        int value = getGPR(instr.r);
+
+        for (int i = 0; i < count; i++) {
+            if (al == 0) { // Rotate left
+                int msb = (value >> 15) & 1;
+                value = ((value << 1) | msb) & 0xFFFF;
+            } else { // Rotate right
+                int lsb = value & 1;
+                value = ((value >> 1) | (lsb << 15)) & 0xFFFF;
             }
-        } else { // RRC
-            for (int i = 0; i < count; i++) {
-                if (al == 0) { // Rotate left
-                    int msb = (value >> 15) & 1;
-                    value = ((value << 1) | msb) & 0xFFFF;
-                } else { // Rotate right
-                    int lsb = value & 1;
-                    value = ((value >> 1) | (lsb << 15)) & 0xFFFF;
+        }
+        setGPR(instr.r, value);
+    }
+
+    void executeInput(DecodedInstruction instr) { // IN
+        Device device = devices.get(instr.address);
+        if (device != null) {
+            Integer input = device.read();
+            // null means no input available - wait by decrementing PC
+            if (input == null) {
+                setPC(PC - 1); // Retry this instruction next cycle
+                inputStalled = true;
+                resumePc = PC;  // the retry does not stop at a breakpoint on this IN again
+                stalledDevid = instr.address;
+            } else {
+                inputStalled = false;
+                if (input != Device.NO_DATA) { // output-only devices leave the register alone
+                    setGPR(instr.ix, input);
                 }
             }
         }
-        
-        setGPR(r, value);
     }
 
-    private void executeIO(int opcode) {
-        int devid = IR & 0x1F;
-        int r = (IR >> 6) & 0x3;
-        
-        switch (opcode) {
-            case 61: // IN
-                if (devid == 0 && consoleInputSupplier != null) { // Console keyboard
-                    int input = consoleInputSupplier.get();
-                    // If input is -1, it means no input available - wait by decrementing PC
-                    if (input == -1) {
-                        setPC(PC - 1); // Retry this instruction next cycle
-                    } else {
-                        setGPR(r, input);
-                    }
-                }
-                break;
-                
-            case 62: // OUT
-                if (devid == 1 && printerConsumer != null) { // Console printer
-                    // Output as DECIMAL (matching input format)
-                    int value = getGPR(r);
-                    String text;
-                    if ((value & 0x8000) != 0) {
-                        // Negative in two's complement (bit 15 set)
-                        // Convert to signed and display as decimal
-                        int signed = (short) value; // Cast to signed 16-bit
-                        text = String.valueOf(signed); // Display as decimal
-                    } else {
-                        // Positive value - display as decimal
-                        text = String.valueOf(value);
-                    }
-                    printerConsumer.accept(text);
-                }
-                break;
+    void executeOutput(DecodedInstruction instr) { // OUT
+        Device device = devices.get(instr.address);
+        if (device != null) {
+            device.write(getGPR(instr.ix));
         }
     }
 
+    void executeCheck(DecodedInstruction instr) { // CHK
+        Device device = devices.get(instr.address);
+        setGPR(instr.ix, device != null ? device.status() : 0);
+    }
+
     private void updateArithmeticFlags(int result) {
         int cc = 0;
         
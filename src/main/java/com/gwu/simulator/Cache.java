@@ -1,129 +1,542 @@
 package com.gwu.simulator;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
 
 /**
- * Implements a fully associative cache with FIFO replacement policy.
+ * Implements a set-associative cache with a pluggable replacement policy.
  * Cache specifications:
- * - 16 cache lines
- * - Fully associative
- * - FIFO replacement policy
- * - Write-through policy
- * - Unified cache (stores both instructions and data)
+ * - sets x ways lines of blockWords words each; by default 1 x 16 x 1,
+ *   that is 16 single-word lines, fully associative
+ * - Replacement within a set by a {@link ReplacementPolicy}, FIFO by default
+ * - Write-through or write-back, with or without write allocate; Memory
+ *   decides, the cache keeps a dirty bit per line and reports dirty evictions
+ * - Unified cache (stores both instructions and data), or one level of
+ *   a split L1 / L2 hierarchy (see {@link Memory})
+ *
+ * A word at address a lives in block a / blockWords, which maps to set
+ * block % sets. A miss fills the whole block from memory.
+ *
+ * Lookups, fills and evictions are counted in primitive fields as they
+ * happen; {@link #getStats} copies them out and {@link #resetStats} zeroes
+ * them. Clearing the cache leaves them alone.
+ *
+ * Lookups go through an index from block to line, so a hit or miss costs
+ * the same whatever the geometry. Line l is way l % ways of set l / ways.
+ * Each set keeps its empty lines on a stack, lowest index on top; the
+ * policy only picks a victim once a set has no empty line left.
  */
 public class Cache {
     public static final int CACHE_SIZE = 16;
-    private CacheLine[] lines;
-    private Queue<Integer> fifoQueue;  // Queue for FIFO replacement policy
+    public static final int MISS = -1;
+    public static final String DEFAULT_POLICY = "fifo";
+    static final int ADDRESS_SPACE = 1 << 12;
+
+    private final int sets;
+    private final int ways;
+    private final int blockWords;
+    private final int blockShift;
+    private final int lineCount;
+    private final int[] tags;          // address of the first word of the block held by each line
+    private final boolean[] valid;
+    private final boolean[] dirty;
+    private final short[] data;        // blockWords words per line
+    private final int[] lineOf;        // block -> line holding it, or MISS
+    private final int[] freeLines;     // per set, a stack of invalid lines in [set * ways, set * ways + ways)
+    private final int[] freeCount;
+    private final ReplacementPolicy policy;
+    private int evictedDirty = MISS;   // block address of the dirty line the last fill evicted
+    private int validCount;
+    private final boolean[] prefetched; // filled by prefetch and not yet used
+    private boolean prefetchHit;        // the last lookup was the first use of a prefetched line
+
+    // Statistics (see Stats)
+    private long hits;
+    private long misses;
+    private long fills;
+    private long evictions;
+    private long dirtyEvictions;
+    private long conflicts;
+    private long prefetchFills;
+    private long prefetchHits;
+    private long prefetchUnused;
+    private final long[] lineFills;
+
+    public Cache() {
+        this(CACHE_SIZE);
+    }
+
+    /** A fully associative cache of {@code lineCount} one-word lines. */
+    public Cache(int lineCount) {
+        this(1, lineCount, 1);
+    }
+
+    /**
+     * A FIFO cache of {@code sets} sets of {@code ways} lines, each holding a
+     * block of {@code blockWords} words. Sets and block size must be powers of two.
+     */
+    public Cache(int sets, int ways, int blockWords) {
+        this(sets, ways, blockWords, DEFAULT_POLICY);
+    }
 
     /**
-     * Represents a single cache line with tag, valid bit, and data.
+     * As {@link #Cache(int, int, int)}, replacing lines by {@code policy}:
+     * fifo, lru, plru or random[:seed] (see {@link ReplacementPolicy#create}).
      */
-    public static class CacheLine {
-        private int tag;           // Memory address tag
-        private boolean valid;     // Valid bit
-        private short data;        // 16-bit word data
-        
-        public CacheLine() {
-            this.valid = false;
-            this.tag = 0;
-            this.data = 0;
+    public Cache(int sets, int ways, int blockWords, String policy) {
+        if (Integer.bitCount(sets) != 1 || Integer.bitCount(blockWords) != 1 || ways < 1
+                || (long) sets * ways * blockWords > ADDRESS_SPACE) {
+            throw new IllegalArgumentException("Invalid cache geometry: " + sets + " sets x " + ways
+                    + " ways x " + blockWords + " words (sets and block size must be powers of two,"
+                    + " at most " + ADDRESS_SPACE + " words in all)");
         }
+        this.sets = sets;
+        this.ways = ways;
+        this.blockWords = blockWords;
+        this.blockShift = Integer.numberOfTrailingZeros(blockWords);
+        this.lineCount = sets * ways;
+        tags = new int[lineCount];
+        valid = new boolean[lineCount];
+        dirty = new boolean[lineCount];
+        lineFills = new long[lineCount];
+        prefetched = new boolean[lineCount];
+        data = new short[lineCount * blockWords];
+        lineOf = new int[ADDRESS_SPACE >> blockShift];
+        freeLines = new int[lineCount];
+        freeCount = new int[sets];
+        this.policy = ReplacementPolicy.create(policy, sets, ways);
+        Arrays.fill(lineOf, MISS);
+        clear();
+    }
 
-        public String toString() {
-            return String.format("Tag: %04X, Valid: %b, Data: %04X", tag, valid, data & 0xFFFF);
+    /**
+     * Parses a geometry written as {@code <sets>:<ways>:<block words>[:<policy>]},
+     * e.g. {@code 4:2:4} or {@code 4:2:4:lru}; the policy may carry a seed,
+     * as in {@code 1:16:1:random:7}.
+     */
+    public static Cache parse(String geometry) {
+        String[] parts = geometry.split(":", 4);
+        if (parts.length < 3) {
+            throw new IllegalArgumentException("Cache geometry must be sets:ways:blockWords[:policy], got "
+                    + geometry);
         }
+        return new Cache(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()),
+                Integer.parseInt(parts[2].trim()), parts.length == 4 ? parts[3] : DEFAULT_POLICY);
+    }
 
-        // Getters and setters
-        public int getTag() { return tag; }
-        public boolean isValid() { return valid; }
-        public short getData() { return data; }
-        public void setTag(int tag) { this.tag = tag; }
-        public void setValid(boolean valid) { this.valid = valid; }
-        public void setData(short data) { this.data = data; }
+    /** Number of lines (sets x ways). */
+    public int getLineCount() {
+        return lineCount;
     }
 
-    public Cache() {
-        lines = new CacheLine[CACHE_SIZE];
-        for (int i = 0; i < CACHE_SIZE; i++) {
-            lines[i] = new CacheLine();
+    public int getSets() {
+        return sets;
+    }
+
+    public int getWays() {
+        return ways;
+    }
+
+    public int getBlockWords() {
+        return blockWords;
+    }
+
+    /** Name of the replacement policy, e.g. "lru". */
+    public String getPolicy() {
+        return policy.name();
+    }
+
+    /**
+     * Finds the word at an address.
+     * @param address Memory address to look up
+     * @return Slot of the word for {@link #getData} if cache hit, {@link #MISS} if cache miss
+     */
+    public int lookup(int address) {
+        checkAddress(address);
+        int line = lineOf[address >>> blockShift];
+        if (line == MISS) {
+            misses++;
+            return MISS;
+        }
+        hits++;
+        if (prefetched[line]) {
+            prefetched[line] = false;
+            prefetchHits++;
+            prefetchHit = true;
         }
-        fifoQueue = new LinkedList<>();
+        policy.touched(line / ways, line % ways);
+        return (line << blockShift) | (address & (blockWords - 1));
+    }
+
+    /** True if the block holding {@code address} is cached; not counted and not a use for replacement. */
+    public boolean contains(int address) {
+        checkAddress(address);
+        return lineOf[address >>> blockShift] != MISS;
+    }
+
+    /** Word in a slot returned from {@link #lookup} or {@link #fill}. */
+    public short getData(int slot) {
+        return data[slot];
     }
 
     /**
-     * Reads data from cache. Returns null if cache miss.
-     * @param address Memory address to read from
-     * @return Data if cache hit, null if cache miss
+     * Loads the block holding {@code address} from {@code memory} (words past
+     * its end read as 0), replacing the policy's victim if its set is full.
+     * @return Slot of the word at {@code address}
      */
-    public Short read(int address) {
-        for (CacheLine line : lines) {
-            if (line.isValid() && line.getTag() == address) {
-                return line.getData(); // Cache hit
-            }
+    public int fill(int address, MemoryBackend memory) {
+        checkAddress(address);
+        evictedDirty = MISS;
+        int block = address >>> blockShift;
+        int line = lineOf[block];
+        if (line == MISS) {
+            line = allocate(block & (sets - 1));
+            tags[line] = block << blockShift;
+            valid[line] = true;
+            lineOf[block] = line;
         }
-        return null; // Cache miss
+        fills++;
+        lineFills[line]++;
+        prefetched[line] = false;
+        int base = block << blockShift;
+        int slot = line << blockShift;
+        int words = Math.max(0, Math.min(blockWords, memory.size() - base));
+        memory.read(base, data, slot, words);
+        Arrays.fill(data, slot + words, slot + blockWords, (short) 0);
+        return slot | (address & (blockWords - 1));
     }
 
     /**
-     * Writes data to cache using write-through policy.
+     * Fills the block holding {@code address} ahead of demand, as {@link #fill}
+     * does. The first lookup that hits the line counts as a prefetch hit; if
+     * it is evicted first it counts as unused.
+     */
+    public void prefetch(int address, MemoryBackend memory) {
+        int slot = fill(address, memory);
+        prefetched[slot >>> blockShift] = true;
+        prefetchFills++;
+    }
+
+    /** True, once, if the last {@link #lookup} hit a prefetched line for the first time. */
+    public boolean takePrefetchHit() {
+        boolean hit = prefetchHit;
+        prefetchHit = false;
+        return hit;
+    }
+
+    /**
+     * Writes data to cache using write-through policy: the caller also writes
+     * {@code memory}, before or after. On a miss the block is allocated and
+     * filled from {@code memory} first.
      * @param address Memory address
-     * @param data Data to write
-     * @return Index where data was written
+     * @param value Data to write
+     * @param memory Backing memory, for filling the rest of the block
+     * @return Index of the line where data was written
      */
-    public int write(int address, short data) {
-        // First, check if address already exists in cache
-        for (int i = 0; i < CACHE_SIZE; i++) {
-            if (lines[i].isValid() && lines[i].getTag() == address) {
-                lines[i].setData(data);
-                return i;
-            }
+    public int write(int address, short value, MemoryBackend memory) {
+        int slot = lookup(address);
+        if (slot == MISS) {
+            slot = fill(address, memory);
         }
+        data[slot] = value;
+        return slot >>> blockShift;
+    }
 
-        // If not found, need to find a spot or replace
-        int index = findEmptyLine();
-        if (index == -1) {
-            // No empty line, use FIFO replacement
-            index = fifoQueue.remove();
+    /**
+     * Stores {@code value} if the block holding {@code address} is cached,
+     * without allocating or counting as a use for replacement. Keeps a cache
+     * coherent with a store made through another one.
+     * @return True if the block was cached
+     */
+    public boolean update(int address, short value) {
+        checkAddress(address);
+        int line = lineOf[address >>> blockShift];
+        if (line == MISS) {
+            return false;
         }
+        data[(line << blockShift) | (address & (blockWords - 1))] = value;
+        return true;
+    }
 
-        lines[index].setTag(address);
-        lines[index].setValid(true);
-        lines[index].setData(data);
-        fifoQueue.offer(index);
+    /** Marks the line holding a slot from {@link #lookup} or {@link #fill} as newer than memory (write-back). */
+    public void setDirty(int slot) {
+        dirty[slot >>> blockShift] = true;
+    }
 
-        return index;
+    public boolean isDirty(int line) {
+        return dirty[line];
+    }
+
+    /** Lines newer than memory, that is, block write-backs still owed. */
+    public int getDirtyLineCount() {
+        int count = 0;
+        for (int i = 0; i < lineCount; i++) {
+            if (dirty[i]) {
+                count++;
+            }
+        }
+        return count;
     }
 
     /**
-     * Finds an empty cache line.
-     * @return Index of empty line, or -1 if none available
+     * Address of the first word of the dirty block the last {@link #fill}
+     * (or allocating {@link #write}) evicted, or {@link #MISS} if it evicted
+     * none. The caller owes memory that block.
      */
-    private int findEmptyLine() {
-        for (int i = 0; i < CACHE_SIZE; i++) {
-            if (!lines[i].isValid()) {
-                return i;
+    public int getEvictedDirtyBlock() {
+        return evictedDirty;
+    }
+
+    /** Takes an empty line of {@code set}, or evicts the policy's victim, and tells the policy it is filled. */
+    private int allocate(int set) {
+        int line;
+        if (freeCount[set] > 0) {
+            line = freeLines[set * ways + --freeCount[set]];
+            validCount++;
+        } else {
+            line = set * ways + policy.evict(set);
+            lineOf[tags[line] >>> blockShift] = MISS;
+            evictions++;
+            if (validCount < lineCount) {
+                conflicts++; // another set still had room
+            }
+            if (prefetched[line]) {
+                prefetched[line] = false;
+                prefetchUnused++;
+            }
+            if (dirty[line]) {
+                evictedDirty = tags[line];
+                dirty[line] = false;
+                dirtyEvictions++;
             }
         }
-        return -1;
+        policy.filled(set, line % ways);
+        return line;
     }
 
     /**
-     * Gets all cache lines for display purposes.
-     * @return Array of cache lines
+     * Counters of one cache, copied at one moment. Hits and misses count
+     * every lookup, whether for a read or a write. A conflict is an
+     * eviction from a full set while another set still had an empty line,
+     * which a fully associative cache of the same size would not have made.
      */
-    public CacheLine[] getLines() {
-        return lines;
+    public static final class Stats {
+        private final String cache;
+        private final long hits;
+        private final long misses;
+        private final long fills;
+        private final long evictions;
+        private final long dirtyEvictions;
+        private final long conflicts;
+        private final long prefetchFills;
+        private final long prefetchHits;
+        private final long prefetchUnused;
+        private final long[] lineFills;
+
+        Stats(Cache c) {
+            cache = c.toString();
+            hits = c.hits;
+            misses = c.misses;
+            fills = c.fills;
+            evictions = c.evictions;
+            dirtyEvictions = c.dirtyEvictions;
+            conflicts = c.conflicts;
+            prefetchFills = c.prefetchFills;
+            prefetchHits = c.prefetchHits;
+            prefetchUnused = c.prefetchUnused;
+            lineFills = c.lineFills.clone();
+        }
+
+        /** Geometry and policy, as in {@link Cache#toString}. */
+        public String getCache() { return cache; }
+        public long getHits() { return hits; }
+        public long getMisses() { return misses; }
+        public long getLookups() { return hits + misses; }
+        public long getFills() { return fills; }
+        public long getEvictions() { return evictions; }
+        public long getDirtyEvictions() { return dirtyEvictions; }
+        public long getConflicts() { return conflicts; }
+
+        /** Fills made by a prefetcher; also counted in {@link #getFills}. */
+        public long getPrefetchFills() { return prefetchFills; }
+
+        /** Prefetched lines hit by a lookup before they were evicted. */
+        public long getPrefetchHits() { return prefetchHits; }
+
+        /** Prefetched lines evicted before any lookup hit them. */
+        public long getPrefetchUnused() { return prefetchUnused; }
+        public int getLineCount() { return lineFills.length; }
+
+        /** Blocks loaded into a line. */
+        public long getLineFills(int line) { return lineFills[line]; }
+
+        /** Hits as a percentage of lookups (0 if none). */
+        public double getHitRatio() {
+            return hits + misses == 0 ? 0.0 : 100.0 * hits / (hits + misses);
+        }
+    }
+
+    /** Copies the counters. */
+    public Stats getStats() {
+        return new Stats(this);
+    }
+
+    /** Zeroes the counters; the lines stay as they are. */
+    public void resetStats() {
+        hits = 0;
+        misses = 0;
+        fills = 0;
+        evictions = 0;
+        dirtyEvictions = 0;
+        conflicts = 0;
+        prefetchFills = 0;
+        prefetchHits = 0;
+        prefetchUnused = 0;
+        Arrays.fill(lineFills, 0);
+    }
+
+    @Override
+    public String toString() {
+        return sets + " sets x " + ways + " ways x " + blockWords + (blockWords == 1 ? " word" : " words")
+                + ", " + policy.name();
+    }
+
+    /** Immutable copy of the geometry, every line and the policy state, for checkpoints. */
+    static final class Snapshot {
+        final int sets;
+        final int ways;
+        final int blockWords;
+        final String policy;
+        final int[] tags;
+        final boolean[] valid;
+        final boolean[] dirty;
+        final short[] data;
+        final int[] policyState; // from ReplacementPolicy.capture
+
+        Snapshot(int sets, int ways, int blockWords, String policy, int[] policyState) {
+            this.sets = sets;
+            this.ways = ways;
+            this.blockWords = blockWords;
+            this.policy = policy;
+            this.tags = new int[sets * ways];
+            this.valid = new boolean[sets * ways];
+            this.dirty = new boolean[sets * ways];
+            this.data = new short[sets * ways * blockWords];
+            this.policyState = policyState;
+        }
+
+        void write(DataOutput out) throws IOException {
+            out.writeShort(sets);
+            out.writeShort(ways);
+            out.writeShort(blockWords);
+            out.writeUTF(policy);
+            out.writeInt(policyState.length);
+            for (int value : policyState) {
+                out.writeInt(value);
+            }
+            for (int i = 0; i < tags.length; i++) {
+                out.writeBoolean(valid[i]);
+                out.writeBoolean(dirty[i]);
+                out.writeShort(tags[i]);
+                for (int w = 0; w < blockWords; w++) {
+                    out.writeShort(data[i * blockWords + w]);
+                }
+            }
+        }
+
+        static Snapshot read(DataInput in) throws IOException {
+            int sets = in.readUnsignedShort();
+            int ways = in.readUnsignedShort();
+            int blockWords = in.readUnsignedShort();
+            int lineCount = sets * ways;
+            if (lineCount == 0 || (long) lineCount * blockWords > ADDRESS_SPACE) {
+                throw new IOException("Corrupt cache snapshot");
+            }
+            String policy = in.readUTF();
+            int stateLength = in.readInt();
+            if (stateLength < 0 || stateLength > 2 * lineCount + 2) {
+                throw new IOException("Corrupt cache snapshot");
+            }
+            int[] policyState = new int[stateLength];
+            for (int k = 0; k < stateLength; k++) {
+                policyState[k] = in.readInt();
+            }
+            Snapshot snapshot = new Snapshot(sets, ways, blockWords, policy, policyState);
+            for (int i = 0; i < lineCount; i++) {
+                snapshot.valid[i] = in.readBoolean();
+                snapshot.dirty[i] = in.readBoolean();
+                snapshot.tags[i] = in.readShort() & 0xFFFF;
+                for (int w = 0; w < blockWords; w++) {
+                    snapshot.data[i * blockWords + w] = in.readShort();
+                }
+            }
+            return snapshot;
+        }
+    }
+
+    Snapshot capture() {
+        Snapshot snapshot = new Snapshot(sets, ways, blockWords, policy.name(), policy.capture());
+        System.arraycopy(tags, 0, snapshot.tags, 0, lineCount);
+        System.arraycopy(valid, 0, snapshot.valid, 0, lineCount);
+        System.arraycopy(dirty, 0, snapshot.dirty, 0, lineCount);
+        System.arraycopy(data, 0, snapshot.data, 0, data.length);
+        return snapshot;
+    }
+
+    void restore(Snapshot snapshot) {
+        if (snapshot.sets != sets || snapshot.ways != ways || snapshot.blockWords != blockWords
+                || !snapshot.policy.equals(policy.name())) {
+            throw new IllegalArgumentException("Snapshot cache is " + snapshot.sets + " sets x " + snapshot.ways
+                    + " ways x " + snapshot.blockWords + " words, " + snapshot.policy + "; cache is " + this);
+        }
+        clear();
+        Arrays.fill(freeCount, 0);
+        validCount = 0;
+        for (int i = lineCount - 1; i >= 0; i--) {
+            tags[i] = snapshot.tags[i];
+            valid[i] = snapshot.valid[i];
+            dirty[i] = valid[i] && snapshot.dirty[i];
+            if (valid[i]) {
+                checkAddress(tags[i]);
+                lineOf[tags[i] >>> blockShift] = i;
+                validCount++;
+            } else {
+                int set = i / ways;
+                freeLines[set * ways + freeCount[set]++] = i;
+            }
+        }
+        System.arraycopy(snapshot.data, 0, data, 0, data.length);
+        policy.restore(snapshot.policyState);
     }
 
     /**
      * Clears the cache (invalidates all lines).
      */
     public void clear() {
-        for (CacheLine line : lines) {
-            line.setValid(false);
+        for (int i = 0; i < lineCount; i++) {
+            if (valid[i]) {
+                lineOf[tags[i] >>> blockShift] = MISS;
+                valid[i] = false;
+                dirty[i] = false;
+                prefetched[i] = false;
+            }
+        }
+        prefetchHit = false;
+        for (int set = 0; set < sets; set++) {
+            for (int k = 0; k < ways; k++) {
+                freeLines[set * ways + k] = set * ways + ways - 1 - k; // lowest line on top, as a linear scan would find it
+            }
+            freeCount[set] = ways;
+        }
+        validCount = 0;
+        policy.clear();
+    }
+
+    private static void checkAddress(int address) {
+        if (address < 0 || address >= ADDRESS_SPACE) {
+            throw new IllegalArgumentException("Address out of range: " + address);
         }
-        fifoQueue.clear();
     }
-}
\ No newline at end of file
+}
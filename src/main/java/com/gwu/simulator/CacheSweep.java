@@ -0,0 +1,313 @@
+package com.gwu.simulator;
+
+import java.io.*;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static com.gwu.simulator.AddressTraceRecorder.*;
+
+/**
+ * Replays an address trace (see {@link AddressTraceRecorder}) through a grid
+ * of cache configurations in parallel and prints the hit ratio, the writes
+ * that reached memory and the estimated cycles of each. Every configuration
+ * gets its own {@link Memory}, so misses, write-backs and buffered writes
+ * are counted exactly as in a run, and its own {@link TimingModel}, so the
+ * cycles match what {@code HeadlessRunner --timing} reports for that
+ * configuration. The trace is mapped once and shared by every worker.
+ *
+ * Usage: CacheSweep trace.bin [options]
+ *   --sizes <n,...>          total cache words (default 16,32,64,128)
+ *   --ways <n,...>           ways per set; "full" for fully associative (default 1,2,4,full)
+ *   --blocks <n,...>         words per block (default 1,2,4)
+ *   --policies <p,...>       replacement policies (default fifo,lru)
+ *   --write-modes <m,...>    through and/or back (default through,back)
+ *   --write-allocate <y,n>   with and/or without write allocate (default y)
+ *   --timing-config <file>   latencies, as for HeadlessRunner --timing
+ *   --threads <n>            worker threads (default: available processors)
+ */
+public class CacheSweep {
+
+    /** One point of the grid. */
+    public static final class Config {
+        public final int sets;
+        public final int ways;
+        public final int blockWords;
+        public final String policy;
+        public final WriteMode writeMode;
+        public final boolean writeAllocate;
+
+        public Config(int sets, int ways, int blockWords, String policy, WriteMode writeMode, boolean writeAllocate) {
+            this.sets = sets;
+            this.ways = ways;
+            this.blockWords = blockWords;
+            this.policy = policy;
+            this.writeMode = writeMode;
+            this.writeAllocate = writeAllocate;
+        }
+
+        /** As accepted by {@link Cache#parse}. */
+        public String getGeometry() {
+            return sets + ":" + ways + ":" + blockWords + ":" + policy;
+        }
+
+        @Override
+        public String toString() {
+            return getGeometry() + (writeMode == WriteMode.WRITE_BACK ? " back" : " through")
+                    + (writeAllocate ? "" : " no-alloc");
+        }
+    }
+
+    /** Outcome of one replay. {@code error} is set instead of the counts if the configuration was rejected. */
+    public static final class Result {
+        public final Config config;
+        public final long instructions;
+        public final long accesses;
+        public final long misses;
+        public final long memoryWrites;
+        public final long memoryCycles;
+        public final long cycles;
+        public final String error;
+
+        Result(Config config, long instructions, Memory memory, long memoryCycles, long cycles) {
+            this.config = config;
+            this.instructions = instructions;
+            this.accesses = memory.getReadHits() + memory.getReadMisses() + memory.getWrites();
+            this.misses = memory.getReadMisses() + memory.getMisses(Memory.AccessType.WRITE);
+            this.memoryWrites = memory.getMemoryWrites();
+            this.memoryCycles = memoryCycles;
+            this.cycles = cycles;
+            this.error = null;
+        }
+
+        Result(Config config, String error) {
+            this.config = config;
+            this.instructions = 0;
+            this.accesses = 0;
+            this.misses = 0;
+            this.memoryWrites = 0;
+            this.memoryCycles = 0;
+            this.cycles = 0;
+            this.error = error;
+        }
+
+        /** L1 hits as a percentage of all accesses (fetches, reads and writes). */
+        public double getHitRatio() {
+            return accesses == 0 ? 0.0 : 100.0 * (accesses - misses) / accesses;
+        }
+
+        public double getCpi() {
+            return instructions == 0 ? 0.0 : (double) cycles / instructions;
+        }
+    }
+
+    /**
+     * Every valid combination of the axes. A size is split into sets of
+     * {@code ways} lines of {@code blocks} words; combinations that do not
+     * divide evenly into a power-of-two number of sets are left out. A way
+     * count of 0 means fully associative (one set).
+     */
+    public static List<Config> grid(int[] sizes, int[] ways, int[] blocks, String[] policies, WriteMode[] modes,
+            boolean[] allocates) {
+        List<Config> grid = new ArrayList<>();
+        for (int size : sizes) {
+            for (int w : ways) {
+                for (int block : blocks) {
+                    int lineWays = (w == 0) ? size / block : w;
+                    if (block < 1 || lineWays < 1 || size % (lineWays * block) != 0) {
+                        continue;
+                    }
+                    int sets = size / (lineWays * block);
+                    if (Integer.bitCount(sets) != 1 || Integer.bitCount(block) != 1
+                            || (w != 0 && sets == 1 && contains(ways, 0))) {
+                        continue; // the last case is listed under "full"
+                    }
+                    for (String policy : policies) {
+                        for (WriteMode mode : modes) {
+                            for (boolean allocate : allocates) {
+                                grid.add(new Config(sets, lineWays, block, policy, mode, allocate));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return grid;
+    }
+
+    private static boolean contains(int[] values, int value) {
+        for (int v : values) {
+            if (v == value) return true;
+        }
+        return false;
+    }
+
+    /** Replays the whole trace through one configuration. Never throws for a rejected configuration. */
+    public static Result replay(AddressTraceReader trace, Config config, String timingConfig) {
+        Memory memory;
+        TimingModel timing;
+        try {
+            Cache cache = Cache.parse(config.getGeometry());
+            // The whole address space, so a trace from any memory size replays; only the traffic matters
+            memory = new Memory(cache, cache, null, MemoryBackend.create("heap", Memory.MAX_SIZE));
+            memory.setWriteMode(config.writeMode);
+            memory.setWriteAllocate(config.writeAllocate);
+            timing = new TimingModel(memory);
+            if (timingConfig != null) {
+                timing.configure(new StringReader(timingConfig));
+            }
+        } catch (IllegalArgumentException | IOException ex) {
+            return new Result(config, ex.getMessage());
+        }
+        TimingModel.InstructionClass[] classes = TimingModel.InstructionClass.values();
+        long[] classCycles = new long[classes.length];
+        for (TimingModel.InstructionClass c : classes) {
+            classCycles[c.ordinal()] = timing.getExecuteCycles(c);
+        }
+        int takenJumpPenalty = timing.getTakenJumpPenalty();
+
+        IntBuffer records = trace.records();
+        int count = trace.getRecordCount();
+        long instructions = 0;
+        long executeCycles = 0;
+        for (int i = 0; i < count; i++) {
+            int record = records.get(i);
+            int address = record & 0xFFFF;
+            switch ((record >>> KIND_SHIFT) & 3) {
+                case KIND_FETCH -> {
+                    memory.fetchValueAt(address);
+                    instructions++;
+                    executeCycles += classCycles[(record >>> CLASS_SHIFT) & 0xF]
+                            + ((record & TAKEN_JUMP) != 0 ? takenJumpPenalty : 0);
+                }
+                case KIND_READ -> memory.getValueAt(address);
+                case KIND_WRITE -> memory.setValueAt(address, (short) 0); // only the traffic matters
+                default -> throw new IllegalStateException("Corrupt address trace record " + i);
+            }
+        }
+        long memoryCycles = timing.estimateMemoryCycles();
+        return new Result(config, instructions, memory, memoryCycles, executeCycles + memoryCycles);
+    }
+
+    /** Replays {@code grid} on {@code threads} workers; results come back in grid order. */
+    public static List<Result> sweep(AddressTraceReader trace, List<Config> grid, String timingConfig, int threads)
+            throws InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Future<Result>> futures = new ArrayList<>(grid.size());
+            for (Config config : grid) {
+                futures.add(pool.submit(() -> replay(trace, config, timingConfig)));
+            }
+            List<Result> results = new ArrayList<>(grid.size());
+            for (Future<Result> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException ex) {
+                    throw new IllegalStateException("Replay failed", ex.getCause());
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static int[] parseInts(String list) {
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for (int k = 0; k < parts.length; k++) {
+            values[k] = parts[k].trim().equals("full") ? 0 : Integer.parseInt(parts[k].trim());
+        }
+        return values;
+    }
+
+    private static final String USAGE = "Usage: CacheSweep <address-trace> [--sizes n,...] [--ways n|full,...]"
+            + " [--blocks n,...] [--policies p,...] [--write-modes through,back] [--write-allocate y,n]"
+            + " [--timing-config file] [--threads n]";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        int[] sizes = {16, 32, 64, 128};
+        int[] ways = {1, 2, 4, 0};
+        int[] blocks = {1, 2, 4};
+        String[] policies = {"fifo", "lru"};
+        WriteMode[] modes = {WriteMode.WRITE_THROUGH, WriteMode.WRITE_BACK};
+        boolean[] allocates = {true};
+        String timingConfig = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 1; i < args.length; i += 2) {
+            if (i + 1 == args.length) { // every option takes a value
+                System.err.println("Missing value for " + args[i]);
+                System.err.println(USAGE);
+                System.exit(2);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--sizes" -> sizes = parseInts(value);
+                case "--ways" -> ways = parseInts(value);
+                case "--blocks" -> blocks = parseInts(value);
+                case "--policies" -> policies = value.split(",");
+                case "--write-modes" -> {
+                    String[] names = value.split(",");
+                    modes = new WriteMode[names.length];
+                    for (int k = 0; k < names.length; k++) {
+                        modes[k] = WriteMode.valueOf("WRITE_" + names[k].trim().toUpperCase());
+                    }
+                }
+                case "--write-allocate" -> {
+                    String[] flags = value.split(",");
+                    allocates = new boolean[flags.length];
+                    for (int k = 0; k < flags.length; k++) {
+                        allocates[k] = switch (flags[k].trim()) {
+                            case "y" -> true;
+                            case "n" -> false;
+                            default -> throw new IllegalArgumentException("--write-allocate takes y and/or n: " + value);
+                        };
+                    }
+                }
+                case "--timing-config" -> timingConfig = Files.readString(Paths.get(value));
+                case "--threads" -> threads = Integer.parseInt(value);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        AddressTraceReader trace = new AddressTraceReader(Paths.get(args[0]));
+        List<Config> grid = grid(sizes, ways, blocks, policies, modes, allocates);
+        long start = System.nanoTime();
+        List<Result> results = sweep(trace, grid, timingConfig, threads);
+        double millis = (System.nanoTime() - start) / 1_000_000.0;
+
+        System.out.printf("%s, %d accesses, %d configurations on %d threads%n", args[0], trace.getRecordCount(),
+                grid.size(), threads);
+        System.out.printf("%-22s %-17s %6s %9s %10s %14s %8s%n", "cache", "writes", "words", "hit ratio",
+                "mem writes", "cycles", "CPI");
+        Result best = null;
+        for (Result result : results) {
+            Config c = result.config;
+            String writes = (c.writeMode == WriteMode.WRITE_BACK ? "back" : "through")
+                    + (c.writeAllocate ? "" : ", no alloc");
+            if (result.error != null) {
+                System.out.printf("%-22s %-17s %s%n", c.getGeometry(), writes, result.error);
+                continue;
+            }
+            System.out.printf("%-22s %-17s %6d %8.2f%% %10d %14d %8.3f%n", c.getGeometry(), writes,
+                    c.sets * c.ways * c.blockWords, result.getHitRatio(), result.memoryWrites, result.cycles,
+                    result.getCpi());
+            if (best == null || result.cycles < best.cycles) {
+                best = result;
+            }
+        }
+        if (best != null) {
+            System.out.printf("Fewest cycles: %s (%d cycles, CPI %.3f)%n", best.config, best.cycles, best.getCpi());
+        }
+        System.err.printf("Swept in %.1f ms%n", millis);
+    }
+}
@@ -0,0 +1,138 @@
+package com.gwu.simulator;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Card reader device (devid 2 by default): a deck of decimal values in a
+ * file, separated by spaces, commas or newlines like console input. Invalid
+ * tokens are skipped.
+ *
+ * A "card-reader" thread maps the file a window at a time and parses ahead
+ * into an {@link InputChannel}, waiting whenever the channel is full, so the
+ * deck can be far larger than memory and the CPU thread never touches the
+ * file. IN stalls while the reader is behind; CHK reports STATUS_BUSY then,
+ * and STATUS_END once the last card has been read.
+ */
+public class CardReader implements Device {
+    public static final int DEFAULT_BUFFER = 4096;
+    private static final long WINDOW = 1 << 24; // bytes mapped at a time
+    private static final int MAX_DIGITS = 9;    // longer tokens would overflow an int
+
+    private final Path file;
+    private final InputChannel cards;
+    private final Thread thread;
+    private volatile boolean finished;         // every card is in the channel
+    private volatile IOException failure;
+
+    // Parser state, only touched by the reader thread; a token may span two windows
+    private int value;
+    private int digits;
+    private boolean negative;
+    private boolean invalid;
+    private boolean inToken;
+
+    public CardReader(Path file) {
+        this(file, DEFAULT_BUFFER);
+    }
+
+    /** Starts reading {@code file} ahead, keeping at most {@code bufferSize} values waiting. */
+    public CardReader(Path file, int bufferSize) {
+        this.file = file;
+        this.cards = new InputChannel(bufferSize);
+        thread = new Thread(this::readDeck, "card-reader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public Integer read() {
+        return cards.get();
+    }
+
+    @Override
+    public int status() {
+        boolean done = finished; // read first: once set, every card is already in the channel
+        if (cards.size() > 0) {
+            return STATUS_READY;
+        }
+        return done ? STATUS_END : STATUS_BUSY;
+    }
+
+    @Override
+    public boolean awaitInput(long timeout, TimeUnit unit) throws InterruptedException {
+        return cards.awaitInput(timeout, unit);
+    }
+
+    @Override
+    public void wakeUp() {
+        cards.wakeUp();
+    }
+
+    @Override
+    public void close() {
+        thread.interrupt();
+    }
+
+    /** Values handed to the CPU so far. */
+    public long getCardsRead() {
+        return cards.getTakenCount();
+    }
+
+    /** Error that stopped the reader thread early, or null. */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    private void readDeck() {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += WINDOW) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY,
+                        position, Math.min(WINDOW, size - position));
+                while (window.hasRemaining()) {
+                    parse(window.get());
+                }
+            }
+            endToken();
+        } catch (IOException ex) {
+            failure = ex;
+        } catch (InterruptedException ex) {
+            // closed
+        } finally {
+            finished = true;
+            cards.wakeUp();
+        }
+    }
+
+    private void parse(byte b) throws InterruptedException {
+        if (b == ' ' || b == ',' || b == '\n' || b == '\r' || b == '\t' || b == '\f') {
+            endToken();
+            return;
+        }
+        if ((b == '-' || b == '+') && !inToken) {
+            negative = b == '-';
+        } else if (b >= '0' && b <= '9' && digits < MAX_DIGITS) {
+            value = value * 10 + (b - '0');
+            digits++;
+        } else {
+            invalid = true;
+        }
+        inToken = true;
+    }
+
+    private void endToken() throws InterruptedException {
+        if (inToken && !invalid && digits > 0) {
+            cards.put(negative ? -value : value);
+        }
+        value = 0;
+        digits = 0;
+        negative = false;
+        invalid = false;
+        inToken = false;
+    }
+}
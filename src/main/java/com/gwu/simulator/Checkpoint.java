@@ -0,0 +1,123 @@
+package com.gwu.simulator;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Exact machine state at one point of a run: CPU registers, memory and the
+ * lines of every cache with their replacement state. Created by a {@link Checkpointer}.
+ *
+ * A checkpoint is immutable. Memory is held as 64-word pages, and pages that
+ * did not change between two checkpoints are shared rather than copied, so
+ * keeping many checkpoints of a long run is cheap.
+ */
+public final class Checkpoint {
+    private static final int FILE_MAGIC = 0x4353434B; // "CSCK"
+    // 3: cache geometry and blocks, 4: replacement policy state, 5: L1I and L2, 6: dirty bits
+    private static final int VERSION = 6;
+
+    final long instructionCount;
+    final int[] registers;  // see CPU.captureRegisters
+    final short[][] pages;  // never modified once captured
+    final Cache.Snapshot[] caches; // see Memory.captureCaches
+
+    Checkpoint(long instructionCount, int[] registers, short[][] pages, Cache.Snapshot[] caches) {
+        this.instructionCount = instructionCount;
+        this.registers = registers;
+        this.pages = pages;
+        this.caches = caches;
+    }
+
+    /** Instructions executed when the checkpoint was taken, as passed to {@link Checkpointer#capture(long)}. */
+    public long getInstructionCount() {
+        return instructionCount;
+    }
+
+    public int getPC() {
+        return registers[0];
+    }
+
+    /** Word at {@code address} as it was when the checkpoint was taken. */
+    public short getWord(int address) {
+        return pages[address >>> Memory.PAGE_SHIFT][address & (Memory.PAGE_SIZE - 1)];
+    }
+
+    /** Writes the checkpoint to a file. Pages that are all zero are left out. */
+    public void writeTo(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(instructionCount);
+            out.writeByte(registers.length);
+            for (int value : registers) {
+                out.writeShort(value);
+            }
+            out.writeShort(Memory.PAGE_SIZE);
+            out.writeShort(pages.length);
+            for (short[] page : pages) {
+                boolean empty = true;
+                for (short word : page) {
+                    if (word != 0) {
+                        empty = false;
+                        break;
+                    }
+                }
+                out.writeBoolean(!empty);
+                if (!empty) {
+                    for (short word : page) {
+                        out.writeShort(word);
+                    }
+                }
+            }
+            for (Cache.Snapshot cache : caches) {
+                out.writeBoolean(cache != null);
+                if (cache != null) {
+                    cache.write(out);
+                }
+            }
+        }
+    }
+
+    /** Reads a checkpoint written by {@link #writeTo(Path)}. */
+    public static Checkpoint readFrom(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || in.readShort() != VERSION) {
+                throw new IOException("Not a checkpoint file (or unsupported version): " + file);
+            }
+            long instructionCount = in.readLong();
+            int[] registers = new int[in.readUnsignedByte()];
+            if (registers.length != CPU.REGISTER_STATE_SIZE) {
+                throw new IOException("Unexpected register count " + registers.length + " in " + file);
+            }
+            for (int k = 0; k < registers.length; k++) {
+                registers[k] = in.readShort() & 0xFFFF;
+            }
+            int pageSize = in.readUnsignedShort();
+            int pageCount = in.readUnsignedShort();
+            if (pageSize != Memory.PAGE_SIZE) {
+                throw new IOException("Unexpected page size " + pageSize + " in " + file);
+            }
+            short[][] pages = new short[pageCount][];
+            short[] zero = new short[pageSize]; // shared by every empty page
+            for (int k = 0; k < pageCount; k++) {
+                if (in.readBoolean()) {
+                    pages[k] = new short[pageSize];
+                    for (int w = 0; w < pageSize; w++) {
+                        pages[k][w] = in.readShort();
+                    }
+                } else {
+                    pages[k] = zero;
+                }
+            }
+            Cache.Snapshot[] caches = new Cache.Snapshot[3];
+            for (int k = 0; k < caches.length; k++) {
+                caches[k] = in.readBoolean() ? Cache.Snapshot.read(in) : null;
+            }
+            if (caches[0] == null) {
+                throw new IOException("Checkpoint without a data cache: " + file);
+            }
+            return new Checkpoint(instructionCount, registers, pages, caches);
+        }
+    }
+}
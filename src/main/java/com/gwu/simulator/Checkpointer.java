@@ -0,0 +1,63 @@
+package com.gwu.simulator;
+
+import java.util.Arrays;
+
+/**
+ * Captures and restores {@link Checkpoint}s of one machine (CPU plus Memory).
+ *
+ * Memory tracks which 64-word pages were written since the last capture or
+ * restore, so a capture copies only those pages and shares the rest with the
+ * previous checkpoint. A restore likewise copies only pages that differ from
+ * the current contents. Use a single Checkpointer per Memory, since they
+ * share the dirty page set.
+ */
+public class Checkpointer {
+    private final CPU cpu;
+    private final Memory memory;
+    private Checkpoint last; // memory matched this checkpoint, apart from dirty pages
+
+    public Checkpointer(CPU cpu, Memory memory) {
+        this.cpu = cpu;
+        this.memory = memory;
+    }
+
+    /**
+     * Takes a checkpoint of the current state.
+     * @param instructionCount Stored with the checkpoint so runs can be lined up later
+     */
+    public Checkpoint capture(long instructionCount) {
+        int pageCount = memory.getPageCount();
+        short[][] pages = new short[pageCount][];
+        for (int k = 0; k < pageCount; k++) {
+            if (last != null && !memory.isPageDirty(k)) {
+                pages[k] = last.pages[k];
+                continue;
+            }
+            short[] page = new short[Memory.PAGE_SIZE];
+            memory.copyPageOut(k, page);
+            // A page written back to the same contents can still be shared
+            pages[k] = (last != null && Arrays.equals(page, last.pages[k])) ? last.pages[k] : page;
+        }
+        memory.clearDirtyPages();
+        last = new Checkpoint(instructionCount, cpu.captureRegisters(), pages, memory.captureCaches());
+        return last;
+    }
+
+    /** Puts the CPU, memory and caches back exactly as they were when {@code checkpoint} was taken. */
+    public void restore(Checkpoint checkpoint) {
+        int pageCount = memory.getPageCount();
+        if (checkpoint.pages.length != pageCount) {
+            throw new IllegalArgumentException("Checkpoint has " + checkpoint.pages.length
+                    + " pages, memory has " + pageCount);
+        }
+        for (int k = 0; k < pageCount; k++) {
+            if (last == null || memory.isPageDirty(k) || last.pages[k] != checkpoint.pages[k]) {
+                memory.copyPageIn(k, checkpoint.pages[k]);
+            }
+        }
+        memory.pagesRestored();
+        memory.restoreCaches(checkpoint.caches);
+        cpu.restoreRegisters(checkpoint.registers);
+        last = checkpoint;
+    }
+}
@@ -0,0 +1,285 @@
+package com.gwu.simulator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JVM class file writer used by the JIT. It only knows what the JIT
+ * emits: one class with a no-arg constructor and int-only method bodies.
+ *
+ * Classes are written as version 49 (Java 5) so branches do not need
+ * StackMapTable frames; the JVM verifies them by type inference instead.
+ */
+class ClassFileBuilder {
+    // Opcodes used by the JIT
+    static final int ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11, LDC_W = 0x13;
+    static final int ILOAD = 0x15, ALOAD = 0x19, IALOAD = 0x2e, ISTORE = 0x36, IASTORE = 0x4f;
+    static final int POP = 0x57, IADD = 0x60, ISUB = 0x64, IMUL = 0x68, IDIV = 0x6c, IREM = 0x70;
+    static final int INEG = 0x74, ISHL = 0x78, ISHR = 0x7a, IUSHR = 0x7c, IAND = 0x7e, IOR = 0x80, IXOR = 0x82;
+    static final int I2S = 0x93;
+    static final int IFEQ = 0x99, IFNE = 0x9a, IFLT = 0x9b, IFGE = 0x9c, IFGT = 0x9d, IFLE = 0x9e;
+    static final int IF_ICMPEQ = 0x9f, IF_ICMPNE = 0xa0, IF_ICMPGE = 0xa2, GOTO = 0xa7;
+    static final int IRETURN = 0xac, RETURN = 0xb1, GETFIELD = 0xb4, INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7;
+
+    private static final int ACC_PUBLIC = 0x0001, ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+
+    private final int thisClass;
+    private final int superClass;
+    private final int[] interfaces;
+    private final List<byte[]> methods = new ArrayList<>();
+
+    ClassFileBuilder(String name, String superName, String... interfaceNames) {
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+        interfaces = new int[interfaceNames.length];
+        for (int k = 0; k < interfaceNames.length; k++) {
+            interfaces[k] = classRef(interfaceNames[k]);
+        }
+    }
+
+    // ---- Constant pool ----
+
+    private int constant(String key, int tag, Object... parts) {
+        Integer index = poolIndex.get(key);
+        if (index != null) {
+            return index;
+        }
+        try {
+            poolOut.writeByte(tag);
+            for (Object part : parts) {
+                if (part instanceof String) {
+                    poolOut.writeUTF((String) part);
+                } else if (tag == 3) {
+                    poolOut.writeInt((Integer) part);
+                } else {
+                    poolOut.writeShort((Integer) part);
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        poolIndex.put(key, poolCount);
+        return poolCount++;
+    }
+
+    int utf8(String value) {
+        return constant("U" + value, 1, value);
+    }
+
+    int intConstant(int value) {
+        return constant("I" + value, 3, value);
+    }
+
+    int classRef(String internalName) {
+        return constant("C" + internalName, 7, utf8(internalName));
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        return constant("N" + name + ":" + descriptor, 12, utf8(name), utf8(descriptor));
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return constant("F" + owner + "." + name + ":" + descriptor, 9, classRef(owner), nameAndType(name, descriptor));
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return constant("M" + owner + "." + name + descriptor, 10, classRef(owner), nameAndType(name, descriptor));
+    }
+
+    // ---- Methods ----
+
+    /** Adds a public no-arg constructor that calls the superclass constructor. */
+    void addDefaultConstructor(String superName) {
+        Code code = new Code();
+        code.aload(0);
+        code.op(INVOKESPECIAL);
+        code.u2(methodRef(superName, "<init>", "()V"));
+        code.op(RETURN);
+        addMethod(ACC_PUBLIC, "<init>", "()V", code, 1, 1);
+    }
+
+    void addMethod(int access, String name, String descriptor, Code code, int maxStack, int maxLocals) {
+        code.resolveLabels();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(1); // attributes: Code
+            out.writeShort(utf8("Code"));
+            out.writeInt(12 + code.length());
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(code.length());
+            out.write(code.bytes, 0, code.length());
+            out.writeShort(0); // exception table
+            out.writeShort(0); // code attributes
+            methods.add(bytes.toByteArray());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    byte[] toByteArray() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);  // minor version
+            out.writeShort(49); // major version: Java 5, no stack map frames needed
+            out.writeShort(poolCount);
+            pool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.length);
+            for (int index : interfaces) {
+                out.writeShort(index);
+            }
+            out.writeShort(0); // fields
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+            out.writeShort(0); // class attributes
+            return bytes.toByteArray();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /** A jump target inside a method body. */
+    static class Label {
+        private int position = -1;
+        private boolean referenced;
+
+        /** True once some branch targets this label. */
+        boolean isReferenced() {
+            return referenced;
+        }
+    }
+
+    /** Bytecode for one method body, with forward-referencing labels. */
+    class Code {
+        private byte[] bytes = new byte[256];
+        private int length;
+        private final List<int[]> fixups = new ArrayList<>();     // {branch opcode position, offset position}
+        private final List<Label> fixupLabels = new ArrayList<>();
+
+        int length() {
+            return length;
+        }
+
+        void op(int opcode) {
+            u1(opcode);
+        }
+
+        void u1(int value) {
+            if (length == bytes.length) {
+                bytes = java.util.Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        void u2(int value) {
+            u1(value >> 8);
+            u1(value);
+        }
+
+        void iload(int local) {
+            op(ILOAD);
+            u1(local);
+        }
+
+        void istore(int local) {
+            op(ISTORE);
+            u1(local);
+        }
+
+        void aload(int local) {
+            op(ALOAD);
+            u1(local);
+        }
+
+        /** Pushes an int constant using the shortest encoding. */
+        void iconst(int value) {
+            if (value >= -1 && value <= 5) {
+                op(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op(BIPUSH);
+                u1(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op(SIPUSH);
+                u2(value);
+            } else {
+                op(LDC_W);
+                u2(intConstant(value));
+            }
+        }
+
+        /** Loads {@code array[index]} where the array reference is in a local. */
+        void loadElement(int arrayLocal, int index) {
+            aload(arrayLocal);
+            iconst(index);
+            op(IALOAD);
+        }
+
+        /** Stores a local into {@code array[index]}. */
+        void storeElement(int arrayLocal, int index, int valueLocal) {
+            aload(arrayLocal);
+            iconst(index);
+            iload(valueLocal);
+            op(IASTORE);
+        }
+
+        void invokeVirtual(String owner, String name, String descriptor) {
+            op(INVOKEVIRTUAL);
+            u2(methodRef(owner, name, descriptor));
+        }
+
+        void getField(String owner, String name, String descriptor) {
+            op(GETFIELD);
+            u2(fieldRef(owner, name, descriptor));
+        }
+
+        /** Emits a branch (if* or goto) to a label that may not be placed yet. */
+        void jump(int opcode, Label target) {
+            fixups.add(new int[] {length, length + 1});
+            fixupLabels.add(target);
+            target.referenced = true;
+            op(opcode);
+            u2(0);
+        }
+
+        void place(Label label) {
+            label.position = length;
+        }
+
+        private void resolveLabels() {
+            for (int k = 0; k < fixups.size(); k++) {
+                int[] fixup = fixups.get(k);
+                Label label = fixupLabels.get(k);
+                if (label.position < 0) {
+                    throw new IllegalStateException("Label never placed");
+                }
+                int offset = label.position - fixup[0];
+                bytes[fixup[1]] = (byte) (offset >> 8);
+                bytes[fixup[1] + 1] = (byte) offset;
+            }
+            fixups.clear();
+            fixupLabels.clear();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.gwu.simulator;
+
+/**
+ * A basic block translated to JVM bytecode by {@link JitCompiler}.
+ * Register state is passed in and out through an int array laid out as
+ * described by the JitCompiler.STATE_* indices.
+ */
+public interface CompiledBlock {
+    /**
+     * Runs the translated instructions.
+     * @param state Register state; read on entry, written back on every exit
+     * @param memory Memory the block reads and writes
+     * @param block The block this code was translated from; checked after every store
+     * @return Number of instructions executed
+     */
+    int run(int[] state, Memory memory, BasicBlock block);
+}
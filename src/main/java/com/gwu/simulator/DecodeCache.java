@@ -0,0 +1,43 @@
+package com.gwu.simulator;
+
+import java.util.Arrays;
+
+/**
+ * Decoded instructions indexed by memory address, so a word is only split
+ * into fields the first time it is executed. Entries are dropped whenever
+ * memory changes underneath them, which keeps self-modifying code correct.
+ */
+public class DecodeCache implements Memory.StoreListener {
+    private final DecodedInstruction[] entries;
+
+    public DecodeCache(int size) {
+        entries = new DecodedInstruction[size];
+    }
+
+    /**
+     * Returns the decoded form of the word just fetched from {@code address}.
+     * @param address Address the word was fetched from
+     * @param word Word that was fetched (used on a miss, or if address is out of range)
+     */
+    public DecodedInstruction get(int address, int word) {
+        if (address < 0 || address >= entries.length) {
+            return DecodedInstruction.decode(word);
+        }
+        DecodedInstruction instr = entries[address];
+        if (instr == null) {
+            instr = DecodedInstruction.decode(word);
+            entries[address] = instr;
+        }
+        return instr;
+    }
+
+    @Override
+    public void wordStored(int address) {
+        entries[address] = null;
+    }
+
+    @Override
+    public void allWordsChanged() {
+        Arrays.fill(entries, null);
+    }
+}
@@ -0,0 +1,123 @@
+package com.gwu.simulator;
+
+/**
+ * An instruction word split into its fields once, together with the handler
+ * that executes it. Field names follow the load/store format; other formats
+ * reuse the same bit positions:
+ * - r:       bits 9-8 (R, RX)
+ * - ix:      bits 7-6 (IX, RY, I/O register, shift A/L + L/R)
+ * - i:       bit 5
+ * - address: bits 4-0 (address, DEVID, shift count)
+ */
+public final class DecodedInstruction {
+
+    /** Executes one decoded instruction against the CPU state. */
+    @FunctionalInterface
+    public interface Handler {
+        void execute(CPU cpu, DecodedInstruction instr);
+    }
+
+    private static final Handler[] HANDLERS = new Handler[64];
+    private static final String[] MNEMONICS = new String[64];
+    private static final Handler ILLEGAL = CPU::executeIllegalOpcode;
+
+    static {
+        for (int op = 0; op < HANDLERS.length; op++) {
+            HANDLERS[op] = ILLEGAL;
+        }
+        HANDLERS[0] = CPU::executeHalt;              // HLT
+        HANDLERS[1] = CPU::executeLoadRegister;      // LDR
+        HANDLERS[2] = CPU::executeStoreRegister;     // STR
+        HANDLERS[3] = CPU::executeLoadAddress;       // LDA
+        HANDLERS[4] = CPU::executeAddMemory;         // AMR
+        HANDLERS[5] = CPU::executeSubtractMemory;    // SMR
+        HANDLERS[6] = CPU::executeAddImmediate;      // AIR
+        HANDLERS[7] = CPU::executeSubtractImmediate; // SIR
+        HANDLERS[10] = CPU::executeJumpZero;         // JZ
+        HANDLERS[11] = CPU::executeJumpNotEqual;     // JNE
+        HANDLERS[12] = CPU::executeJumpConditionCode; // JCC
+        HANDLERS[13] = CPU::executeJump;             // JMA
+        HANDLERS[14] = CPU::executeJumpSubroutine;   // JSR
+        HANDLERS[15] = CPU::executeReturnFromSubroutine; // RFS
+        HANDLERS[16] = CPU::executeSubtractOneAndBranch; // SOB
+        HANDLERS[17] = CPU::executeJumpGreaterEqual; // JGE
+        HANDLERS[20] = CPU::executeMultiply;         // MLT
+        HANDLERS[21] = CPU::executeDivide;           // DVD
+        HANDLERS[22] = CPU::executeTestEquality;     // TRR
+        HANDLERS[23] = CPU::executeAnd;              // AND
+        HANDLERS[24] = CPU::executeOr;               // ORR
+        HANDLERS[25] = CPU::executeNot;              // NOT
+        HANDLERS[31] = CPU::executeShift;            // SRC
+        HANDLERS[32] = CPU::executeRotate;           // RRC
+        HANDLERS[33] = CPU::executeLoadIndex;        // LDX
+        HANDLERS[34] = CPU::executeStoreIndex;       // STX
+        HANDLERS[61] = CPU::executeInput;            // IN
+        HANDLERS[62] = CPU::executeOutput;           // OUT
+        HANDLERS[63] = CPU::executeCheck;            // CHK
+
+        String[] names = {
+            "HLT", "LDR", "STR", "LDA", "AMR", "SMR", "AIR", "SIR", null, null,
+            "JZ", "JNE", "JCC", "JMA", "JSR", "RFS", "SOB", "JGE", null, null,
+            "MLT", "DVD", "TRR", "AND", "ORR", "NOT", null, null, null, null,
+            null, "SRC", "RRC", "LDX", "STX"
+        };
+        System.arraycopy(names, 0, MNEMONICS, 0, names.length);
+        MNEMONICS[61] = "IN";
+        MNEMONICS[62] = "OUT";
+        MNEMONICS[63] = "CHK";
+    }
+
+    public final int word;
+    public final int opcode;
+    public final int r;
+    public final int ix;
+    public final int i;
+    public final int address;
+    public final int immediate; // bits 7-0 sign extended to 16 bits (AIR/SIR)
+    public final Handler handler;
+
+    private DecodedInstruction(int word) {
+        this.word = word & 0xFFFF;
+        this.opcode = (this.word >> 10) & 0x3F;
+        this.r = (this.word >> 8) & 0x3;
+        this.ix = (this.word >> 6) & 0x3;
+        this.i = (this.word >> 5) & 1;
+        this.address = this.word & 0x1F;
+        int imm = this.word & 0xFF;
+        if ((imm & 0x80) != 0) {
+            imm |= 0xFF00;
+        }
+        this.immediate = imm;
+        this.handler = HANDLERS[opcode];
+    }
+
+    /** Decodes a 16-bit instruction word. */
+    public static DecodedInstruction decode(int word) {
+        return new DecodedInstruction(word);
+    }
+
+    /** True for jumps (JZ..JGE), HLT and illegal opcodes: the instructions that end a basic block. */
+    public boolean endsBlock() {
+        return (opcode >= 10 && opcode <= 17) || opcode == 0 || handler == ILLEGAL;
+    }
+
+    /** Assembler mnemonic for the opcode, or "???" if it is illegal. */
+    public String mnemonic() {
+        String name = MNEMONICS[opcode];
+        return name != null ? name : "???";
+    }
+
+    /** Opcode for an assembler mnemonic (case insensitive), or -1 if there is none. */
+    public static int opcodeFor(String mnemonic) {
+        for (int op = 0; op < MNEMONICS.length; op++) {
+            if (mnemonic.equalsIgnoreCase(MNEMONICS[op])) {
+                return op;
+            }
+        }
+        return -1;
+    }
+
+    public String toString() {
+        return String.format("op=%d r=%d ix=%d i=%d adr=%d", opcode, r, ix, i, address);
+    }
+}
@@ -0,0 +1,63 @@
+package com.gwu.simulator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An I/O device attached to one of the 32 DEVID slots of a {@link DeviceBus}.
+ * The CPU calls these methods from its execution thread for IN, OUT and CHK,
+ * so they must never block on I/O: a device that talks to a file or the UI
+ * does that work on its own thread and hands words over through a buffer.
+ *
+ * Every method has a default, so a device only implements what it supports.
+ */
+public interface Device {
+    /** CHK status bit: a word can be read (input devices) or written (output devices) now. */
+    int STATUS_READY = 1;
+    /** CHK status bit: the device is working and will become ready without the program doing anything. */
+    int STATUS_BUSY = 2;
+    /** CHK status bit: an input device has delivered its last word. */
+    int STATUS_END = 4;
+
+    /** Returned by {@link #read()} when there is nothing to read: the IN leaves its register unchanged. */
+    int NO_DATA = Integer.MIN_VALUE; // not a 16-bit word, so never a real input
+
+    /**
+     * IN: the next input word, or null if none is ready yet; the IN then
+     * stalls and is retried. Devices without input return {@link #NO_DATA}.
+     */
+    default Integer read() {
+        return NO_DATA;
+    }
+
+    /** OUT: accepts a 16-bit word. Devices without output ignore it. */
+    default void write(int value) {
+    }
+
+    /** CHK: a combination of the STATUS_* bits. */
+    default int status() {
+        return STATUS_READY;
+    }
+
+    /**
+     * Parks the calling thread until {@link #read()} may have a word, {@link #wakeUp()}
+     * is called, or the timeout passes. Devices that cannot signal arrival just
+     * sleep a short while.
+     * @return true if a word is known to be ready
+     */
+    default boolean awaitInput(long timeout, TimeUnit unit) throws InterruptedException {
+        TimeUnit.MILLISECONDS.sleep(Math.min(unit.toMillis(timeout), 10));
+        return false;
+    }
+
+    /** Makes a thread parked in {@link #awaitInput} return immediately. */
+    default void wakeUp() {
+    }
+
+    /** Pushes buffered output on to its destination. */
+    default void flush() {
+    }
+
+    /** Stops any device thread and releases files. */
+    default void close() {
+    }
+}
@@ -0,0 +1,65 @@
+package com.gwu.simulator;
+
+/**
+ * Maps the 32 DEVIDs an IN, OUT or CHK instruction can name to devices.
+ * An empty slot behaves like a disconnected device: IN and OUT do nothing
+ * and CHK reads 0.
+ *
+ * Attach devices before execution starts; the slots are read by the CPU
+ * thread without locking.
+ */
+public class DeviceBus {
+    public static final int SLOTS = 32;
+    public static final int KEYBOARD = 0;
+    public static final int PRINTER = 1;
+    public static final int CARD_READER = 2;
+
+    private final Device[] slots = new Device[SLOTS];
+
+    /** Puts {@code device} in slot {@code devid}, replacing what was there; null empties the slot. */
+    public void attach(int devid, Device device) {
+        checkDevid(devid);
+        slots[devid] = device;
+    }
+
+    /** Device in slot {@code devid}, or null if the slot is empty. */
+    public Device get(int devid) {
+        checkDevid(devid);
+        return slots[devid];
+    }
+
+    /** Flushes every attached device. */
+    public void flush() {
+        for (Device device : slots) {
+            if (device != null) {
+                device.flush();
+            }
+        }
+    }
+
+    /** Wakes the execution thread if it is parked on any device. */
+    public void wakeUp() {
+        for (Device device : slots) {
+            if (device != null) {
+                device.wakeUp();
+            }
+        }
+    }
+
+    /** Flushes and closes every attached device and empties the slots. */
+    public void close() {
+        for (int devid = 0; devid < SLOTS; devid++) {
+            if (slots[devid] != null) {
+                slots[devid].flush();
+                slots[devid].close();
+                slots[devid] = null;
+            }
+        }
+    }
+
+    private static void checkDevid(int devid) {
+        if (devid < 0 || devid >= SLOTS) {
+            throw new IllegalArgumentException("Invalid DEVID: " + devid);
+        }
+    }
+}
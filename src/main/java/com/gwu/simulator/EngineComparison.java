@@ -0,0 +1,145 @@
+package com.gwu.simulator;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the same load image once per execution engine and checks that every
+ * engine ends in the same architectural state: registers, memory contents,
+ * printer output and instruction count. The memory accesses of each type,
+ * and their cache misses, must match too: an engine may not fetch or read a
+ * word more often than the interpreter does.
+ *
+ * Usage: EngineComparison load.txt [--input file] [--pc octal] [--max-instructions n]
+ * Exits with status 1 if any engine disagrees with the interpreter.
+ */
+public class EngineComparison {
+
+    /** Final state of one run, compared field by field. */
+    static class Result {
+        final EngineType engine;
+        final RunStats stats;
+        final int[] registers; // PC IR MAR MBR CC MFR R0-R3 X1-X3
+        final short[] memory;
+        final long[] accesses; // per Memory.AccessType: accesses, then misses
+        final String printed;
+
+        Result(EngineType engine, RunStats stats, CPU cpu, Memory memory, String printed) {
+            this.engine = engine;
+            this.stats = stats;
+            this.registers = new int[] {
+                cpu.getPC(), cpu.getIR(), cpu.getMAR(), cpu.getMBR(), cpu.getCC(), cpu.getMFR(),
+                cpu.getGPR(0), cpu.getGPR(1), cpu.getGPR(2), cpu.getGPR(3),
+                cpu.getIXR(1), cpu.getIXR(2), cpu.getIXR(3)
+            };
+            this.memory = new short[memory.getSize()];
+            memory.copyOut(0, this.memory, 0, this.memory.length);
+            Memory.AccessType[] types = Memory.AccessType.values();
+            this.accesses = new long[2 * types.length];
+            for (Memory.AccessType type : types) {
+                accesses[type.ordinal()] = memory.getAccesses(type);
+                accesses[types.length + type.ordinal()] = memory.getMisses(type);
+            }
+            this.printed = printed;
+        }
+    }
+
+    private static final String[] REGISTER_NAMES = {
+        "PC", "IR", "MAR", "MBR", "CC", "MFR", "R0", "R1", "R2", "R3", "X1", "X2", "X3"
+    };
+
+    /** Runs the image with the given engine from {@code startPc}. */
+    static Result runWith(EngineType engine, String loadFile, String input, int startPc, long maxInstructions)
+            throws IOException {
+        Memory memory = new Memory();
+        memory.loadProgramFromFile(loadFile);
+        CPU cpu = new CPU(memory);
+        cpu.setEngine(engine);
+        cpu.setPC(startPc);
+
+        StringWriter printed = new StringWriter();
+        HeadlessRunner runner = new HeadlessRunner(cpu);
+        runner.setInput(new StringReader(input));
+        runner.setOutput(printed);
+        runner.setInstructionLimit(maxInstructions);
+        RunStats stats = runner.run();
+        return new Result(engine, stats, cpu, memory, printed.toString());
+    }
+
+    /** Returns a description of every difference between two runs (empty if they agree). */
+    static List<String> differences(Result expected, Result actual) {
+        List<String> diffs = new ArrayList<>();
+        String who = actual.engine + " vs " + expected.engine + ": ";
+        if (expected.stats.getReason() != actual.stats.getReason()) {
+            diffs.add(who + "stop reason " + actual.stats.getReason() + " != " + expected.stats.getReason());
+        }
+        if (expected.stats.getInstructions() != actual.stats.getInstructions()) {
+            diffs.add(who + "instructions " + actual.stats.getInstructions() + " != "
+                    + expected.stats.getInstructions());
+        }
+        for (int k = 0; k < REGISTER_NAMES.length; k++) {
+            if (expected.registers[k] != actual.registers[k]) {
+                diffs.add(String.format("%s%s %o != %o", who, REGISTER_NAMES[k],
+                        actual.registers[k], expected.registers[k]));
+            }
+        }
+        for (int a = 0; a < expected.memory.length; a++) {
+            if (expected.memory[a] != actual.memory[a]) {
+                diffs.add(String.format("%smemory[%o] %06o != %06o", who, a,
+                        actual.memory[a] & 0xFFFF, expected.memory[a] & 0xFFFF));
+            }
+        }
+        Memory.AccessType[] types = Memory.AccessType.values();
+        for (int k = 0; k < expected.accesses.length; k++) {
+            if (expected.accesses[k] != actual.accesses[k]) {
+                diffs.add(String.format("%s%s %s %d != %d", who, types[k % types.length].name().toLowerCase(),
+                        k < types.length ? "accesses" : "misses", actual.accesses[k], expected.accesses[k]));
+            }
+        }
+        if (!expected.printed.equals(actual.printed)) {
+            diffs.add(who + "printer output differs");
+        }
+        return diffs;
+    }
+
+    private static final String USAGE = "Usage: EngineComparison <load-file> [--input file] [--pc octal] [--max-instructions n]";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        String loadFile = args[0];
+        String input = "";
+        int startPc = 64; // 0o100 - program entry point
+        long maxInstructions = 10_000_000L;
+        for (int i = 1; i < args.length; i += 2) {
+            if (i + 1 == args.length) { // every option takes a value
+                System.err.println("Missing value for " + args[i]);
+                System.err.println(USAGE);
+                System.exit(2);
+            }
+            switch (args[i]) {
+                case "--input" -> input = new String(java.nio.file.Files.readAllBytes(new File(args[i + 1]).toPath()));
+                case "--pc" -> startPc = Integer.parseInt(args[i + 1], 8);
+                case "--max-instructions" -> maxInstructions = Long.parseLong(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        Result reference = runWith(EngineType.INTERPRETER, loadFile, input, startPc, maxInstructions);
+        List<String> diffs = new ArrayList<>();
+        for (EngineType engine : EngineType.values()) {
+            if (engine == EngineType.INTERPRETER) continue;
+            diffs.addAll(differences(reference, runWith(engine, loadFile, input, startPc, maxInstructions)));
+        }
+
+        if (diffs.isEmpty()) {
+            System.out.println("All engines agree: " + reference.stats);
+        } else {
+            diffs.forEach(System.out::println);
+            System.exit(1);
+        }
+    }
+}
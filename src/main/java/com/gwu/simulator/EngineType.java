@@ -0,0 +1,8 @@
+package com.gwu.simulator;
+
+/** Execution engines the CPU can run programs with (see CPU.setEngine). */
+public enum EngineType {
+    INTERPRETER, // fetch, decode and dispatch one instruction at a time
+    BLOCK,       // threaded code: pre-decoded, linked basic blocks (BlockEngine)
+    JIT          // BLOCK plus translation of hot blocks to JVM bytecode (JitCompiler)
+}
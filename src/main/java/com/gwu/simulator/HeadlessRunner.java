@@ -0,0 +1,464 @@
+package com.gwu.simulator;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.gwu.simulator.RunStats.StopReason;
+
+/**
+ * Runs a loaded program at full speed without the GUI.
+ * Execution stops on HLT, a machine fault, when the instruction or time budget
+ * is used up, at a breakpoint or watchpoint, or when the program asks for
+ * input that is not there. An IN on a
+ * device that reports {@link Device#STATUS_BUSY} (a card reader still reading
+ * ahead) waits for it instead of stopping.
+ *
+ * Command line usage:
+ *   java -cp Simulator.jar com.gwu.simulator.HeadlessRunner load.txt [options]
+ *     --pc <octal>            start address (default 100)
+ *     --input <file|->        console input values (decimal)
+ *     --output <file|->       printer output (default stdout)
+ *     --card-reader <file>    card deck for devid 2 (decimal values)
+ *     --cache <s>:<w>:<b>     cache geometry: sets, ways, words per block (default 1:16:1)
+ *     --l1i / --l1d <s>:<w>:<b>  split the cache into instruction and data caches
+ *     --l2 <s>:<w>:<b>        add a unified L2 behind the L1 cache(s)
+ *     --write-mode <mode>     through (default) or back
+ *     --write-allocate <y|n>  whether a store miss allocates a line (default y)
+ *     --write-buffer <n>      queue writes to memory in an n-block coalescing buffer
+ *     --prefetch <name>       none (default), next[:n] or stride[:entries[:degree]] (see Prefetcher)
+ *     --memory-size <n>       words of memory, a multiple of 64 up to 4096 (default 2048)
+ *     --memory-backend <name> heap (default) or offheap (see MemoryBackend)
+ *     --break <octal>[:cond]  stop before the instruction at this address, e.g. 120:R1==5
+ *     --watch <lo>[-<hi>]     stop after a write to these addresses (octal)
+ *     --watch-read <lo>[-<hi>] stop after a data read from these addresses (octal)
+ *     --max-instructions <n>  instruction budget
+ *     --max-millis <n>        wall time budget
+ *     --engine <name>         interpreter (default), block or jit
+ *     --trace <level>         off (default), opcode or registers
+ *     --trace-file <file|->   where trace lines go (default stderr)
+ *     --trace-binary <file>   record a compact binary trace instead (see TraceTool)
+ *     --trace-max-chunks <n>  keep only the last n 1 MiB chunks of the binary trace
+ *     --address-trace <file>  record every memory access for CacheSweep (see AddressTraceRecorder)
+ *     --profile <file|->      write an execution profile (see Profiler)
+ *     --profile-stacks <file> write JSR/RFS call stacks in collapsed (flame graph) format
+ *     --listing <file>        listing that profile addresses map to (default: the load file)
+ *     --timing <file|->       write a cycle estimate: cycles, CPI, memory access time (see TimingModel)
+ *     --timing-config <file>  instruction and memory latencies for --timing (properties)
+ *     --stats <file|->        write cache and memory statistics (see Memory.Stats)
+ *     --stats-format <fmt>    text (default) or csv
+ *     --checkpoint-every <n>  write a checkpoint every n instructions ...
+ *     --checkpoint-file <p>   ... to p.<instruction count>.ckpt (default "checkpoint")
+ *     --restore <file>        start from a checkpoint instead of --pc
+ * The run summary (stop reason, instructions, wall time, MIPS) goes to stderr.
+ */
+public class HeadlessRunner {
+    // How often (in instructions) the wall clock is checked against the time budget
+    private static final long TIME_CHECK_INTERVAL = 1 << 16;
+    // Longest wait for a busy input device before the time budget is checked again
+    private static final long DEVICE_WAIT_MILLIS = 100;
+
+    private final CPU cpu;
+    private Writer output;
+    private long instructionLimit = Long.MAX_VALUE;
+    private long timeLimitNanos = 0; // 0 means no time limit
+    private Checkpointer checkpointer;
+    private long checkpointInterval;  // 0 means no periodic checkpoints
+    private Consumer<Checkpoint> checkpointSink;
+    private long instructionBase;     // instruction count of the restored checkpoint
+
+    public HeadlessRunner(CPU cpu) {
+        this.cpu = cpu;
+    }
+
+    /** Console input (devid 0) is read from this stream. */
+    public void setInput(Reader reader) {
+        cpu.setConsoleInputSupplier(new StreamConsoleInput(reader));
+    }
+
+    /** Printer output (devid 1) is written to this stream, one value per line, in batches. */
+    public void setOutput(Writer writer) {
+        output = writer;
+        cpu.setPrinter(new BufferedPrinter(PrinterSink.of(writer)));
+    }
+
+    /** Attaches a card reader for {@code deck} at devid 2. */
+    public CardReader setCardReader(Path deck) {
+        CardReader reader = new CardReader(deck);
+        cpu.getDevices().attach(DeviceBus.CARD_READER, reader);
+        return reader;
+    }
+
+    public void setInstructionLimit(long instructions) {
+        instructionLimit = instructions;
+    }
+
+    public void setTimeLimitMillis(long millis) {
+        timeLimitNanos = millis * 1_000_000L;
+    }
+
+    /**
+     * Takes a checkpoint every {@code interval} instructions (0 for none) and
+     * hands it to {@code sink}. The checkpointer is also used by {@link #restore}.
+     */
+    public void setCheckpointing(Checkpointer checkpointer, long interval, Consumer<Checkpoint> sink) {
+        this.checkpointer = checkpointer;
+        this.checkpointInterval = interval;
+        this.checkpointSink = sink;
+    }
+
+    /**
+     * Continues from a checkpoint. Later checkpoints count instructions from
+     * the restored one. Device input already consumed is not part of a
+     * checkpoint; supply only the input that remains.
+     */
+    public void restore(Checkpoint checkpoint) {
+        if (checkpointer == null) {
+            throw new IllegalStateException("setCheckpointing must be called before restore");
+        }
+        checkpointer.restore(checkpoint);
+        instructionBase = checkpoint.getInstructionCount();
+    }
+
+    /** Runs from the current PC until one of the stop conditions is met. */
+    public RunStats run() {
+        cpu.unhalt();
+        long executed = 0;
+        long start = System.nanoTime();
+        StopReason reason;
+        long nextCheckpoint = (checkpointInterval > 0)
+                ? checkpointInterval - instructionBase % checkpointInterval
+                : Long.MAX_VALUE;
+
+        while (true) {
+            long slice = Math.min(instructionLimit - executed, TIME_CHECK_INTERVAL);
+            slice = Math.min(slice, nextCheckpoint - executed);
+            executed += cpu.execute(slice);
+            if (executed == nextCheckpoint) {
+                checkpointSink.accept(checkpointer.capture(instructionBase + executed));
+                nextCheckpoint += checkpointInterval;
+            }
+
+            if (cpu.isHalted()) {
+                reason = cpu.getMFR() != 0 ? StopReason.FAULT : StopReason.HALTED;
+                break;
+            }
+            if (cpu.isBreakHit()) {
+                reason = StopReason.BREAKPOINT;
+                break;
+            }
+            if (cpu.isInputStalled() && !awaitBusyDevice()) {
+                reason = StopReason.INPUT_EXHAUSTED;
+                break;
+            }
+            if (executed >= instructionLimit) {
+                reason = StopReason.INSTRUCTION_LIMIT;
+                break;
+            }
+            if (timeLimitNanos > 0 && System.nanoTime() - start >= timeLimitNanos) {
+                reason = StopReason.TIME_LIMIT;
+                break;
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        cpu.flushOutput();
+        if (output != null) {
+            try {
+                output.flush();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        return new RunStats(reason, executed, elapsed);
+    }
+
+    /**
+     * Waits a little for the device a stalled IN is reading, if it says more
+     * input is on the way.
+     * @return false if no more input will come
+     */
+    private boolean awaitBusyDevice() {
+        Device device = cpu.getDevices().get(cpu.getStalledDevid());
+        int status = device.status();
+        if ((status & Device.STATUS_READY) != 0) {
+            return true; // input arrived since the IN stalled
+        }
+        if ((status & Device.STATUS_BUSY) == 0) {
+            return false;
+        }
+        try {
+            device.awaitInput(DEVICE_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    private static final String USAGE = "Usage: HeadlessRunner <load-file> [--pc octal] [--input file|-] [--output file|-]"
+            + " [--card-reader file] [--cache sets:ways:words] [--l1i s:w:b] [--l1d s:w:b] [--l2 s:w:b]"
+            + " [--write-mode through|back] [--write-allocate y|n] [--write-buffer n]"
+            + " [--prefetch none|next[:n]|stride[:entries[:degree]]]"
+            + " [--memory-size n] [--memory-backend heap|offheap]"
+            + " [--break octal[:cond]] [--watch lo[-hi]] [--watch-read lo[-hi]]"
+            + " [--max-instructions n] [--max-millis n] [--engine interpreter|block|jit]"
+            + " [--trace off|opcode|registers] [--trace-file file|-]"
+            + " [--trace-binary file] [--trace-max-chunks n] [--address-trace file]"
+            + " [--profile file|-] [--profile-stacks file] [--listing file]"
+            + " [--timing file|-] [--timing-config file] [--stats file|-] [--stats-format text|csv]"
+            + " [--checkpoint-every n] [--checkpoint-file prefix] [--restore file]";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        String loadFile = args[0];
+        int startPc = 64; // 0o100 - program entry point
+        String inputPath = null;
+        String outputPath = "-";
+        String cardPath = null;
+        String cacheGeometry = null;
+        String l1iGeometry = null;
+        String l1dGeometry = null;
+        String l2Geometry = null;
+        WriteMode writeMode = WriteMode.WRITE_THROUGH;
+        boolean writeAllocate = true;
+        int writeBuffer = 0;
+        String prefetch = "none";
+        int memorySize = Memory.DEFAULT_SIZE;
+        String memoryBackend = "heap";
+        Breakpoints breakpoints = null;
+        long maxInstructions = Long.MAX_VALUE;
+        long maxMillis = 0;
+        EngineType engine = EngineType.INTERPRETER;
+        TraceLevel traceLevel = TraceLevel.OFF;
+        String tracePath = null;
+        String binaryTracePath = null;
+        int traceMaxChunks = 0;
+        String addressTracePath = null;
+        String profilePath = null;
+        String stacksPath = null;
+        String listingPath = loadFile;
+        String timingPath = null;
+        String timingConfigPath = null;
+        String statsPath = null;
+        boolean statsCsv = false;
+        long checkpointEvery = 0;
+        String checkpointPrefix = "checkpoint";
+        String restorePath = null;
+
+        for (int i = 1; i < args.length; i++) {
+            if (i + 1 == args.length) { // every option takes a value
+                System.err.println("Missing value for " + args[i]);
+                System.err.println(USAGE);
+                System.exit(2);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--pc" -> startPc = Integer.parseInt(value, 8);
+                case "--input" -> inputPath = value;
+                case "--output" -> outputPath = value;
+                case "--card-reader" -> cardPath = value;
+                case "--cache" -> cacheGeometry = value;
+                case "--l1i" -> l1iGeometry = value;
+                case "--l1d" -> l1dGeometry = value;
+                case "--l2" -> l2Geometry = value;
+                case "--write-mode" -> writeMode = WriteMode.valueOf("WRITE_" + value.toUpperCase());
+                case "--write-allocate" -> writeAllocate = switch (value) {
+                    case "y" -> true;
+                    case "n" -> false;
+                    default -> throw new IllegalArgumentException("--write-allocate takes y or n: " + value);
+                };
+                case "--write-buffer" -> writeBuffer = Integer.parseInt(value);
+                case "--prefetch" -> prefetch = value;
+                case "--memory-size" -> memorySize = Integer.parseInt(value);
+                case "--memory-backend" -> memoryBackend = value;
+                case "--break", "--watch", "--watch-read" -> {
+                    if (breakpoints == null) {
+                        breakpoints = new Breakpoints();
+                    }
+                    if (args[i].equals("--break")) {
+                        breakpoints.addBreakpoint(value);
+                    } else {
+                        breakpoints.addWatchpoint(args[i].equals("--watch")
+                                ? Breakpoints.Kind.WRITE : Breakpoints.Kind.READ, value);
+                    }
+                }
+                case "--max-instructions" -> maxInstructions = Long.parseLong(value);
+                case "--max-millis" -> maxMillis = Long.parseLong(value);
+                case "--engine" -> engine = EngineType.valueOf(value.toUpperCase());
+                case "--trace" -> traceLevel = TraceLevel.valueOf(value.toUpperCase());
+                case "--trace-file" -> tracePath = value;
+                case "--trace-binary" -> binaryTracePath = value;
+                case "--trace-max-chunks" -> traceMaxChunks = Integer.parseInt(value);
+                case "--address-trace" -> addressTracePath = value;
+                case "--profile" -> profilePath = value;
+                case "--profile-stacks" -> stacksPath = value;
+                case "--listing" -> listingPath = value;
+                case "--timing" -> timingPath = value;
+                case "--timing-config" -> timingConfigPath = value;
+                case "--stats" -> statsPath = value;
+                case "--stats-format" -> statsCsv = switch (value) {
+                    case "text" -> false;
+                    case "csv" -> true;
+                    default -> throw new IllegalArgumentException("--stats-format takes text or csv: " + value);
+                };
+                case "--checkpoint-every" -> checkpointEvery = Long.parseLong(value);
+                case "--checkpoint-file" -> checkpointPrefix = value;
+                case "--restore" -> restorePath = value;
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+            i++;
+        }
+
+        Memory memory = Memory.withCaches(cacheGeometry, l1iGeometry, l1dGeometry, l2Geometry,
+                MemoryBackend.create(memoryBackend, memorySize));
+        memory.setWriteMode(writeMode);
+        memory.setWriteAllocate(writeAllocate);
+        memory.setWriteBuffer(writeBuffer);
+        memory.setPrefetcher(prefetch);
+        memory.loadProgramFromFile(loadFile);
+        CPU cpu = new CPU(memory);
+        cpu.setPC(startPc);
+        cpu.setEngine(engine);
+        cpu.setBreakpoints(breakpoints);
+        boolean profiling = profilePath != null || stacksPath != null;
+        if ((traceLevel != TraceLevel.OFF ? 1 : 0) + (binaryTracePath != null ? 1 : 0) + (profiling ? 1 : 0)
+                + (timingPath != null ? 1 : 0) + (addressTracePath != null ? 1 : 0) > 1) {
+            throw new IllegalArgumentException(
+                    "--trace, --trace-binary, --address-trace, --profile and --timing cannot be combined");
+        }
+        AsyncTraceSink traceSink = null;
+        Writer traceFile = null; // closed after the sink, which leaves its writer open
+        BinaryTraceRecorder recorder = null;
+        AddressTraceRecorder addressRecorder = null;
+        Profiler profiler = null;
+        TimingModel timing = null;
+        if (timingPath != null) {
+            timing = new TimingModel(memory);
+            if (timingConfigPath != null) {
+                try (Reader config = new FileReader(timingConfigPath)) {
+                    timing.configure(config);
+                }
+            }
+            cpu.setTracer(timing);
+        } else if (profiling) {
+            profiler = new Profiler();
+            cpu.setTracer(profiler);
+        } else if (binaryTracePath != null) {
+            recorder = new BinaryTraceRecorder(Paths.get(binaryTracePath),
+                    BinaryTraceRecorder.DEFAULT_CHUNK_SIZE, traceMaxChunks);
+            cpu.setTracer(recorder);
+        } else if (addressTracePath != null) {
+            addressRecorder = new AddressTraceRecorder(Paths.get(addressTracePath));
+            cpu.setTracer(addressRecorder);
+        } else if (traceLevel != TraceLevel.OFF) {
+            if (tracePath == null || tracePath.equals("-")) {
+                traceSink = new AsyncTraceSink(System.err);
+            } else {
+                traceFile = new FileWriter(tracePath);
+                traceSink = new AsyncTraceSink(traceFile);
+            }
+            cpu.setTracer(new TextTracer(traceLevel, traceSink));
+        }
+
+        HeadlessRunner runner = new HeadlessRunner(cpu);
+        if (inputPath != null) {
+            runner.setInput(inputPath.equals("-")
+                    ? new InputStreamReader(System.in)
+                    : new BufferedReader(new FileReader(inputPath)));
+        }
+        Writer out = outputPath.equals("-")
+                ? new OutputStreamWriter(System.out)
+                : new BufferedWriter(new FileWriter(outputPath));
+        runner.setOutput(out);
+        if (cardPath != null) {
+            runner.setCardReader(Paths.get(cardPath));
+        }
+        runner.setInstructionLimit(maxInstructions);
+        String prefix = checkpointPrefix;
+        runner.setCheckpointing(new Checkpointer(cpu, memory), checkpointEvery, checkpoint -> {
+            try {
+                checkpoint.writeTo(Paths.get(prefix + "." + checkpoint.getInstructionCount() + ".ckpt"));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+        if (restorePath != null) {
+            runner.restore(Checkpoint.readFrom(Paths.get(restorePath)));
+        }
+        if (maxMillis > 0) {
+            runner.setTimeLimitMillis(maxMillis);
+        }
+
+        RunStats stats = runner.run();
+        cpu.getDevices().close();
+        if (traceSink != null) {
+            traceSink.close();
+        }
+        if (traceFile != null) {
+            traceFile.close();
+        }
+        if (recorder != null) {
+            recorder.close();
+        }
+        if (addressRecorder != null) {
+            addressRecorder.close();
+        }
+        if (profiler != null) {
+            Profiler.Listing listing = Profiler.Listing.read(Paths.get(listingPath));
+            if (profilePath != null) {
+                Writer report = profilePath.equals("-")
+                        ? new OutputStreamWriter(System.err)
+                        : new BufferedWriter(new FileWriter(profilePath));
+                profiler.writeReport(report, listing);
+                if (!profilePath.equals("-")) {
+                    report.close();
+                }
+            }
+            if (stacksPath != null) {
+                try (Writer stacks = new BufferedWriter(new FileWriter(stacksPath))) {
+                    profiler.writeCollapsedStacks(stacks, listing);
+                }
+            }
+        }
+        if (timing != null) {
+            Writer report = timingPath.equals("-")
+                    ? new OutputStreamWriter(System.err)
+                    : new BufferedWriter(new FileWriter(timingPath));
+            timing.writeReport(report);
+            if (!timingPath.equals("-")) {
+                report.close();
+            }
+        }
+        if (statsPath != null) {
+            Writer report = statsPath.equals("-")
+                    ? new OutputStreamWriter(System.err)
+                    : new BufferedWriter(new FileWriter(statsPath));
+            Memory.Stats memoryStats = memory.getStats();
+            if (statsCsv) {
+                memoryStats.writeCsv(report);
+            } else {
+                memoryStats.writeReport(report, 10);
+            }
+            if (!statsPath.equals("-")) {
+                report.close();
+            }
+        }
+        if (!outputPath.equals("-")) {
+            out.close();
+        }
+        System.err.println(stats);
+        if (cpu.isBreakHit()) {
+            System.err.printf("%s break at %o (PC %o) R0=%d R1=%d R2=%d R3=%d%n", cpu.getBreakKind(),
+                    cpu.getBreakAddress(), cpu.getPC(), (short) cpu.getGPR(0), (short) cpu.getGPR(1),
+                    (short) cpu.getGPR(2), (short) cpu.getGPR(3));
+        }
+        System.exit(stats.getReason() == StopReason.FAULT ? 1 : 0);
+    }
+}
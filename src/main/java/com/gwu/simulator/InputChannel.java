@@ -0,0 +1,164 @@
+package com.gwu.simulator;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Input device: a bounded, thread-safe ring buffer of input values.
+ * The UI (or any other producer) offers values from its own thread; the CPU
+ * takes them through {@link #get()} (or {@link #read()}), which never blocks and returns null when
+ * the buffer is empty so the IN instruction stalls.
+ *
+ * Instead of re-executing the stalled IN in a loop, the execution thread can
+ * park in {@link #awaitInput} until a value arrives, {@link #wakeUp()} is
+ * called, or the timeout passes. Waiting uses a lock and condition rather
+ * than a monitor, so it does not pin a virtual thread.
+ */
+public class InputChannel implements Supplier<Integer>, Device {
+    private final int[] buffer;
+    private int head;   // index of the oldest value
+    private int count;  // values waiting
+    private long taken; // values handed to the CPU since creation
+    private boolean wakeRequested;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    public InputChannel(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        buffer = new int[capacity];
+    }
+
+    /**
+     * Adds one value.
+     * @return false if the buffer is full
+     */
+    public boolean offer(int value) {
+        lock.lock();
+        try {
+            if (count == buffer.length) {
+                return false;
+            }
+            buffer[(head + count) % buffer.length] = value;
+            count++;
+            changed.signalAll();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds one value, waiting while the buffer is full. For producers that run
+     * on their own thread and must not drop values.
+     */
+    public void put(int value) throws InterruptedException {
+        lock.lock();
+        try {
+            while (count == buffer.length) {
+                changed.await();
+            }
+            buffer[(head + count) % buffer.length] = value;
+            count++;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Next value, or null if none is waiting. Never blocks. */
+    @Override
+    public Integer get() {
+        lock.lock();
+        try {
+            if (count == 0) {
+                return null;
+            }
+            int value = buffer[head];
+            head = (head + 1) % buffer.length;
+            count--;
+            taken++;
+            changed.signalAll(); // a producer may be waiting in put
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Integer read() {
+        return get();
+    }
+
+    @Override
+    public int status() {
+        return size() > 0 ? STATUS_READY : 0;
+    }
+
+    /**
+     * Parks the calling thread until input is available, {@link #wakeUp()} is
+     * called, or the timeout passes.
+     * @return true if input is available
+     */
+    @Override
+    public boolean awaitInput(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (count == 0 && !wakeRequested && nanos > 0) {
+                nanos = changed.awaitNanos(nanos);
+            }
+            wakeRequested = false;
+            return count > 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Makes a thread parked in {@link #awaitInput} (or the next one to call it) return immediately. */
+    @Override
+    public void wakeUp() {
+        lock.lock();
+        try {
+            wakeRequested = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Number of values waiting. */
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Number of values taken by the CPU so far. */
+    public long getTakenCount() {
+        lock.lock();
+        try {
+            return taken;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Discards every waiting value. */
+    public void clear() {
+        lock.lock();
+        try {
+            head = 0;
+            count = 0;
+            changed.signalAll(); // a producer may be waiting in put
+        } finally {
+            lock.unlock();
+        }
+    }
+}
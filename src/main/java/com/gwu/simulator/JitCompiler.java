@@ -0,0 +1,554 @@
+package com.gwu.simulator;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.gwu.simulator.ClassFileBuilder.Code;
+import com.gwu.simulator.ClassFileBuilder.Label;
+
+import static com.gwu.simulator.ClassFileBuilder.*;
+
+/**
+ * Translates hot basic blocks into JVM bytecode, loaded as hidden classes.
+ *
+ * GPR, IXR, CC, MAR, MBR and IR live in JVM locals for the whole block and
+ * are written back to the state array at every block exit. Memory reads and
+ * writes call Memory directly instead of going through the CPU, so the JVM
+ * can inline them; instruction fetches are still issued so the cache sees the
+ * same access stream as under the interpreter.
+ *
+ * Anything the translated code cannot finish on its own is left to the
+ * interpreter:
+ * - an address outside memory (memory fault)
+ * - DVD by zero (divide fault)
+ * - HLT, IN, OUT, illegal opcodes and register combinations that fault
+ * The last group ends the translated prefix. The faults exit the block after
+ * the instruction's fetch but before any other memory access it makes (an
+ * indirect operand address is checked with a side-effect-free peek first);
+ * STATE_FETCHED tells the engine to execute the fetched instruction without
+ * fetching it again, so every access is counted exactly once.
+ * After every store the code checks that its block is still valid; if the
+ * store hit translated code it exits right away (deoptimization).
+ */
+public class JitCompiler {
+    // Layout of the state array shared with the CPU
+    static final int STATE_PC = 0, STATE_IR = 1, STATE_MAR = 2, STATE_MBR = 3, STATE_CC = 4;
+    static final int STATE_GPR = 5;  // R0..R3 at 5..8
+    static final int STATE_IXR = 9;  // X1..X3 at 9..11
+    static final int STATE_FETCHED = 12; // 1 if the block left after fetching the instruction at PC - 1
+    static final int STATE_SIZE = 13;
+
+    // Locals of the generated run() method
+    private static final int STATE = 1, MEM = 2, BLOCK = 3;
+    private static final int GPR0 = 4;  // R0..R3 in 4..7
+    private static final int IXR1 = 8;  // X1..X3 in 8..10
+    private static final int CC = 11, MAR = 12, MBR = 13, IR = 14;
+    private static final int PC_OUT = 15, COUNT_OUT = 16, EA = 17, TMP = 18, TMP2 = 19, FETCHED = 20;
+    private static final int MAX_LOCALS = 21;
+    private static final int MAX_STACK = 8;
+
+    private static final String MEMORY = "com/gwu/simulator/Memory";
+    private static final String BASIC_BLOCK = "com/gwu/simulator/BasicBlock";
+    private static final String RUN_DESCRIPTOR = "([IL" + MEMORY + ";L" + BASIC_BLOCK + ";)I";
+
+    private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+    private final int memorySize;
+
+    /**
+     * An exit taken before an instruction finishes; the interpreter resumes at
+     * {@code pc}, or if {@code fetched}, executes the instruction it already
+     * fetched from {@code pc - 1}.
+     */
+    private static class Exit {
+        final Label label = new Label();
+        final int pc;
+        final int count;
+        final boolean fetched;
+
+        Exit(int pc, int count, boolean fetched) {
+            this.pc = pc;
+            this.count = count;
+            this.fetched = fetched;
+        }
+    }
+
+    public JitCompiler(int memorySize) {
+        this.memorySize = memorySize;
+    }
+
+    /** True if the translated code can execute this instruction itself. */
+    static boolean isSupported(DecodedInstruction instr) {
+        switch (instr.opcode) {
+            case 1: case 2: case 3: case 4: case 5: case 6: case 7:   // load/store, arithmetic
+            case 10: case 11: case 12: case 13: case 14: case 15: case 16: case 17: // jumps
+            case 22: case 23: case 24: case 25:                        // TRR AND ORR NOT
+            case 31: case 32:                                          // SRC RRC
+                return true;
+            case 20: case 21:      // MLT DVD write rx + 1, so rx must be 0 or 2 (R3 + 1 does not exist)
+                return instr.r <= 2;
+            case 33: case 34:      // LDX STX need a real index register
+                return instr.ix != 0;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Translates the longest supported prefix of a block.
+     * @return The compiled code, or null if the block starts with an unsupported instruction
+     */
+    public CompiledBlock compile(BasicBlock block) {
+        int length = 0;
+        while (length < block.instructions.length && isSupported(block.instructions[length])) {
+            length++;
+        }
+        if (length == 0) {
+            return null;
+        }
+
+        String name = "com/gwu/simulator/JitBlock" + Integer.toOctalString(block.start);
+        ClassFileBuilder cf = new ClassFileBuilder(name, "java/lang/Object", "com/gwu/simulator/CompiledBlock");
+        cf.addDefaultConstructor("java/lang/Object");
+        Code code = cf.new Code();
+        Label exit = new Label();
+        List<Exit> exits = new ArrayList<>();
+
+        emitPrologue(code);
+        boolean endedWithJump = false;
+        for (int k = 0; k < length; k++) {
+            DecodedInstruction instr = block.instructions[k];
+            int address = block.start + k;
+            Exit bail = new Exit(address + 1, k, true);       // finish this instruction in the interpreter
+            Exit deopt = new Exit(address + 1, k + 1, false); // store hit translated code: resume after it
+            exits.add(bail);
+            exits.add(deopt);
+
+            emitFetch(code, address, instr.word);
+            if (instr.opcode >= 10 && instr.opcode <= 17) {
+                emitJump(code, instr, address, k + 1, bail, exit);
+                endedWithJump = true;
+                break;
+            }
+            emitInstruction(code, instr, bail, deopt);
+        }
+        if (!endedWithJump) {
+            setExit(code, block.start + length, length);
+            code.jump(GOTO, exit);
+        }
+
+        for (Exit e : exits) {
+            if (!e.label.isReferenced()) {
+                continue;
+            }
+            code.place(e.label);
+            setExit(code, e.pc, e.count);
+            if (e.fetched) {
+                code.iconst(1);
+                code.istore(FETCHED);
+            }
+            code.jump(GOTO, exit);
+        }
+        code.place(exit);
+        emitEpilogue(code);
+
+        cf.addMethod(0x0001, "run", RUN_DESCRIPTOR, code, MAX_STACK, MAX_LOCALS);
+        try {
+            Class<?> type = lookup.defineHiddenClass(cf.toByteArray(), true).lookupClass();
+            return (CompiledBlock) type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            System.err.println("JIT: could not load block at " + Integer.toOctalString(block.start) + ": " + ex);
+            return null;
+        }
+    }
+
+    // ---- Prologue / epilogue ----
+
+    private void emitPrologue(Code code) {
+        for (int r = 0; r < 4; r++) {
+            code.loadElement(STATE, STATE_GPR + r);
+            code.istore(GPR0 + r);
+        }
+        for (int x = 0; x < 3; x++) {
+            code.loadElement(STATE, STATE_IXR + x);
+            code.istore(IXR1 + x);
+        }
+        code.loadElement(STATE, STATE_CC);
+        code.istore(CC);
+        code.loadElement(STATE, STATE_MAR);
+        code.istore(MAR);
+        code.loadElement(STATE, STATE_MBR);
+        code.istore(MBR);
+        code.loadElement(STATE, STATE_IR);
+        code.istore(IR);
+        // Every local must be assigned on all paths for the verifier
+        for (int local : new int[] {PC_OUT, COUNT_OUT, EA, TMP, TMP2, FETCHED}) {
+            code.iconst(0);
+            code.istore(local);
+        }
+    }
+
+    private void emitEpilogue(Code code) {
+        code.storeElement(STATE, STATE_PC, PC_OUT);
+        code.storeElement(STATE, STATE_IR, IR);
+        code.storeElement(STATE, STATE_MAR, MAR);
+        code.storeElement(STATE, STATE_MBR, MBR);
+        code.storeElement(STATE, STATE_CC, CC);
+        code.storeElement(STATE, STATE_FETCHED, FETCHED);
+        for (int r = 0; r < 4; r++) {
+            code.storeElement(STATE, STATE_GPR + r, GPR0 + r);
+        }
+        for (int x = 0; x < 3; x++) {
+            code.storeElement(STATE, STATE_IXR + x, IXR1 + x);
+        }
+        code.iload(COUNT_OUT);
+        code.op(IRETURN);
+    }
+
+    private void setExit(Code code, int pc, int count) {
+        code.iconst(pc & 0xFFF);
+        code.istore(PC_OUT);
+        code.iconst(count);
+        code.istore(COUNT_OUT);
+    }
+
+    // ---- Memory access ----
+
+    /** Instruction fetch: MAR = PC, MBR = IR = word, and the read goes through Memory's instruction cache. */
+    private void emitFetch(Code code, int address, int word) {
+        code.aload(MEM);
+        code.iconst(address);
+        code.invokeVirtual(MEMORY, "fetchValueAt", "(I)S");
+        code.op(POP);
+        code.iconst(address);
+        code.istore(MAR);
+        code.iconst(word);
+        code.istore(MBR);
+        code.iconst(word);
+        code.istore(IR);
+    }
+
+    /** MBR = memory[addressLocal & 0xFFF]; exits through {@code bail} if out of range. */
+    private void emitRead(Code code, int addressLocal, Exit bail) {
+        emitRead(code, addressLocal, bail, "getValueAt");
+    }
+
+    /** As above, reading through the Memory method {@code accessor} so the access is counted as its type. */
+    private void emitRead(Code code, int addressLocal, Exit bail, String accessor) {
+        emitSetMar(code, addressLocal, bail);
+        code.aload(MEM);
+        code.iload(MAR);
+        code.invokeVirtual(MEMORY, accessor, "(I)S");
+        maskTo16(code);
+        code.istore(MBR);
+    }
+
+    /** memory[addressLocal & 0xFFF] = valueLocal, then deoptimizes if the block was invalidated. */
+    private void emitWrite(Code code, int addressLocal, int valueLocal, Exit bail, Exit deopt) {
+        emitSetMar(code, addressLocal, bail);
+        code.iload(valueLocal);
+        maskTo16(code);
+        code.istore(MBR);
+        code.aload(MEM);
+        code.iload(MAR);
+        code.iload(MBR);
+        code.op(I2S);
+        code.invokeVirtual(MEMORY, "setValueAt", "(IS)V");
+        code.aload(BLOCK);
+        code.getField(BASIC_BLOCK, "valid", "Z");
+        code.jump(IFEQ, deopt.label);
+    }
+
+    private void emitSetMar(Code code, int addressLocal, Exit bail) {
+        code.iload(addressLocal);
+        code.iconst(0xFFF);
+        code.op(IAND);
+        code.istore(MAR);
+        code.iload(MAR);
+        code.iconst(memorySize);
+        code.jump(IF_ICMPGE, bail.label);
+    }
+
+    /**
+     * EA into the EA local, following CPU.getEA (indexing, then one level of
+     * indirection). If the instruction goes on to access memory at EA
+     * ({@code operand}), an out-of-range operand address behind an indirect
+     * word bails before the indirect read, so the interpreter does not count it twice.
+     */
+    private void emitEffectiveAddress(Code code, DecodedInstruction instr, boolean indexed, boolean operand,
+            Exit bail) {
+        if (indexed && instr.ix != 0) {
+            code.iload(IXR1 + instr.ix - 1);
+            code.op(I2S);
+            code.iconst(instr.address);
+            code.op(IADD);
+        } else {
+            code.iconst(instr.address);
+        }
+        code.istore(EA);
+        if (instr.i == 1) {
+            if (operand) {
+                emitSetMar(code, EA, bail);
+                code.aload(MEM);
+                code.iload(MAR);
+                code.invokeVirtual(MEMORY, "peek", "(I)S");
+                code.iconst(0xFFF);
+                code.op(IAND);
+                code.iconst(memorySize);
+                code.jump(IF_ICMPGE, bail.label);
+            }
+            emitRead(code, EA, bail, "getIndirectValueAt");
+            code.iload(MBR);
+            code.istore(EA);
+        }
+    }
+
+    // ---- Instructions ----
+
+    private static void maskTo16(Code code) {
+        code.iconst(0xFFFF);
+        code.op(IAND);
+    }
+
+    /** Pops the value on the stack into a GPR, masked to 16 bits. */
+    private static void setGpr(Code code, int r) {
+        maskTo16(code);
+        code.istore(GPR0 + r);
+    }
+
+    /** CC from an arithmetic result in {@code valueLocal}, as in CPU.updateArithmeticFlags. */
+    private static void emitArithmeticFlags(Code code, int valueLocal) {
+        code.iload(valueLocal);      // negative -> 0x8
+        code.iconst(31);
+        code.op(IUSHR);
+        code.iconst(3);
+        code.op(ISHL);
+        code.iload(valueLocal);      // zero -> 0x4
+        code.iload(valueLocal);
+        code.op(INEG);
+        code.op(IOR);
+        code.iconst(31);
+        code.op(IUSHR);
+        code.iconst(1);
+        code.op(IXOR);
+        code.iconst(2);
+        code.op(ISHL);
+        code.op(IOR);
+        code.iload(valueLocal);      // bit 16 -> 0x2
+        code.iconst(15);
+        code.op(IUSHR);
+        code.iconst(2);
+        code.op(IAND);
+        code.op(IOR);
+        code.istore(CC);
+    }
+
+    private void emitInstruction(Code code, DecodedInstruction instr, Exit bail, Exit deopt) {
+        int r = instr.r;
+        switch (instr.opcode) {
+            case 1: // LDR
+                emitEffectiveAddress(code, instr, true, true, bail);
+                emitRead(code, EA, bail);
+                code.iload(MBR);
+                code.istore(GPR0 + r);
+                break;
+            case 2: // STR
+                emitEffectiveAddress(code, instr, true, true, bail);
+                emitWrite(code, EA, GPR0 + r, bail, deopt);
+                break;
+            case 3: // LDA
+                emitEffectiveAddress(code, instr, true, false, bail);
+                code.iload(EA);
+                setGpr(code, r);
+                break;
+            case 33: // LDX
+                emitEffectiveAddress(code, instr, false, true, bail);
+                emitRead(code, EA, bail);
+                code.iload(MBR);
+                code.istore(IXR1 + instr.ix - 1);
+                break;
+            case 34: // STX
+                emitEffectiveAddress(code, instr, false, true, bail);
+                emitWrite(code, EA, IXR1 + instr.ix - 1, bail, deopt);
+                break;
+            case 4: // AMR
+            case 5: // SMR
+                emitEffectiveAddress(code, instr, true, true, bail);
+                emitRead(code, EA, bail);
+                code.iload(GPR0 + r);
+                code.iload(MBR);
+                code.op(instr.opcode == 4 ? IADD : ISUB);
+                code.istore(TMP);
+                code.iload(TMP);
+                setGpr(code, r);
+                emitArithmeticFlags(code, TMP);
+                break;
+            case 6: // AIR
+            case 7: // SIR
+                code.iload(GPR0 + r);
+                code.iconst(instr.immediate);
+                code.op(instr.opcode == 6 ? IADD : ISUB);
+                code.istore(TMP);
+                code.iload(TMP);
+                setGpr(code, r);
+                emitArithmeticFlags(code, TMP);
+                break;
+            case 20: // MLT
+                code.iload(GPR0 + r);
+                code.iload(GPR0 + instr.ix);
+                code.op(IMUL);
+                code.istore(TMP);
+                code.iload(TMP);
+                setGpr(code, r);
+                code.iload(TMP);
+                code.iconst(16);
+                code.op(ISHR);
+                setGpr(code, r + 1);
+                break;
+            case 21: // DVD - divide by zero is left to the interpreter, which raises the fault
+                code.iload(GPR0 + instr.ix);
+                code.jump(IFEQ, bail.label);
+                code.iload(GPR0 + r);
+                code.iload(GPR0 + instr.ix);
+                code.op(IDIV);
+                code.istore(TMP);
+                code.iload(GPR0 + r);
+                code.iload(GPR0 + instr.ix);
+                code.op(IREM);
+                code.istore(TMP2);
+                code.iload(TMP);
+                setGpr(code, r);
+                code.iload(TMP2);
+                setGpr(code, r + 1);
+                break;
+            case 22: // TRR: CC = (rx == ry) ? 1 : 0
+                code.iload(GPR0 + r);
+                code.iload(GPR0 + instr.ix);
+                code.op(IXOR);
+                code.istore(TMP);
+                code.iload(TMP);
+                code.iload(TMP);
+                code.op(INEG);
+                code.op(IOR);
+                code.iconst(31);
+                code.op(IUSHR);
+                code.iconst(1);
+                code.op(IXOR);
+                code.istore(CC);
+                break;
+            case 23: // AND
+            case 24: // ORR
+                code.iload(GPR0 + r);
+                code.iload(GPR0 + instr.ix);
+                code.op(instr.opcode == 23 ? IAND : IOR);
+                code.istore(GPR0 + r);
+                break;
+            case 25: // NOT
+                code.iload(GPR0 + r);
+                code.iconst(-1);
+                code.op(IXOR);
+                setGpr(code, r);
+                break;
+            case 31: // SRC
+                emitShift(code, instr);
+                break;
+            case 32: // RRC
+                emitRotate(code, instr);
+                break;
+            default:
+                throw new IllegalArgumentException("Opcode not supported by the JIT: " + instr.opcode);
+        }
+    }
+
+    private static void emitShift(Code code, DecodedInstruction instr) {
+        int al = (instr.ix >> 1) & 0x1; // 0 for left, 1 for right
+        int lr = instr.ix & 0x1;        // 0 for logical, 1 for arithmetic
+        code.iload(GPR0 + instr.r);
+        code.iconst(instr.address);
+        code.op(al == 0 ? ISHL : (lr == 0 ? IUSHR : ISHR));
+        setGpr(code, instr.r);
+    }
+
+    /** Rotating a 16-bit value count times is one rotation by count mod 16. */
+    private static void emitRotate(Code code, DecodedInstruction instr) {
+        int al = (instr.ix >> 1) & 0x1; // 0 for left, 1 for right
+        int k = instr.address % 16;
+        if (k == 0) {
+            return;
+        }
+        code.iload(GPR0 + instr.r);
+        code.iconst(k);
+        code.op(al == 0 ? ISHL : IUSHR);
+        code.iload(GPR0 + instr.r);
+        code.iconst(16 - k);
+        code.op(al == 0 ? IUSHR : ISHL);
+        code.op(IOR);
+        setGpr(code, instr.r);
+    }
+
+    /** Jumps end the translated code: compute the next PC and leave through {@code exit}. */
+    private void emitJump(Code code, DecodedInstruction instr, int address, int count, Exit bail, Label exit) {
+        int r = instr.r;
+        int next = (address + 1) & 0xFFF;
+        emitEffectiveAddress(code, instr, true, false, bail);
+
+        Label notTaken = new Label();
+        Label done = new Label();
+        switch (instr.opcode) {
+            case 10: // JZ
+                code.iload(GPR0 + r);
+                code.jump(IFNE, notTaken);
+                break;
+            case 11: // JNE
+                code.iload(GPR0 + r);
+                code.jump(IFEQ, notTaken);
+                break;
+            case 12: // JCC
+                code.iload(CC);
+                code.iconst(r);
+                code.op(ISHR);
+                code.iconst(1);
+                code.op(IAND);
+                code.jump(IFEQ, notTaken);
+                break;
+            case 13: // JMA
+                break;
+            case 14: // JSR: R3 = return address
+                code.iconst(next);
+                code.istore(GPR0 + 3);
+                break;
+            case 15: // RFS: R0 = instruction word, PC = R3
+                code.iconst(instr.word);
+                code.istore(GPR0);
+                code.iload(GPR0 + 3);
+                code.istore(EA);
+                break;
+            case 16: // SOB
+                code.iload(GPR0 + r);
+                code.iconst(1);
+                code.op(ISUB);
+                setGpr(code, r);
+                code.iload(GPR0 + r);
+                code.jump(IFLE, notTaken);
+                break;
+            case 17: // JGE
+                code.iload(GPR0 + r);
+                code.jump(IFLT, notTaken);
+                break;
+            default:
+                throw new IllegalArgumentException("Not a jump: " + instr.opcode);
+        }
+        code.iload(EA);
+        code.iconst(0xFFF);
+        code.op(IAND);
+        code.istore(PC_OUT);
+        code.jump(GOTO, done);
+        code.place(notTaken);
+        code.iconst(next);
+        code.istore(PC_OUT);
+        code.place(done);
+        code.iconst(count);
+        code.istore(COUNT_OUT);
+        code.jump(GOTO, exit);
+    }
+}
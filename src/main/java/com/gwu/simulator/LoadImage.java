@@ -0,0 +1,96 @@
+package com.gwu.simulator;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * A parsed load file: the (address, value) pairs it sets, in file order.
+ * Load files have one "address value" pair per line, both octal; blank
+ * lines and lines starting with # are ignored.
+ *
+ * A LoadImage is immutable, so one instance can be loaded into any number
+ * of {@link Memory} instances, including from several threads at once.
+ */
+public final class LoadImage {
+    private final int[] addresses;
+    private final short[] values;
+
+    private LoadImage(int[] addresses, short[] values) {
+        this.addresses = addresses;
+        this.values = values;
+    }
+
+    /**
+     * Reads a load file from the filesystem, or from the classpath if there is
+     * no such file. Addresses outside {@code memorySize} are reported and skipped.
+     */
+    public static LoadImage read(String filePath, int memorySize) throws IOException {
+        BufferedReader br = null;
+        boolean loaded = false;
+
+        // First try opening as a regular filesystem path
+        try {
+            br = new BufferedReader(new FileReader(filePath));
+            loaded = true;
+        } catch (FileNotFoundException e) {
+            // If not found on filesystem, try to load as a classpath resource
+            InputStream is = LoadImage.class.getClassLoader().getResourceAsStream(filePath.replace('\\', '/'));
+            if (is == null) {
+                // Try relative path without leading directories
+                is = LoadImage.class.getClassLoader().getResourceAsStream(new java.io.File(filePath).getName());
+            }
+            if (is != null) {
+                br = new BufferedReader(new InputStreamReader(is));
+                loaded = true;
+            }
+        }
+
+        if (!loaded || br == null) {
+            throw new FileNotFoundException("Program file not found (filesystem or classpath): " + filePath);
+        }
+
+        int[] addresses = new int[256];
+        short[] values = new short[256];
+        int count = 0;
+        try (BufferedReader reader = br) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+
+                String[] parts = line.split("\\s+");
+                if (parts.length < 2) continue;
+
+                int address = Integer.parseInt(parts[0], 8); // octal address
+                short value = (short) Integer.parseInt(parts[1], 8); // octal value
+
+                if (address >= 0 && address < memorySize) {
+                    if (count == addresses.length) {
+                        addresses = Arrays.copyOf(addresses, count * 2);
+                        values = Arrays.copyOf(values, count * 2);
+                    }
+                    addresses[count] = address;
+                    values[count] = value;
+                    count++;
+                } else {
+                    System.err.println("Invalid memory address in file: " + address);
+                }
+            }
+        }
+        return new LoadImage(Arrays.copyOf(addresses, count), Arrays.copyOf(values, count));
+    }
+
+    /** Number of words the image sets. */
+    public int size() {
+        return addresses.length;
+    }
+
+    /** Writes the image into memory words; later entries for the same address win. */
+    void applyTo(MemoryBackend memory) {
+        for (int k = 0; k < addresses.length; k++) {
+            if (addresses[k] >= memory.size())
+                throw new IllegalArgumentException("Address out of range: " + addresses[k]);
+            memory.set(addresses[k], values[k]);
+        }
+    }
+}
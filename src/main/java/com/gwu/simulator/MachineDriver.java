@@ -0,0 +1,157 @@
+package com.gwu.simulator;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Owns a CPU and its Memory and runs them on a dedicated execution thread.
+ *
+ * Other threads never touch the machine directly:
+ * - control actions (run, halt, step, register edits, IPL...) are posted as
+ *   {@link Command}s to a mailbox that the execution thread drains between
+ *   slices of execution;
+ * - the execution thread publishes an immutable {@link MachineSnapshot} after
+ *   every command, and after a slice once the previous snapshot has been
+ *   taken; readers take the latest one with {@link #getSnapshot()} at
+ *   whatever rate suits them, and a full-speed run copies the memory
+ *   statistics only that often.
+ * While a program waits for input, the execution thread parks on the
+ * device the IN is reading (see {@link Device#awaitInput}) instead of
+ * re-executing the IN.
+ */
+public class MachineDriver {
+    // Instructions executed between mailbox checks while running
+    private static final long SLICE = 20_000;
+    // Longest park on an input device before the IN is retried anyway
+    private static final long INPUT_WAIT_MILLIS = 1000;
+
+    /** An action performed on the execution thread. */
+    @FunctionalInterface
+    public interface Command {
+        void apply(CPU cpu, Memory memory);
+    }
+
+    private final CPU cpu;
+    private final Memory memory;
+    private final BlockingQueue<Command> mailbox = new LinkedBlockingQueue<>();
+    private final AtomicReference<MachineSnapshot> snapshot = new AtomicReference<>();
+    private final AtomicBoolean snapshotTaken = new AtomicBoolean(); // a reader has the latest snapshot
+    private final Thread thread;
+
+    // Only touched by the execution thread
+    private boolean running;
+    private long instructions;
+
+    public MachineDriver(CPU cpu, Memory memory) {
+        this(cpu, memory, null);
+    }
+
+    /** Also connects {@code consoleInput} to the CPU as its console keyboard (devid 0). */
+    public MachineDriver(CPU cpu, Memory memory, InputChannel consoleInput) {
+        this.cpu = cpu;
+        this.memory = memory;
+        if (consoleInput != null) {
+            cpu.setConsoleInputSupplier(consoleInput);
+        }
+        publish();
+        thread = new Thread(this::loop, "cpu-driver");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Latest published state; never null. */
+    public MachineSnapshot getSnapshot() {
+        snapshotTaken.set(true);
+        return snapshot.get();
+    }
+
+    /** Queues an action to run on the execution thread. */
+    public void submit(Command command) {
+        mailbox.add(command);
+        cpu.getDevices().wakeUp(); // the execution thread may be parked waiting for input
+    }
+
+    /** Starts continuous execution from the current PC; it stops by itself at a breakpoint. */
+    public void run() {
+        submit((c, m) -> {
+            c.unhalt();
+            running = true;
+        });
+    }
+
+    /** Stops continuous execution and halts the CPU. */
+    public void halt() {
+        submit((c, m) -> {
+            running = false;
+            c.halt();
+        });
+    }
+
+    /** Executes one instruction (ignored while running). */
+    public void step() {
+        submit((c, m) -> {
+            if (!running) {
+                c.step();
+                if (!c.isInputStalled()) instructions++;
+            }
+        });
+    }
+
+    /** Stops the execution thread. Commands still queued are dropped. */
+    public void shutdown() {
+        thread.interrupt();
+    }
+
+    private void loop() {
+        try {
+            while (true) {
+                Command command;
+                if (!running) {
+                    command = mailbox.take(); // idle until told to do something
+                } else if (cpu.isInputStalled()) {
+                    command = awaitInputOrCommand();
+                } else {
+                    command = mailbox.poll();
+                }
+                while (command != null) {
+                    command.apply(cpu, memory);
+                    command = mailbox.poll();
+                }
+                if (running) {
+                    instructions += cpu.execute(SLICE);
+                    if (cpu.isHalted() || cpu.isBreakHit()) {
+                        running = false;
+                    }
+                }
+                cpu.flushOutput();
+                if (!running || snapshotTaken.get()) {
+                    publish(); // stopped, or a reader is ready for more
+                }
+            }
+        } catch (InterruptedException e) {
+            // shutdown
+        }
+    }
+
+    /** Parks until the stalled device has input, a command is submitted, or INPUT_WAIT_MILLIS pass. */
+    private Command awaitInputOrCommand() throws InterruptedException {
+        Command command = mailbox.poll();
+        if (command == null) {
+            Device device = cpu.getDevices().get(cpu.getStalledDevid());
+            if (device != null) {
+                device.awaitInput(INPUT_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            command = mailbox.poll();
+        }
+        return command;
+    }
+
+    private void publish() {
+        snapshotTaken.set(false);
+        snapshot.set(new MachineSnapshot(cpu.captureRegisters(), memory.getCache().capture(), memory.getStats(),
+                instructions, running, running && cpu.isInputStalled(), cpu.getBreakKind(), cpu.getBreakAddress()));
+    }
+}
@@ -0,0 +1,73 @@
+package com.gwu.simulator;
+
+/**
+ * Immutable copy of the registers, cache and statistics published by a
+ * {@link MachineDriver}. The GUI reads these instead of the live CPU, so it
+ * never sees a half-updated machine.
+ */
+public final class MachineSnapshot {
+    private final int[] registers; // see CPU.captureRegisters
+    private final Cache.Snapshot cache;
+    private final Memory.Stats memoryStats;
+    private final long instructions;
+    private final boolean running;
+    private final boolean waitingForInput;
+    private final Breakpoints.Kind breakKind;
+    private final int breakAddress;
+
+    MachineSnapshot(int[] registers, Cache.Snapshot cache, Memory.Stats memoryStats, long instructions,
+                    boolean running, boolean waitingForInput, Breakpoints.Kind breakKind, int breakAddress) {
+        this.registers = registers;
+        this.cache = cache;
+        this.memoryStats = memoryStats;
+        this.instructions = instructions;
+        this.running = running;
+        this.waitingForInput = waitingForInput;
+        this.breakKind = breakKind;
+        this.breakAddress = breakAddress;
+    }
+
+    public int getPC() { return registers[0]; }
+    public int getIR() { return registers[1]; }
+    public int getMAR() { return registers[2]; }
+    public int getMBR() { return registers[3]; }
+    public int getCC() { return registers[4]; }
+    public int getMFR() { return registers[5]; }
+    public int getGPR(int i) { return registers[6 + i]; }
+    public int getIXR(int i) { return registers[9 + i]; } // 1-based like CPU.getIXR
+    public boolean isHalted() { return registers[13] != 0; }
+
+    /** True while the driver is executing continuously (Run), false when stopped or single stepping. */
+    public boolean isRunning() { return running; }
+
+    /** True if the program is blocked on an IN with no console input. */
+    public boolean isWaitingForInput() { return waitingForInput; }
+
+    /** What stopped the last run, or null if it was not a breakpoint or watchpoint. */
+    public Breakpoints.Kind getBreakKind() { return breakKind; }
+
+    /** PC of the breakpoint, or the watched address, that stopped the last run. */
+    public int getBreakAddress() { return breakAddress; }
+
+    /** Instructions executed by the driver so far. */
+    public long getInstructions() { return instructions; }
+
+    public int getCacheLineCount() { return cache.tags.length; }
+    public int getCacheSets() { return cache.sets; }
+    public int getCacheWays() { return cache.ways; }
+    public int getCacheBlockWords() { return cache.blockWords; }
+    public String getCachePolicy() { return cache.policy; }
+    public boolean isCacheLineValid(int line) { return cache.valid[line]; }
+
+    /** True if the line is newer than memory (write-back). */
+    public boolean isCacheLineDirty(int line) { return cache.dirty[line]; }
+
+    /** Address of the first word of the block in a line. */
+    public int getCacheTag(int line) { return cache.tags[line]; }
+
+    /** Word {@code word} (0 to block words - 1) of the block in a line. */
+    public short getCacheData(int line, int word) { return cache.data[line * cache.blockWords + word]; }
+
+    /** Access, cache and write counters since IPL or the last statistics reset. */
+    public Memory.Stats getMemoryStats() { return memoryStats; }
+}
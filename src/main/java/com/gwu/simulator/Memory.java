@@ -2,112 +2,895 @@ package com.gwu.simulator;
 
 import java.io.*;
 import java.util.Arrays;
+import java.util.stream.IntStream;
 
+/**
+ * Main memory with the caches in front of it. By default a single unified
+ * cache serves instruction fetches and data accesses alike. It can instead
+ * be split into an L1 instruction cache, used by {@link #fetchValueAt}, and
+ * an L1 data cache, used by {@link #getValueAt} and {@link #setValueAt}; an
+ * optional unified L2 then serves the misses of both (see {@link #withCaches}).
+ *
+ * Stores are write-through by default, with write allocate in the L1 data
+ * cache. {@link #setWriteMode} switches the data cache and L2 to write-back,
+ * where a store marks its line dirty and a dirty line is written on when it
+ * is evicted; {@link #setWriteAllocate} and {@link #setWriteBuffer} choose
+ * whether a store miss allocates and whether writes to memory queue in a
+ * coalescing {@link WriteBuffer}. These settings decide the traffic to
+ * memory, counted by {@link #getMemoryWrites}, but not the values: the
+ * backend always holds the current value of every word, and a miss at any
+ * level fills from it. A store also updates every cached copy of its word,
+ * so fetches never see stale code.
+ *
+ * An optional {@link Prefetcher} ({@link #setPrefetcher}) watches the
+ * demand accesses to the L1 data cache (or the unified L1) and fills the
+ * blocks it predicts ahead of time. Prefetch fills cost the program nothing
+ * in the counters TimingModel uses; they only change which later accesses
+ * hit.
+ *
+ * Every access is counted by {@link AccessType} and by address, next to the
+ * counters each cache keeps; {@link #getStats} copies them all out.
+ *
+ * The words themselves live in a {@link MemoryBackend}, by default 2048
+ * words on the heap. A backend of up to {@link #MAX_SIZE} words, the whole
+ * 12-bit address space, can be passed in instead, on the heap or off it;
+ * addresses past its end fault as before.
+ */
 public class Memory {
-    private static final int MEMORY_SIZE = 2048;
-    private final short[] memory = new short[MEMORY_SIZE];
-    private final Cache cache;
+    public static final int DEFAULT_SIZE = 2048;
+    public static final int MAX_SIZE = Cache.ADDRESS_SPACE;
+    static final int PAGE_SHIFT = 6; // checkpoint pages of 64 words
+    static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private final MemoryBackend memory;
+    private final int size;
+    private final long[] dirtyPages; // written since last checkpoint
+    private final Cache instructionCache; // the same object as dataCache unless split
+    private final Cache dataCache;
+    private final Cache l2;               // null if there is no L2
+    private StoreListener[] storeListeners = new StoreListener[0];
+    // Statistics since creation or resetStats (see Stats and TimingModel)
+    private final long[] accesses = new long[ACCESS_TYPES.length];    // by AccessType
+    private final long[] accessMisses = new long[ACCESS_TYPES.length]; // L1 misses by AccessType
+    private final long[] addressAccesses;                               // by address, any type
+    private final long[] addressMisses;
+    private long l2Hits;
+    private long l2Misses;
+    private long memoryWrites;  // words or blocks that reached memory
+    private long directWrites;  // stores written to memory while the CPU waited
+    private long writeBacks;    // dirty blocks evicted
+    private WriteMode writeMode = WriteMode.WRITE_THROUGH;
+    private boolean writeAllocate = true;
+    private WriteBuffer writeBuffer; // null if none
+    private Prefetcher prefetcher;   // null if none
+    private final int[] prefetchAddresses = new int[Prefetcher.MAX_DEGREE];
+    private int lastFetch;           // address of the instruction being executed, the PC prefetchers see
+
+    /** Why the CPU accessed memory; statistics are kept per type. */
+    public enum AccessType {
+        FETCH,    // instruction fetch, through the L1 instruction cache
+        READ,     // operand load
+        WRITE,    // store
+        INDIRECT  // address word of an indirect effective address
+    }
+
+    private static final AccessType[] ACCESS_TYPES = AccessType.values();
+
+    /**
+     * Notified when memory contents change, so state derived from memory
+     * (such as decoded instructions) can be invalidated.
+     */
+    public interface StoreListener {
+        /** A single word was written. */
+        void wordStored(int address);
+
+        /** Any number of words changed at once (reset or program load). */
+        void allWordsChanged();
+    }
 
     public Memory() {
-        cache = new Cache();
+        this(new Cache());
+    }
+
+    /** Memory in front of which sits {@code cache}, e.g. one with a different geometry (see {@link Cache#parse}). */
+    public Memory(Cache cache) {
+        this(cache, cache, null);
+    }
+
+    /**
+     * Memory with an L1 instruction cache, an L1 data cache (pass the same
+     * cache twice for a unified L1) and an L2, or null for none. The L2 block
+     * must be at least as large as the L1 blocks, so one L2 access serves an
+     * L1 miss.
+     */
+    public Memory(Cache instructionCache, Cache dataCache, Cache l2) {
+        this(instructionCache, dataCache, l2, MemoryBackend.create("heap", DEFAULT_SIZE));
+    }
+
+    /**
+     * Memory with the given caches, as above, whose words live in
+     * {@code backend}: a whole number of 64-word pages, at most
+     * {@link #MAX_SIZE}. Its contents are zeroed, as on every {@link #reset}.
+     */
+    public Memory(Cache instructionCache, Cache dataCache, Cache l2, MemoryBackend backend) {
+        int words = checkSize(backend.size());
+        if (l2 != null && (l2.getBlockWords() < instructionCache.getBlockWords()
+                || l2.getBlockWords() < dataCache.getBlockWords())) {
+            throw new IllegalArgumentException("L2 blocks (" + l2.getBlockWords()
+                    + " words) must not be smaller than L1 blocks");
+        }
+        if (l2 == instructionCache || l2 == dataCache) {
+            throw new IllegalArgumentException("L2 must be a cache of its own");
+        }
+        this.instructionCache = instructionCache;
+        this.dataCache = dataCache;
+        this.l2 = l2;
+        this.memory = backend;
+        this.size = words;
+        dirtyPages = new long[(words / PAGE_SIZE + 63) / 64];
+        addressAccesses = new long[words];
+        addressMisses = new long[words];
         reset();
     }
 
-    /** Resets all memory contents, registers, and cache to zero (power-on reset). */
-    public void reset() {
-        Arrays.fill(memory, (short) 0);
-        cache.clear();
+    /** Returns {@code words} if it is a valid memory size, else throws IllegalArgumentException. */
+    static int checkSize(int words) {
+        if (words < PAGE_SIZE || words > MAX_SIZE || words % PAGE_SIZE != 0) {
+            throw new IllegalArgumentException("Memory size must be a multiple of " + PAGE_SIZE + " words from "
+                    + PAGE_SIZE + " to " + MAX_SIZE + ": " + words);
+        }
+        return words;
     }
 
-    public void loadProgramFromFile(String filePath) throws IOException {
-        BufferedReader br = null;
-        boolean loaded = false;
+    /**
+     * Builds memory from cache specs as taken by {@link Cache#parse}; any of
+     * them may be null. {@code l1} is a unified L1 (default 1:16:1); giving
+     * {@code l1i} or {@code l1d} instead splits it, the other half taking the
+     * default. {@code l2} adds a unified L2.
+     */
+    public static Memory withCaches(String l1, String l1i, String l1d, String l2) {
+        return withCaches(l1, l1i, l1d, l2, MemoryBackend.create("heap", DEFAULT_SIZE));
+    }
 
-        // First try opening as a regular filesystem path
-        try {
-            br = new BufferedReader(new FileReader(filePath));
-            loaded = true;
-        } catch (FileNotFoundException e) {
-            // If not found on filesystem, try to load as a classpath resource
-            InputStream is = getClass().getClassLoader().getResourceAsStream(filePath.replace('\\', '/'));
-            if (is == null) {
-                // Try relative path without leading directories
-                is = getClass().getClassLoader().getResourceAsStream(new java.io.File(filePath).getName());
-            }
-            if (is != null) {
-                br = new BufferedReader(new InputStreamReader(is));
-                loaded = true;
-            }
+    /** As {@link #withCaches(String, String, String, String)}, with the words in {@code backend}. */
+    public static Memory withCaches(String l1, String l1i, String l1d, String l2, MemoryBackend backend) {
+        Cache level2 = (l2 == null) ? null : Cache.parse(l2);
+        if (l1i == null && l1d == null) {
+            Cache unified = (l1 == null) ? new Cache() : Cache.parse(l1);
+            return new Memory(unified, unified, level2, backend);
+        }
+        if (l1 != null) {
+            throw new IllegalArgumentException("A unified L1 cannot be combined with split L1I/L1D caches");
+        }
+        return new Memory(l1i == null ? new Cache() : Cache.parse(l1i),
+                l1d == null ? new Cache() : Cache.parse(l1d), level2, backend);
+    }
+
+    /** Resets all memory contents, registers, and cache to zero (power-on reset). */
+    public void reset() {
+        memory.fill(0, size, (short) 0);
+        dataCache.clear();
+        if (instructionCache != dataCache) {
+            instructionCache.clear();
         }
+        if (l2 != null) {
+            l2.clear();
+        }
+        if (writeBuffer != null) {
+            writeBuffer.clear();
+        }
+        if (prefetcher != null) {
+            prefetcher.clear();
+        }
+        notifyAllWordsChanged();
+    }
 
-        if (!loaded || br == null) {
-            throw new FileNotFoundException("Program file not found (filesystem or classpath): " + filePath);
+    /**
+     * Prefetches into the L1 data cache (or the unified L1) with
+     * {@code prefetcher}, or stops prefetching if null. Set before running.
+     */
+    public void setPrefetcher(Prefetcher prefetcher) {
+        this.prefetcher = prefetcher;
+        if (prefetcher != null) {
+            prefetcher.clear();
         }
+    }
+
+    /** As {@link #setPrefetcher}, by name (see {@link Prefetcher#create}), for the data cache's block size. */
+    public void setPrefetcher(String name) {
+        setPrefetcher(Prefetcher.create(name, dataCache.getBlockWords()));
+    }
 
-        try (BufferedReader reader = br) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-                if (line.isEmpty() || line.startsWith("#")) continue;
+    /** The prefetcher, or null if there is none. */
+    public Prefetcher getPrefetcher() {
+        return prefetcher;
+    }
 
-                String[] parts = line.split("\\s+");
-                if (parts.length < 2) continue;
+    /** E.g. "write-back, write allocate, 4-entry write buffer". */
+    public String describeWritePolicy() {
+        return (writeMode == WriteMode.WRITE_BACK ? "write-back" : "write-through")
+                + (writeAllocate ? ", write allocate" : ", no write allocate")
+                + (writeBuffer == null ? "" : ", " + writeBuffer.getEntries() + "-entry write buffer");
+    }
 
-                int address = Integer.parseInt(parts[0], 8); // octal address
-                short value = (short) Integer.parseInt(parts[1], 8); // octal value
+    /** Write-through (the default) or write-back, for the L1 data cache and the L2. Set before running. */
+    public void setWriteMode(WriteMode mode) {
+        writeMode = mode;
+    }
 
-                if (address >= 0 && address < MEMORY_SIZE) {
-                    memory[address] = value;
-                } else {
-                    System.err.println("Invalid memory address in file: " + address);
-                }
-            }
+    public WriteMode getWriteMode() {
+        return writeMode;
+    }
+
+    /** Whether a store that misses the L1 data cache loads the block into it (the default) or goes past it. */
+    public void setWriteAllocate(boolean allocate) {
+        writeAllocate = allocate;
+    }
+
+    public boolean isWriteAllocate() {
+        return writeAllocate;
+    }
+
+    /**
+     * Queues writes to memory in a coalescing buffer of {@code entries}
+     * blocks of the last cache level, or writes them at once if 0 (the default).
+     */
+    public void setWriteBuffer(int entries) {
+        writeBuffer = (entries == 0) ? null
+                : new WriteBuffer(entries, (l2 != null ? l2 : dataCache).getBlockWords());
+    }
+
+    /** Entries of the write buffer, 0 if there is none. */
+    public int getWriteBufferEntries() {
+        return writeBuffer == null ? 0 : writeBuffer.getEntries();
+    }
+
+    public void addStoreListener(StoreListener listener) {
+        StoreListener[] updated = Arrays.copyOf(storeListeners, storeListeners.length + 1);
+        updated[storeListeners.length] = listener;
+        storeListeners = updated;
+    }
+
+    public void removeStoreListener(StoreListener listener) {
+        int index = Arrays.asList(storeListeners).indexOf(listener);
+        if (index < 0) return;
+        StoreListener[] updated = new StoreListener[storeListeners.length - 1];
+        System.arraycopy(storeListeners, 0, updated, 0, index);
+        System.arraycopy(storeListeners, index + 1, updated, index, updated.length - index);
+        storeListeners = updated;
+    }
+
+    private void notifyAllWordsChanged() {
+        Arrays.fill(dirtyPages, -1L);
+        for (StoreListener listener : storeListeners) {
+            listener.allWordsChanged();
         }
+    }
+
+    /** Number of addressable words. */
+    public int getSize() {
+        return size;
+    }
+
+    /** Where the words live. */
+    public MemoryBackend getBackend() {
+        return memory;
+    }
+
+    public void loadProgramFromFile(String filePath) throws IOException {
+        load(LoadImage.read(filePath, size));
 
         System.out.println("Program loaded successfully into memory.");
     }
 
+    /** Writes a parsed load image into memory (the cache is left as it is). */
+    public void load(LoadImage image) {
+        image.applyTo(memory);
+        notifyAllWordsChanged();
+    }
+
     /** Prints a memory range (for debugging). */
     public void dump(int start, int end) {
-        if (start < 0 || end >= MEMORY_SIZE || start > end)
+        if (start < 0 || end >= size || start > end)
             throw new IllegalArgumentException("Invalid memory range.");
 
         System.out.println("------ Memory Dump (octal) ------");
         for (int i = start; i <= end; i++) {
-            System.out.printf("%06o : %06o\n", i, memory[i]);
+            System.out.printf("%06o : %06o\n", i, memory.get(i));
         }
         System.out.println("--------------------------------");
     }
 
-    /** Returns the word stored at an address, checking cache first. */
+    /** Returns the word stored at an address, checking the (L1 data) cache first. */
     public short getValueAt(int address) {
-        if (address < 0 || address >= MEMORY_SIZE)
+        return read(address, AccessType.READ);
+    }
+
+    /** Returns the instruction word at an address, through the L1 instruction cache. */
+    public short fetchValueAt(int address) {
+        return read(address, AccessType.FETCH);
+    }
+
+    /** Returns the address word of an indirect effective address, through the L1 data cache. */
+    public short getIndirectValueAt(int address) {
+        return read(address, AccessType.INDIRECT);
+    }
+
+    /** Reads a word through the L1 cache for {@code type} (any but WRITE), counting the access. */
+    public short read(int address, AccessType type) {
+        if (address < 0 || address >= size)
             throw new IllegalArgumentException("Address out of range: " + address);
 
         // Try to read from cache first
-        Short cachedValue = cache.read(address);
-        if (cachedValue != null) {
-            return cachedValue;
+        Cache cache = (type == AccessType.FETCH) ? instructionCache : dataCache;
+        if (type == AccessType.FETCH) {
+            lastFetch = address;
+        }
+        accesses[type.ordinal()]++;
+        addressAccesses[address]++;
+        int slot = cache.lookup(address);
+        if (slot != Cache.MISS) {
+            short value = cache.getData(slot);
+            if (prefetcher != null && cache == dataCache) {
+                prefetch(address, type, false); // may evict the line just read
+            }
+            return value;
+        }
+
+        // Cache miss - fill the whole block from the next level
+        accessMisses[type.ordinal()]++;
+        addressMisses[address]++;
+        readL2(address);
+        cache.fill(address, memory);
+        evicted(cache); // an instruction cache of its own never holds dirty lines
+        if (prefetcher != null && cache == dataCache) {
+            prefetch(address, type, true);
+        }
+        return memory.get(address);
+    }
+
+    /** Tells the prefetcher about a demand access to the data cache and fills what it asks for. */
+    private void prefetch(int address, AccessType type, boolean miss) {
+        int n = prefetcher.access(lastFetch, address, type, miss, dataCache.takePrefetchHit(), prefetchAddresses);
+        for (int k = 0; k < n; k++) {
+            int target = prefetchAddresses[k];
+            if (target < 0 || target >= size || dataCache.contains(target)) {
+                continue;
+            }
+            if (l2 != null && !l2.contains(target)) {
+                l2.fill(target, memory); // not counted as an L2 miss: nobody waits for it
+                evicted(l2);
+            }
+            dataCache.prefetch(target, memory);
+            evicted(dataCache);
+        }
+    }
+
+    /** Serves an L1 miss from the L2, filling it from memory if it misses too. */
+    private void readL2(int address) {
+        if (l2 == null) {
+            return;
+        }
+        if (l2.lookup(address) != Cache.MISS) {
+            l2Hits++;
+        } else {
+            l2Misses++;
+            l2.fill(address, memory);
+            evicted(l2);
         }
+    }
+
+    /** Writes on the dirty block, if any, that the last fill of {@code cache} evicted. */
+    private void evicted(Cache cache) {
+        int block = cache.getEvictedDirtyBlock();
+        if (block == Cache.MISS) {
+            return;
+        }
+        writeBacks++;
+        if (cache == l2) {
+            writeMemory(block, false);
+        } else {
+            writeBelowL1(block, false);
+        }
+    }
+
+    /**
+     * A store that did not stay in the L1 data cache, or a dirty block it
+     * evicted, on its way to memory. A write-back L2 keeps it if it holds the
+     * block, or allocates it with write allocate; otherwise it goes to memory.
+     * Hits and allocations count as L2 hits and misses, like reads in
+     * {@link #readL2}, here and in the L2's own statistics; a miss without
+     * allocation is just a memory write and counts in neither.
+     */
+    private void writeBelowL1(int address, boolean store) {
+        if (l2 != null && writeMode == WriteMode.WRITE_BACK) {
+            int slot = writeAllocate || l2.contains(address) ? l2.lookup(address) : Cache.MISS;
+            if (slot != Cache.MISS) {
+                l2Hits++;
+            } else if (writeAllocate) {
+                l2Misses++;
+                slot = l2.fill(address, memory);
+                evicted(l2);
+            }
+            if (slot != Cache.MISS) {
+                l2.setDirty(slot);
+                return;
+            }
+        }
+        writeMemory(address, store);
+    }
 
-        // Cache miss - read from memory and update cache
-        short value = memory[address];
-        cache.write(address, value);
-        return value;
+    /** Counts one write of a word or block to memory, through the write buffer if there is one. */
+    private void writeMemory(int address, boolean store) {
+        if (writeBuffer != null) {
+            memoryWrites += writeBuffer.write(address);
+            return;
+        }
+        memoryWrites++;
+        if (store) {
+            directWrites++;
+        }
+    }
+
+    /** Returns the word at an address without going through the cache (no side effects). */
+    public short peek(int address) {
+        if (address < 0 || address >= size)
+            throw new IllegalArgumentException("Address out of range: " + address);
+        return memory.get(address);
+    }
+
+    /** Copies {@code length} words starting at {@code address} into {@code words}, bypassing the cache. */
+    public void copyOut(int address, short[] words, int offset, int length) {
+        if (address < 0 || length < 0 || address > size - length)
+            throw new IllegalArgumentException("Invalid memory range: " + address + "+" + length);
+        memory.read(address, words, offset, length);
     }
 
     /** Sets a value at an address using write-through policy */
     public void setValueAt(int address, short value) {
-        if (address < 0 || address >= MEMORY_SIZE)
+        if (address < 0 || address >= size)
             throw new IllegalArgumentException("Address out of range: " + address);
         
-        // Write-through: update both cache and memory
-        cache.write(address, value);
-        memory[address] = value;
+        // Memory always takes the value; the write mode decides when that counts as traffic
+        memory.set(address, value);
+        accesses[AccessType.WRITE.ordinal()]++;
+        addressAccesses[address]++;
+        int slot = dataCache.lookup(address);
+        boolean miss = slot == Cache.MISS;
+        if (miss) {
+            accessMisses[AccessType.WRITE.ordinal()]++;
+            addressMisses[address]++;
+        }
+        if (slot == Cache.MISS && writeAllocate) {
+            readL2(address); // the rest of the block comes from the next level
+            slot = dataCache.fill(address, memory);
+            evicted(dataCache);
+        } else {
+            dataCache.update(address, value);
+        }
+        if (instructionCache != dataCache) {
+            instructionCache.update(address, value);
+        }
+        if (l2 != null) {
+            l2.update(address, value);
+        }
+        if (slot != Cache.MISS && writeMode == WriteMode.WRITE_BACK) {
+            dataCache.setDirty(slot);
+        } else {
+            writeBelowL1(address, true);
+        }
+        if (prefetcher != null) {
+            prefetch(address, AccessType.WRITE, miss);
+        }
+        int page = address >>> PAGE_SHIFT;
+        dirtyPages[page >>> 6] |= 1L << page;
+        for (StoreListener listener : storeListeners) {
+            listener.wordStored(address);
+        }
+    }
+
+    /** Accesses of one type. */
+    public long getAccesses(AccessType type) {
+        return accesses[type.ordinal()];
+    }
+
+    /** Accesses of one type that missed their L1 cache. */
+    public long getMisses(AccessType type) {
+        return accessMisses[type.ordinal()];
+    }
+
+    /** Reads (fetches, loads and indirect address words) that hit in the L1 cache. */
+    public long getReadHits() {
+        return getReadAccesses() - getReadMisses();
+    }
+
+    /** Reads (fetches, loads and indirect address words) that missed the L1 cache. */
+    public long getReadMisses() {
+        return accessMisses[AccessType.FETCH.ordinal()] + accessMisses[AccessType.READ.ordinal()]
+                + accessMisses[AccessType.INDIRECT.ordinal()];
+    }
+
+    private long getReadAccesses() {
+        return accesses[AccessType.FETCH.ordinal()] + accesses[AccessType.READ.ordinal()]
+                + accesses[AccessType.INDIRECT.ordinal()];
+    }
+
+    /** The part of {@link #getReadHits} made by instruction fetches. */
+    public long getFetchHits() {
+        return accesses[AccessType.FETCH.ordinal()] - accessMisses[AccessType.FETCH.ordinal()];
+    }
+
+    /** The part of {@link #getReadMisses} made by instruction fetches. */
+    public long getFetchMisses() {
+        return accessMisses[AccessType.FETCH.ordinal()];
+    }
+
+    /** L1 misses (including write allocations) that hit in the L2; 0 without an L2. */
+    public long getL2Hits() {
+        return l2Hits;
+    }
+
+    /** L1 misses (including write allocations) that also missed the L2 and went to memory. */
+    public long getL2Misses() {
+        return l2Misses;
+    }
+
+    /** Stores through {@link #setValueAt}. */
+    public long getWrites() {
+        return accesses[AccessType.WRITE.ordinal()];
+    }
+
+    /**
+     * Writes that reached memory: stores written through, dirty blocks
+     * written back, and blocks drained from the write buffer. Writes still
+     * owed (dirty lines, buffered blocks) are not included.
+     */
+    public long getMemoryWrites() {
+        return memoryWrites;
+    }
+
+    /** The stores among {@link #getMemoryWrites} that went straight to memory, with no buffer in between. */
+    public long getDirectWrites() {
+        return directWrites;
+    }
+
+    /** Dirty blocks evicted from the L1 data cache or L2 (write-back). */
+    public long getWriteBacks() {
+        return writeBacks;
+    }
+
+    /** Writes merged into a block already waiting in the write buffer. */
+    public long getCoalescedWrites() {
+        return writeBuffer == null ? 0 : writeBuffer.getCoalesced();
+    }
+
+    /** Writes to memory still owed: dirty lines in the caches plus blocks waiting in the write buffer. */
+    public long getPendingWrites() {
+        long pending = dataCache.getDirtyLineCount() + (l2 == null ? 0 : l2.getDirtyLineCount());
+        return pending + (writeBuffer == null ? 0 : writeBuffer.getPending());
+    }
+
+    /**
+     * Counters of the whole hierarchy, copied at one moment: accesses and L1
+     * misses by type and by address, L2 and write traffic, and the counters
+     * of each cache.
+     */
+    public static final class Stats {
+        private final long[] accesses;
+        private final long[] misses;
+        private final long[] addressAccesses;
+        private final long[] addressMisses;
+        private final long l2Hits;
+        private final long l2Misses;
+        private final long memoryWrites;
+        private final long writeBacks;
+        private final long coalescedWrites;
+        private final long pendingWrites;
+        private final String writePolicy;
+        private final String prefetcher;
+        private final Cache.Stats data;
+        private final Cache.Stats instruction;
+        private final Cache.Stats level2;
+
+        Stats(Memory m) {
+            accesses = m.accesses.clone();
+            misses = m.accessMisses.clone();
+            addressAccesses = m.addressAccesses.clone();
+            addressMisses = m.addressMisses.clone();
+            l2Hits = m.l2Hits;
+            l2Misses = m.l2Misses;
+            memoryWrites = m.memoryWrites;
+            writeBacks = m.writeBacks;
+            coalescedWrites = m.getCoalescedWrites();
+            pendingWrites = m.getPendingWrites();
+            writePolicy = m.describeWritePolicy();
+            prefetcher = m.prefetcher == null ? "none" : m.prefetcher.name();
+            data = m.dataCache.getStats();
+            instruction = m.isSplit() ? m.instructionCache.getStats() : null;
+            level2 = m.l2 == null ? null : m.l2.getStats();
+        }
+
+        public long getAccesses(AccessType type) { return accesses[type.ordinal()]; }
+        public long getMisses(AccessType type) { return misses[type.ordinal()]; }
+        public long getHits(AccessType type) { return accesses[type.ordinal()] - misses[type.ordinal()]; }
+
+        /** Accesses of every type to one address. */
+        public long getAddressAccesses(int address) { return addressAccesses[address]; }
+
+        /** Accesses to one address that missed their L1 cache. */
+        public long getAddressMisses(int address) { return addressMisses[address]; }
+
+        public int getSize() { return addressAccesses.length; }
+        public long getL2Hits() { return l2Hits; }
+        public long getL2Misses() { return l2Misses; }
+        public long getMemoryWrites() { return memoryWrites; }
+        public long getWriteBacks() { return writeBacks; }
+        public long getCoalescedWrites() { return coalescedWrites; }
+        public long getPendingWrites() { return pendingWrites; }
+
+        /** The L1 data cache, or the unified L1. */
+        public Cache.Stats getDataCache() { return data; }
+
+        /** The L1 instruction cache, or null if the L1 is unified. */
+        public Cache.Stats getInstructionCache() { return instruction; }
+
+        /** The L2 cache, or null if there is none. */
+        public Cache.Stats getL2Cache() { return level2; }
+
+        /** Name of the prefetcher, or "none". */
+        public String getPrefetcher() { return prefetcher; }
+
+        /** Prefetched lines used before eviction, as a percentage of prefetch fills (0 if none). */
+        public double getPrefetchAccuracy() {
+            return data.getPrefetchFills() == 0 ? 0.0 : 100.0 * data.getPrefetchHits() / data.getPrefetchFills();
+        }
+
+        /**
+         * Data cache misses that prefetching removed, as a percentage of the
+         * misses there would have been: prefetch hits / (prefetch hits + misses).
+         */
+        public double getPrefetchCoverage() {
+            long wouldMiss = data.getPrefetchHits() + data.getMisses();
+            return wouldMiss == 0 ? 0.0 : 100.0 * data.getPrefetchHits() / wouldMiss;
+        }
+
+        /** Accesses of every type. */
+        public long getTotalAccesses() {
+            long total = 0;
+            for (long n : accesses) {
+                total += n;
+            }
+            return total;
+        }
+
+        /** Up to {@code count} addresses with the most accesses, most first (ties by address). */
+        public int[] getHottestAddresses(int count) {
+            return IntStream.range(0, addressAccesses.length).boxed()
+                    .filter(a -> addressAccesses[a] > 0)
+                    .sorted((a, b) -> addressAccesses[a] != addressAccesses[b]
+                            ? Long.compare(addressAccesses[b], addressAccesses[a]) : Integer.compare(a, b))
+                    .limit(count).mapToInt(Integer::intValue).toArray();
+        }
+
+        /** Writes a readable report, listing the {@code hottest} most accessed addresses. */
+        public void writeReport(Writer out, int hottest) throws IOException {
+            PrintWriter pw = new PrintWriter(out);
+            pw.printf("Memory statistics (%s)%n", writePolicy);
+            pw.printf("  %-10s %12s %12s %12s %9s%n", "access", "count", "hits", "misses", "hit ratio");
+            for (AccessType type : ACCESS_TYPES) {
+                long n = getAccesses(type);
+                pw.printf("  %-10s %12d %12d %12d %8.2f%%%n", type.name().toLowerCase(), n, getHits(type),
+                        getMisses(type), n == 0 ? 0.0 : 100.0 * getHits(type) / n);
+            }
+            if (level2 != null) {
+                pw.printf("  L2 accesses %d (%d hits, %d misses)%n", l2Hits + l2Misses, l2Hits, l2Misses);
+            }
+            pw.printf("  memory writes %d, write-backs %d, coalesced %d, pending %d%n", memoryWrites, writeBacks,
+                    coalescedWrites, pendingWrites);
+            if (!prefetcher.equals("none")) {
+                pw.printf("  prefetch %s: %d fills, %d used, %d unused, accuracy %.2f%%, coverage %.2f%%%n",
+                        prefetcher, data.getPrefetchFills(), data.getPrefetchHits(), data.getPrefetchUnused(),
+                        getPrefetchAccuracy(), getPrefetchCoverage());
+            }
+            writeCache(pw, instruction == null ? "L1" : "L1D", data);
+            if (instruction != null) {
+                writeCache(pw, "L1I", instruction);
+            }
+            if (level2 != null) {
+                writeCache(pw, "L2", level2);
+            }
+            int[] hot = getHottestAddresses(hottest);
+            if (hot.length > 0) {
+                pw.println("Hottest addresses");
+                pw.printf("  %-7s %12s %12s%n", "address", "accesses", "misses");
+                for (int a : hot) {
+                    pw.printf("  %06o  %12d %12d%n", a, addressAccesses[a], addressMisses[a]);
+                }
+            }
+            pw.flush();
+        }
+
+        private static void writeCache(PrintWriter pw, String label, Cache.Stats c) {
+            pw.printf("%s cache: %s%n", label, c.getCache());
+            pw.printf("  lookups %d, hits %d, misses %d (%.2f%% hits), fills %d%n", c.getLookups(), c.getHits(),
+                    c.getMisses(), c.getHitRatio(), c.getFills());
+            pw.printf("  evictions %d (%d dirty, %d conflicts)%n", c.getEvictions(), c.getDirtyEvictions(),
+                    c.getConflicts());
+            pw.print("  fills per line:");
+            for (int line = 0; line < c.getLineCount(); line++) {
+                pw.print((line % 16 == 0 && line > 0 ? "\n                 " : " ") + c.getLineFills(line));
+            }
+            pw.println();
+        }
+
+        /**
+         * Writes the same numbers as CSV rows of {@code section,key,value}:
+         * access counts by type, cache counters and per-line fills, and
+         * per-address counts for every address that was accessed.
+         */
+        public void writeCsv(Writer out) throws IOException {
+            PrintWriter pw = new PrintWriter(out);
+            pw.println("section,key,value");
+            for (AccessType type : ACCESS_TYPES) {
+                String name = type.name().toLowerCase();
+                pw.println("access," + name + ".count," + getAccesses(type));
+                pw.println("access," + name + ".misses," + getMisses(type));
+            }
+            pw.println("l2,hits," + l2Hits);
+            pw.println("l2,misses," + l2Misses);
+            pw.println("write,memory," + memoryWrites);
+            pw.println("write,writeBacks," + writeBacks);
+            pw.println("write,coalesced," + coalescedWrites);
+            pw.println("write,pending," + pendingWrites);
+            pw.println("prefetch,fills," + data.getPrefetchFills());
+            pw.println("prefetch,used," + data.getPrefetchHits());
+            pw.println("prefetch,unused," + data.getPrefetchUnused());
+            writeCacheCsv(pw, instruction == null ? "l1" : "l1d", data);
+            if (instruction != null) {
+                writeCacheCsv(pw, "l1i", instruction);
+            }
+            if (level2 != null) {
+                writeCacheCsv(pw, "l2cache", level2);
+            }
+            for (int a = 0; a < addressAccesses.length; a++) {
+                if (addressAccesses[a] > 0) {
+                    pw.println("address," + a + ".accesses," + addressAccesses[a]);
+                    pw.println("address," + a + ".misses," + addressMisses[a]);
+                }
+            }
+            pw.flush();
+        }
+
+        private static void writeCacheCsv(PrintWriter pw, String section, Cache.Stats c) {
+            pw.println(section + ",hits," + c.getHits());
+            pw.println(section + ",misses," + c.getMisses());
+            pw.println(section + ",fills," + c.getFills());
+            pw.println(section + ",evictions," + c.getEvictions());
+            pw.println(section + ",dirtyEvictions," + c.getDirtyEvictions());
+            pw.println(section + ",conflicts," + c.getConflicts());
+            for (int line = 0; line < c.getLineCount(); line++) {
+                pw.println(section + ",line" + line + ".fills," + c.getLineFills(line));
+            }
+        }
+    }
+
+    /** Copies every counter of memory and its caches. */
+    public Stats getStats() {
+        return new Stats(this);
+    }
+
+    /**
+     * Zeroes every counter of memory, its caches and the write buffer.
+     * Cache contents, dirty lines and buffered blocks stay as they are.
+     */
+    public void resetStats() {
+        Arrays.fill(accesses, 0);
+        Arrays.fill(accessMisses, 0);
+        Arrays.fill(addressAccesses, 0);
+        Arrays.fill(addressMisses, 0);
+        l2Hits = 0;
+        l2Misses = 0;
+        memoryWrites = 0;
+        directWrites = 0;
+        writeBacks = 0;
+        dataCache.resetStats();
+        if (instructionCache != dataCache) {
+            instructionCache.resetStats();
+        }
+        if (l2 != null) {
+            l2.resetStats();
+        }
+        if (writeBuffer != null) {
+            writeBuffer.resetStats();
+        }
+    }
+
+    // ---- Checkpoint support (see Checkpointer) ----
+
+    int getPageCount() {
+        return size / PAGE_SIZE;
+    }
+
+    /** True if the page was written since the last {@link #clearDirtyPages()}. */
+    boolean isPageDirty(int page) {
+        return (dirtyPages[page >>> 6] & (1L << page)) != 0;
+    }
+
+    void clearDirtyPages() {
+        Arrays.fill(dirtyPages, 0L);
+    }
+
+    /** Copies one page of memory (not the cache) into {@code page}. */
+    void copyPageOut(int pageNumber, short[] page) {
+        memory.read(pageNumber << PAGE_SHIFT, page, 0, PAGE_SIZE);
+    }
+
+    /**
+     * Overwrites one page of memory, bypassing the cache. Callers must call
+     * {@link #pagesRestored()} once they are done.
+     */
+    void copyPageIn(int pageNumber, short[] page) {
+        memory.write(pageNumber << PAGE_SHIFT, page, 0, PAGE_SIZE);
     }
 
-    /** Returns the cache for display purposes */
+    /** Tells listeners that pages were replaced; leaves the dirty set empty. */
+    void pagesRestored() {
+        for (StoreListener listener : storeListeners) {
+            listener.allWordsChanged();
+        }
+        clearDirtyPages();
+    }
+
+    /** Snapshots of the L1 data, L1 instruction and L2 caches; the last two are null if absent. */
+    Cache.Snapshot[] captureCaches() {
+        return new Cache.Snapshot[] {
+            dataCache.capture(),
+            instructionCache == dataCache ? null : instructionCache.capture(),
+            l2 == null ? null : l2.capture()
+        };
+    }
+
+    /** Restores snapshots from {@link #captureCaches} into a hierarchy of the same shape. */
+    void restoreCaches(Cache.Snapshot[] snapshots) {
+        if ((snapshots[1] == null) != (instructionCache == dataCache) || (snapshots[2] == null) != (l2 == null)) {
+            throw new IllegalArgumentException("Snapshot cache hierarchy is " + describe(snapshots[1] != null,
+                    snapshots[2] != null) + ", memory has " + describe(isSplit(), l2 != null));
+        }
+        if (writeBuffer != null) {
+            writeBuffer.clear();
+        }
+        if (prefetcher != null) {
+            prefetcher.clear();
+        }
+        dataCache.restore(snapshots[0]);
+        if (snapshots[1] != null) {
+            instructionCache.restore(snapshots[1]);
+        }
+        if (snapshots[2] != null) {
+            l2.restore(snapshots[2]);
+        }
+    }
+
+    private static String describe(boolean split, boolean withL2) {
+        return (split ? "split L1I/L1D" : "unified L1") + (withL2 ? " with L2" : " without L2");
+    }
+
+    /** Returns the (L1 data) cache for display purposes */
     public Cache getCache() {
-        return cache;
+        return dataCache;
+    }
+
+    /** The L1 instruction cache; the same as {@link #getCache} unless split. */
+    public Cache getInstructionCache() {
+        return instructionCache;
+    }
+
+    /** The L2 cache, or null if there is none. */
+    public Cache getL2Cache() {
+        return l2;
+    }
+
+    /** True if instruction fetches and data accesses use separate L1 caches. */
+    public boolean isSplit() {
+        return instructionCache != dataCache;
     }
 }
@@ -0,0 +1,187 @@
+package com.gwu.simulator;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Arrays;
+
+/**
+ * Storage for the words of {@link Memory}: a heap array or a block of
+ * native memory outside the Java heap. Memory checks every address before
+ * it gets here; backends do not check again.
+ *
+ * Besides single words a backend copies and fills whole ranges at once,
+ * which is how caches fill blocks and checkpoints copy pages. A backend can
+ * be larger than one Memory (at most {@link Memory#MAX_SIZE} words, the
+ * 12-bit address space): {@link #slice} cuts it into banks, each the
+ * memory of its own machine. Writes to one bank are seen through every
+ * other view of the same words.
+ *
+ * Backends are created with {@link #create}.
+ */
+public interface MemoryBackend {
+
+    /** Name as accepted by {@link #create}. */
+    String name();
+
+    /** Number of words. */
+    int size();
+
+    short get(int address);
+
+    void set(int address, short value);
+
+    /** Copies {@code length} words starting at {@code address} into {@code words[offset...]}. */
+    void read(int address, short[] words, int offset, int length);
+
+    /** Copies {@code words[offset...]} into the {@code length} words starting at {@code address}. */
+    void write(int address, short[] words, int offset, int length);
+
+    /** Sets {@code length} words starting at {@code address} to {@code value}. */
+    void fill(int address, int length, short value);
+
+    /** A view of {@code length} words starting at {@code address}, sharing this backend's storage. */
+    MemoryBackend slice(int address, int length);
+
+    /**
+     * Creates a zeroed backend of {@code words} words: {@code heap} (a
+     * short array) or {@code offheap} (native memory, released once the
+     * backend and every slice of it are unreachable).
+     */
+    static MemoryBackend create(String name, int words) {
+        if (words < 0) {
+            throw new IllegalArgumentException("Memory size must not be negative: " + words);
+        }
+        switch (name.trim().toLowerCase()) {
+            case "heap":
+                return new Heap(new short[words], 0, words);
+            case "offheap":
+                return new OffHeap(Arena.ofAuto().allocate(2L * words, 2));
+            default:
+                throw new IllegalArgumentException("Unknown memory backend: " + name + " (heap or offheap)");
+        }
+    }
+
+    private static void checkSlice(MemoryBackend backend, int address, int length) {
+        if (address < 0 || length < 0 || address > backend.size() - length) {
+            throw new IllegalArgumentException("Slice " + address + "+" + length + " outside "
+                    + backend.size() + " words");
+        }
+    }
+
+    /** Words in a short array, or part of one. */
+    final class Heap implements MemoryBackend {
+        private final short[] words;
+        private final int base;
+        private final int size;
+
+        Heap(short[] words, int base, int size) {
+            this.words = words;
+            this.base = base;
+            this.size = size;
+        }
+
+        @Override
+        public String name() {
+            return "heap";
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public short get(int address) {
+            return words[base + address];
+        }
+
+        @Override
+        public void set(int address, short value) {
+            words[base + address] = value;
+        }
+
+        @Override
+        public void read(int address, short[] to, int offset, int length) {
+            System.arraycopy(words, base + address, to, offset, length);
+        }
+
+        @Override
+        public void write(int address, short[] from, int offset, int length) {
+            System.arraycopy(from, offset, words, base + address, length);
+        }
+
+        @Override
+        public void fill(int address, int length, short value) {
+            Arrays.fill(words, base + address, base + address + length, value);
+        }
+
+        @Override
+        public MemoryBackend slice(int address, int length) {
+            checkSlice(this, address, length);
+            return new Heap(words, base + address, length);
+        }
+    }
+
+    /** Words in native memory, two bytes each in the platform's byte order. */
+    final class OffHeap implements MemoryBackend {
+        private static final ValueLayout.OfShort WORD = ValueLayout.JAVA_SHORT;
+
+        private final MemorySegment segment;
+
+        OffHeap(MemorySegment segment) {
+            if (segment.byteSize() / 2 > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many words for one backend: " + segment.byteSize() / 2);
+            }
+            this.segment = segment;
+        }
+
+        @Override
+        public String name() {
+            return "offheap";
+        }
+
+        @Override
+        public int size() {
+            return (int) (segment.byteSize() / 2);
+        }
+
+        @Override
+        public short get(int address) {
+            return segment.getAtIndex(WORD, address);
+        }
+
+        @Override
+        public void set(int address, short value) {
+            segment.setAtIndex(WORD, address, value);
+        }
+
+        @Override
+        public void read(int address, short[] to, int offset, int length) {
+            MemorySegment.copy(segment, WORD, 2L * address, to, offset, length);
+        }
+
+        @Override
+        public void write(int address, short[] from, int offset, int length) {
+            MemorySegment.copy(from, offset, segment, WORD, 2L * address, length);
+        }
+
+        @Override
+        public void fill(int address, int length, short value) {
+            MemorySegment range = segment.asSlice(2L * address, 2L * length);
+            if ((value >> 8) == (byte) value) {
+                range.fill((byte) value); // both bytes alike, e.g. zero
+                return;
+            }
+            for (int k = 0; k < length; k++) {
+                range.setAtIndex(WORD, k, value);
+            }
+        }
+
+        @Override
+        public MemoryBackend slice(int address, int length) {
+            checkSlice(this, address, length);
+            return new OffHeap(segment.asSlice(2L * address, 2L * length));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.gwu.simulator;
+
+import java.io.*;
+import java.nio.file.Files;
+
+/**
+ * Runs the same load image once per cache replacement policy, with the same
+ * geometry, and prints the reads, hits, misses and hit ratio of each.
+ * Printer output is discarded; every run must execute the same number of
+ * instructions, since the cache never changes what a program computes.
+ *
+ * Usage: PolicyComparison load.txt [--cache sets:ways:words] [--policies fifo,lru,plru,random]
+ *        [--input file] [--pc octal] [--max-instructions n]
+ */
+public class PolicyComparison {
+
+    static final String[] POLICIES = {"fifo", "lru", "plru", "random"};
+
+    /** Outcome of one run. */
+    static class Result {
+        final String policy;
+        final RunStats stats;
+        final long hits;
+        final long misses;
+
+        Result(RunStats stats, Memory memory) {
+            this.policy = memory.getCache().getPolicy();
+            this.stats = stats;
+            this.hits = memory.getReadHits();
+            this.misses = memory.getReadMisses();
+        }
+    }
+
+    /** Runs the image with a cache of {@code geometry} replacing lines by {@code policy}. */
+    static Result runWith(String geometry, String policy, LoadImage image, String input, int startPc,
+            long maxInstructions) {
+        Memory memory = new Memory(Cache.parse(geometry + ":" + policy));
+        memory.load(image);
+        CPU cpu = new CPU(memory);
+        cpu.setPC(startPc);
+
+        HeadlessRunner runner = new HeadlessRunner(cpu);
+        runner.setInput(new StringReader(input));
+        runner.setOutput(Writer.nullWriter());
+        runner.setInstructionLimit(maxInstructions);
+        return new Result(runner.run(), memory);
+    }
+
+    private static final String USAGE = "Usage: PolicyComparison <load-file> [--cache sets:ways:words]"
+            + " [--policies fifo,lru,plru,random] [--input file] [--pc octal] [--max-instructions n]";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        String loadFile = args[0];
+        String geometry = "1:16:1";
+        String[] policies = POLICIES;
+        String input = "";
+        int startPc = 64; // 0o100 - program entry point
+        long maxInstructions = 10_000_000L;
+        for (int i = 1; i < args.length; i += 2) {
+            if (i + 1 == args.length) { // every option takes a value
+                System.err.println("Missing value for " + args[i]);
+                System.err.println(USAGE);
+                System.exit(2);
+            }
+            switch (args[i]) {
+                case "--cache" -> geometry = args[i + 1];
+                case "--policies" -> policies = args[i + 1].split(",");
+                case "--input" -> input = new String(Files.readAllBytes(new File(args[i + 1]).toPath()));
+                case "--pc" -> startPc = Integer.parseInt(args[i + 1], 8);
+                case "--max-instructions" -> maxInstructions = Long.parseLong(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        LoadImage image = LoadImage.read(loadFile, Memory.DEFAULT_SIZE);
+        Cache cache = Cache.parse(geometry);
+        System.out.printf("%s, cache %d sets x %d ways x %d %s%n", loadFile, cache.getSets(), cache.getWays(),
+                cache.getBlockWords(), cache.getBlockWords() == 1 ? "word" : "words");
+        System.out.printf("%-14s %12s %12s %12s %9s%n", "policy", "reads", "hits", "misses", "hit ratio");
+        long instructions = -1;
+        boolean agree = true;
+        for (String policy : policies) {
+            Result result;
+            try {
+                result = runWith(geometry, policy, image, input, startPc, maxInstructions);
+            } catch (IllegalArgumentException e) {
+                System.out.printf("%-14s %s%n", policy, e.getMessage());
+                continue;
+            }
+            long reads = result.hits + result.misses;
+            System.out.printf("%-14s %12d %12d %12d %8.2f%%%n", result.policy, reads, result.hits, result.misses,
+                    reads == 0 ? 0.0 : 100.0 * result.hits / reads);
+            if (instructions >= 0 && result.stats.getInstructions() != instructions) {
+                agree = false;
+            }
+            instructions = result.stats.getInstructions();
+        }
+        if (!agree) {
+            System.out.println("Runs executed different instruction counts");
+            System.exit(1);
+        }
+        System.out.println(instructions + " instructions per run");
+    }
+}
@@ -0,0 +1,137 @@
+package com.gwu.simulator;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Runs the same load image without a prefetcher and then with each given
+ * prefetcher, and prints the data cache misses, prefetch accuracy and
+ * coverage, and estimated cycles of each. Every prefetching run must end
+ * in the same architectural state as the run without: the same stop
+ * reason, instruction count, printer output, registers and memory
+ * contents. If any differs the command says which and exits with status 1.
+ *
+ * Usage: PrefetchComparison load.txt [--cache sets:ways:words[:policy]] [--l2 sets:ways:words[:policy]]
+ *        [--prefetchers next,next:4,stride] [--input file] [--pc octal] [--max-instructions n]
+ */
+public class PrefetchComparison {
+
+    /** Outcome of one run, with the architectural state it ended in. */
+    static class Result {
+        final RunStats stats;
+        final Memory memory;
+        final long cycles;
+        final String output;
+        final int[] registers;
+        final short[] words;
+
+        Result(RunStats stats, Memory memory, CPU cpu, TimingModel timing, String output) {
+            this.stats = stats;
+            this.memory = memory;
+            this.cycles = timing.getCycles();
+            this.output = output;
+            this.registers = cpu.captureRegisters();
+            this.words = new short[memory.getSize()];
+            memory.copyOut(0, words, 0, words.length);
+        }
+
+        /** What differs from {@code other} architecturally, or null if nothing does. */
+        String differenceFrom(Result other) {
+            if (stats.getReason() != other.stats.getReason()) return "stop reason";
+            if (stats.getInstructions() != other.stats.getInstructions()) return "instruction count";
+            if (!output.equals(other.output)) return "printer output";
+            if (!Arrays.equals(registers, other.registers)) return "registers";
+            if (!Arrays.equals(words, other.words)) return "memory contents";
+            return null;
+        }
+    }
+
+    /** Runs the image with the given caches and prefetcher ("none" for none), timing every access. */
+    static Result runWith(String cache, String l2, String prefetcher, LoadImage image, String input, int startPc,
+            long maxInstructions) {
+        Memory memory = Memory.withCaches(cache, null, null, l2);
+        memory.setPrefetcher(prefetcher);
+        memory.load(image);
+        CPU cpu = new CPU(memory);
+        cpu.setPC(startPc);
+        TimingModel timing = new TimingModel(memory);
+        cpu.setTracer(timing);
+
+        HeadlessRunner runner = new HeadlessRunner(cpu);
+        runner.setInput(new StringReader(input));
+        StringWriter printed = new StringWriter();
+        runner.setOutput(printed);
+        runner.setInstructionLimit(maxInstructions);
+        RunStats stats = runner.run();
+        return new Result(stats, memory, cpu, timing, printed.toString());
+    }
+
+    private static final String USAGE = "Usage: PrefetchComparison <load-file> [--cache sets:ways:words[:policy]]"
+            + " [--l2 sets:ways:words[:policy]] [--prefetchers next,next:4,stride] [--input file]"
+            + " [--pc octal] [--max-instructions n]";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        String loadFile = args[0];
+        String cache = null;
+        String l2 = null;
+        String[] prefetchers = {"next", "next:4", "stride"};
+        String input = "";
+        int startPc = 64; // 0o100 - program entry point
+        long maxInstructions = 10_000_000L;
+        for (int i = 1; i < args.length; i += 2) {
+            if (i + 1 == args.length) { // every option takes a value
+                System.err.println("Missing value for " + args[i]);
+                System.err.println(USAGE);
+                System.exit(2);
+            }
+            switch (args[i]) {
+                case "--cache" -> cache = args[i + 1];
+                case "--l2" -> l2 = args[i + 1];
+                case "--prefetchers" -> prefetchers = args[i + 1].split(",");
+                case "--input" -> input = new String(Files.readAllBytes(new File(args[i + 1]).toPath()));
+                case "--pc" -> startPc = Integer.parseInt(args[i + 1], 8);
+                case "--max-instructions" -> maxInstructions = Long.parseLong(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        LoadImage image = LoadImage.read(loadFile, Memory.DEFAULT_SIZE);
+        System.out.printf("%-14s %10s %10s %10s %10s %9s %9s %12s%n", "prefetcher", "lookups", "misses",
+                "prefetched", "used", "accuracy", "coverage", "cycles");
+        Result baseline = runWith(cache, l2, "none", image, input, startPc, maxInstructions);
+        print("none", baseline);
+        boolean agree = true;
+        for (String prefetcher : prefetchers) {
+            Result result;
+            try {
+                result = runWith(cache, l2, prefetcher, image, input, startPc, maxInstructions);
+            } catch (IllegalArgumentException e) {
+                System.out.printf("%-14s %s%n", prefetcher, e.getMessage());
+                continue;
+            }
+            print(result.memory.getPrefetcher().name(), result);
+            String difference = result.differenceFrom(baseline);
+            if (difference != null) {
+                System.out.println("  " + difference + " differs from the run without prefetching");
+                agree = false;
+            }
+        }
+        if (!agree) {
+            System.exit(1);
+        }
+        System.out.println(baseline.stats.getInstructions() + " instructions per run, same architectural state");
+    }
+
+    private static void print(String name, Result result) {
+        Memory.Stats stats = result.memory.getStats();
+        Cache.Stats data = stats.getDataCache();
+        System.out.printf("%-14s %10d %10d %10d %10d %8.2f%% %8.2f%% %12d%n", name, data.getLookups(),
+                data.getMisses(), data.getPrefetchFills(), data.getPrefetchHits(), stats.getPrefetchAccuracy(),
+                stats.getPrefetchCoverage(), result.cycles);
+    }
+}
@@ -0,0 +1,179 @@
+package com.gwu.simulator;
+
+import java.util.Arrays;
+
+/**
+ * Guesses which blocks the program will read next so Memory can fill them
+ * into the L1 data cache (or the unified L1) before they are asked for.
+ * Memory reports every demand access to that cache, and fills whatever
+ * addresses the prefetcher returns that are not cached yet. Prefetches
+ * only move blocks between memory and the caches; they never change what
+ * a program reads or writes.
+ *
+ * Prefetchers are created with {@link #create}. Their training state is
+ * not checkpointed: after a restore they start cold.
+ */
+public interface Prefetcher {
+
+    /** Most addresses one access may ask for. */
+    int MAX_DEGREE = 8;
+
+    /** Name as accepted by {@link #create}, e.g. "next:2". */
+    String name();
+
+    /**
+     * A demand access to the cache.
+     * @param pc Address of the instruction making it (for a fetch, the address itself)
+     * @param address Word accessed
+     * @param type Kind of access; FETCH only through a unified cache
+     * @param miss True if the access missed
+     * @param prefetchedHit True if it was the first hit on a prefetched line
+     * @param out Receives word addresses to prefetch
+     * @return How many addresses were put in {@code out}
+     */
+    int access(int pc, int address, Memory.AccessType type, boolean miss, boolean prefetchedHit, int[] out);
+
+    /** Forgets all training (power-on reset or restore). */
+    void clear();
+
+    /**
+     * Creates a prefetcher for a cache of {@code blockWords}-word blocks:
+     * {@code next[:n]} (the n blocks after a miss, default 1) or
+     * {@code stride[:entries[:degree]]} (per-instruction stride table,
+     * default 16 entries, 2 blocks ahead). {@code none} returns null.
+     */
+    static Prefetcher create(String name, int blockWords) {
+        String[] parts = name.trim().toLowerCase().split(":");
+        switch (parts[0]) {
+            case "none":
+                return null;
+            case "next":
+                return new NextLine(blockWords, parts.length > 1 ? Integer.parseInt(parts[1]) : 1);
+            case "stride":
+                return new Stride(parts.length > 1 ? Integer.parseInt(parts[1]) : 16,
+                        parts.length > 2 ? Integer.parseInt(parts[2]) : 2);
+            default:
+                throw new IllegalArgumentException("Unknown prefetcher: " + name
+                        + " (none, next[:n] or stride[:entries[:degree]])");
+        }
+    }
+
+    private static int checkDegree(int degree) {
+        if (degree < 1 || degree > MAX_DEGREE) {
+            throw new IllegalArgumentException("Prefetch degree must be 1 to " + MAX_DEGREE + ": " + degree);
+        }
+        return degree;
+    }
+
+    /**
+     * Tagged sequential prefetch: a miss, or the first hit on a prefetched
+     * line, asks for the next {@code degree} blocks, so a sequential walk
+     * stays ahead once it has started.
+     */
+    final class NextLine implements Prefetcher {
+        private final int blockWords;
+        private final int degree;
+
+        NextLine(int blockWords, int degree) {
+            this.blockWords = blockWords;
+            this.degree = checkDegree(degree);
+        }
+
+        @Override
+        public String name() {
+            return "next:" + degree;
+        }
+
+        @Override
+        public int access(int pc, int address, Memory.AccessType type, boolean miss, boolean prefetchedHit,
+                int[] out) {
+            if (!miss && !prefetchedHit) {
+                return 0;
+            }
+            int base = address & -blockWords;
+            for (int k = 0; k < degree; k++) {
+                out[k] = base + (k + 1) * blockWords;
+            }
+            return degree;
+        }
+
+        @Override
+        public void clear() {
+        }
+    }
+
+    /**
+     * Stride detection per instruction: a direct-mapped table indexed by PC
+     * remembers the last data address of each load or store and the stride
+     * between its last two; an indirect address word gets an entry of its
+     * own, apart from the operand of the same instruction. Once a non-zero
+     * stride has repeated twice (a two-bit confidence counter reaches 2),
+     * every access asks for the next {@code degree} addresses along the
+     * stride. Fetches are ignored.
+     */
+    final class Stride implements Prefetcher {
+        private final int entries;
+        private final int degree;
+        private final int[] pcTag;       // pc * 2 + 1 if indirect, -1 = empty
+        private final int[] lastAddress;
+        private final int[] stride;
+        private final byte[] confidence; // 0 to 3
+
+        Stride(int entries, int degree) {
+            if (entries < 1) {
+                throw new IllegalArgumentException("Stride table needs at least one entry: " + entries);
+            }
+            this.entries = entries;
+            this.degree = checkDegree(degree);
+            pcTag = new int[entries];
+            lastAddress = new int[entries];
+            stride = new int[entries];
+            confidence = new byte[entries];
+            clear();
+        }
+
+        @Override
+        public String name() {
+            return "stride:" + entries + ":" + degree;
+        }
+
+        @Override
+        public int access(int pc, int address, Memory.AccessType type, boolean miss, boolean prefetchedHit,
+                int[] out) {
+            if (type == Memory.AccessType.FETCH) {
+                return 0;
+            }
+            int key = pc * 2 + (type == Memory.AccessType.INDIRECT ? 1 : 0);
+            int e = key % entries;
+            if (pcTag[e] != key) {
+                pcTag[e] = key;
+                lastAddress[e] = address;
+                stride[e] = 0;
+                confidence[e] = 0;
+                return 0;
+            }
+            int delta = address - lastAddress[e];
+            lastAddress[e] = address;
+            if (delta != 0 && delta == stride[e]) {
+                if (confidence[e] < 3) confidence[e]++;
+            } else if (confidence[e] > 0) {
+                confidence[e]--;
+            } else {
+                stride[e] = delta;
+            }
+            if (confidence[e] < 2) {
+                return 0;
+            }
+            for (int k = 0; k < degree; k++) {
+                out[k] = address + (k + 1) * stride[e];
+            }
+            return degree;
+        }
+
+        @Override
+        public void clear() {
+            Arrays.fill(pcTag, -1);
+            Arrays.fill(confidence, (byte) 0);
+        }
+    }
+}
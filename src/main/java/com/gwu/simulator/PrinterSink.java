@@ -0,0 +1,26 @@
+package com.gwu.simulator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Receives printer output from a {@link BufferedPrinter} in bulk: each call
+ * carries any number of complete lines, each ending in '\n'. The array is
+ * reused after the call returns, so copy what you keep.
+ */
+@FunctionalInterface
+public interface PrinterSink {
+    void write(char[] text, int offset, int length);
+
+    /** A sink that writes to {@code writer} (not flushed or closed by the printer). */
+    static PrinterSink of(Writer writer) {
+        return (text, offset, length) -> {
+            try {
+                writer.write(text, offset, length);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        };
+    }
+}
@@ -0,0 +1,292 @@
+package com.gwu.simulator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * Execution profiler, installed as the CPU's {@link Tracer}. Counts
+ * executions per PC, instructions per opcode, taken / not-taken per jump and
+ * data reads / writes per address in flat arrays over the 12-bit address
+ * space, and attributes every instruction to its JSR/RFS call stack.
+ *
+ * After the run, {@link #writeReport} prints the counters sorted, with each
+ * address mapped back to its assembler listing line when a {@link Listing}
+ * is given, and {@link #writeCollapsedStacks} writes one
+ * {@code frame;frame;frame count} line per call stack, the input format of
+ * flame graph tools.
+ *
+ * Like any tracer, a profiler makes every engine run as the interpreter.
+ */
+public class Profiler implements Tracer {
+    public static final int ADDRESS_SPACE = 1 << 12;
+    private static final String ROOT_FRAME = "main";
+
+    private final long[] executions = new long[ADDRESS_SPACE];
+    private final long[] opcodes = new long[64];
+    private final long[] taken = new long[ADDRESS_SPACE];
+    private final long[] notTaken = new long[ADDRESS_SPACE];
+    private final int[] lastTarget = new int[ADDRESS_SPACE]; // where the jump at this PC last went; -1 for calls
+    private final long[] reads = new long[ADDRESS_SPACE];
+    private final long[] writes = new long[ADDRESS_SPACE];
+    private long instructions;
+
+    // Call tree: node 0 is the root; each other node is a subroutine entry reached from its parent
+    private int[] parent = new int[64];
+    private int[] entry = new int[64];
+    private long[] samples = new long[64];
+    private int nodes = 1;
+    private int current;
+    private final Map<Long, Integer> children = new HashMap<>(); // (parent << 16 | entry) -> node
+
+    public Profiler() {
+        Arrays.fill(lastTarget, -1);
+    }
+
+    @Override
+    public void beforeInstruction(CPU cpu, int pc) {
+    }
+
+    @Override
+    public void afterInstruction(CPU cpu, int pc, DecodedInstruction instr) {
+        executions[pc]++;
+        opcodes[instr.opcode]++;
+        instructions++;
+        samples[current]++;
+        if (instr.opcode >= 10 && instr.opcode <= 17) { // JZ .. JGE
+            int next = cpu.getPC();
+            if (next != ((pc + 1) & 0xFFF)) {
+                taken[pc]++;
+                if (instr.opcode == 14) { // JSR
+                    current = child(current, next);
+                } else if (instr.opcode != 15) { // calls and returns are not loops
+                    lastTarget[pc] = next;
+                }
+            } else {
+                notTaken[pc]++;
+            }
+            if (instr.opcode == 15 && current != 0) { // RFS
+                current = parent[current];
+            }
+        }
+    }
+
+    @Override
+    public void memoryAccess(CPU cpu, boolean write, int address) {
+        if (write) {
+            writes[address]++;
+        } else {
+            reads[address]++;
+        }
+    }
+
+    public long getInstructions() {
+        return instructions;
+    }
+
+    public long getExecutions(int pc) {
+        return executions[pc];
+    }
+
+    public long getOpcodeCount(int opcode) {
+        return opcodes[opcode];
+    }
+
+    public long getTaken(int pc) {
+        return taken[pc];
+    }
+
+    public long getNotTaken(int pc) {
+        return notTaken[pc];
+    }
+
+    public long getReads(int address) {
+        return reads[address];
+    }
+
+    public long getWrites(int address) {
+        return writes[address];
+    }
+
+    private int child(int node, int target) {
+        long key = ((long) node << 16) | target;
+        Integer existing = children.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        if (nodes == parent.length) {
+            parent = Arrays.copyOf(parent, nodes * 2);
+            entry = Arrays.copyOf(entry, nodes * 2);
+            samples = Arrays.copyOf(samples, nodes * 2);
+        }
+        parent[nodes] = node;
+        entry[nodes] = target;
+        children.put(key, nodes);
+        return nodes++;
+    }
+
+    // ---- Reports ----
+
+    /**
+     * Writes the profile: hot instructions, hot loops (backward jumps other
+     * than JSR and RFS, with the instructions they enclose), jumps, the
+     * opcode histogram and data accesses, each sorted by count.
+     * {@code listing} may be null.
+     */
+    public void writeReport(Writer writer, Listing listing) {
+        PrintWriter out = new PrintWriter(writer);
+        out.printf("Profile: %d instructions%n", instructions);
+
+        out.printf("%n== Hot instructions ==%n%12s %7s  %-6s  %s%n", "count", "%", "addr", "source");
+        for (int pc : sortedBy(executions)) {
+            out.printf("%12d %6.2f%%  %06o  %s%n", executions[pc], percent(executions[pc]), pc, source(listing, pc));
+        }
+
+        out.printf("%n== Hot loops ==%n%12s %12s  %-13s  %s%n", "iterations", "instructions", "range", "branch");
+        List<long[]> loops = new ArrayList<>(); // {instructions, iterations, start, end}
+        for (int pc = 0; pc < ADDRESS_SPACE; pc++) {
+            int target = lastTarget[pc];
+            if (target >= 0 && target <= pc) {
+                long inside = 0;
+                for (int a = target; a <= pc; a++) {
+                    inside += executions[a];
+                }
+                loops.add(new long[] {inside, taken[pc], target, pc});
+            }
+        }
+        loops.sort((a, b) -> Long.compare(b[0], a[0]));
+        for (long[] loop : loops) {
+            out.printf("%12d %12d  %06o-%06o  %s%n", loop[1], loop[0], loop[2], loop[3], source(listing, (int) loop[3]));
+        }
+
+        out.printf("%n== Jumps ==%n%12s %12s %7s  %-6s  %s%n", "taken", "not taken", "taken", "addr", "source");
+        long[] jumps = new long[ADDRESS_SPACE];
+        for (int pc = 0; pc < ADDRESS_SPACE; pc++) {
+            jumps[pc] = taken[pc] + notTaken[pc];
+        }
+        for (int pc : sortedBy(jumps)) {
+            out.printf("%12d %12d %6.1f%%  %06o  %s%n", taken[pc], notTaken[pc], 100.0 * taken[pc] / jumps[pc],
+                    pc, source(listing, pc));
+        }
+
+        out.printf("%n== Opcodes ==%n%12s %7s  %s%n", "count", "%", "opcode");
+        for (int opcode : sortedBy(opcodes)) {
+            out.printf("%12d %6.2f%%  %s%n", opcodes[opcode], percent(opcodes[opcode]),
+                    DecodedInstruction.decode(opcode << 10).mnemonic());
+        }
+
+        out.printf("%n== Data accesses ==%n%12s %12s  %-6s  %s%n", "reads", "writes", "addr", "source");
+        long[] accesses = new long[ADDRESS_SPACE];
+        for (int a = 0; a < ADDRESS_SPACE; a++) {
+            accesses[a] = reads[a] + writes[a];
+        }
+        for (int a : sortedBy(accesses)) {
+            out.printf("%12d %12d  %06o  %s%n", reads[a], writes[a], a, source(listing, a));
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes one line per call stack: frames from the outermost, separated by
+     * ';', then the number of instructions executed in that stack. Frames are
+     * named by the label of the subroutine entry in {@code listing} (may be
+     * null), or by its octal address.
+     */
+    public void writeCollapsedStacks(Writer writer, Listing listing) {
+        PrintWriter out = new PrintWriter(writer);
+        for (int node = 0; node < nodes; node++) {
+            if (samples[node] > 0) {
+                out.print(stackName(node, listing));
+                out.print(' ');
+                out.println(samples[node]);
+            }
+        }
+        out.flush();
+    }
+
+    private String stackName(int node, Listing listing) {
+        if (node == 0) {
+            return ROOT_FRAME;
+        }
+        String label = listing != null ? listing.label(entry[node]) : null;
+        return stackName(parent[node], listing) + ';' + (label != null ? label : String.format("%06o", entry[node]));
+    }
+
+    /** Indexes with a non-zero count, highest count first. */
+    private static int[] sortedBy(long[] counts) {
+        return IntStream.range(0, counts.length)
+                .filter(k -> counts[k] > 0)
+                .boxed()
+                .sorted((a, b) -> Long.compare(counts[b], counts[a]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    private double percent(long count) {
+        return instructions == 0 ? 0.0 : 100.0 * count / instructions;
+    }
+
+    private static String source(Listing listing, int address) {
+        String line = listing != null ? listing.source(address) : null;
+        return line != null ? line : "";
+    }
+
+    /**
+     * Source lines of an assembler listing, by address. Listing lines look
+     * like {@code 000020 002412 LDR 1,0,10 ; comment}; a source line that
+     * starts with {@code Name:} defines a label. A commented load file
+     * ({@code 100 002401    # LDR R1,1}) works as a listing too.
+     */
+    public static final class Listing {
+        private static final Pattern LINE = Pattern.compile("^\\s*([0-7]{1,6})\\s+([0-7]{1,6})\\s+(.*)$");
+        private static final Pattern LABEL = Pattern.compile("^\\s*([A-Za-z_][A-Za-z0-9_]*):");
+
+        private final Map<Integer, String> sources = new HashMap<>();
+        private final Map<Integer, String> labels = new HashMap<>();
+
+        public static Listing read(Path path) throws IOException {
+            Listing listing = new Listing();
+            try (BufferedReader reader = Files.newBufferedReader(path)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    Matcher m = LINE.matcher(line);
+                    if (!m.matches()) {
+                        continue;
+                    }
+                    int address = Integer.parseInt(m.group(1), 8);
+                    String source = m.group(3).trim();
+                    if (source.startsWith("#")) {
+                        source = source.substring(1).trim();
+                    }
+                    listing.sources.put(address, source);
+                    Matcher label = LABEL.matcher(source);
+                    if (label.find()) {
+                        listing.labels.put(address, label.group(1));
+                    }
+                }
+            }
+            return listing;
+        }
+
+        /** Source text at {@code address}, or null if the listing has none. */
+        public String source(int address) {
+            return sources.get(address);
+        }
+
+        /** Label defined at {@code address}, or null. */
+        public String label(int address) {
+            return labels.get(address);
+        }
+    }
+}
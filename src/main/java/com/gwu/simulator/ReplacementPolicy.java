@@ -0,0 +1,363 @@
+package com.gwu.simulator;
+
+import java.util.Arrays;
+
+/**
+ * Chooses which line of a full cache set to evict. Lines are identified by
+ * their way (0 to ways - 1) within a set. The cache only asks for a victim
+ * when every way of the set is valid, and tells the policy about every fill
+ * and every hit. Implementations keep their state in flat primitive arrays,
+ * so no access allocates.
+ *
+ * Policies are created for one geometry with {@link #create}; their state
+ * can be captured and restored for checkpoints.
+ */
+public interface ReplacementPolicy {
+
+    /** Name as accepted by {@link #create}, e.g. "lru" or "random:42". */
+    String name();
+
+    /** Way {@code way} of {@code set} was (re)filled with a new block. */
+    void filled(int set, int way);
+
+    /** Way {@code way} of {@code set} was hit. */
+    void touched(int set, int way);
+
+    /** Picks the way of a full {@code set} to evict and forgets it. */
+    int evict(int set);
+
+    /** Back to the state of an empty cache. */
+    void clear();
+
+    /** Copy of the policy state, for {@link #restore}. */
+    int[] capture();
+
+    /** Puts back a state returned by {@link #capture} on a policy of the same name and geometry. */
+    void restore(int[] state);
+
+    /**
+     * Creates a policy for {@code sets} sets of {@code ways} ways:
+     * {@code fifo}, {@code lru}, {@code plru} (tree pseudo-LRU; ways must be a
+     * power of two) or {@code random[:seed]}.
+     */
+    static ReplacementPolicy create(String name, int sets, int ways) {
+        String[] parts = name.trim().toLowerCase().split(":", 2);
+        switch (parts[0]) {
+            case "fifo": return new Fifo(sets, ways);
+            case "lru": return new Lru(sets, ways);
+            case "plru": return new TreePlru(sets, ways);
+            case "random": return new RandomPolicy(sets, ways, parts.length > 1 ? Long.parseLong(parts[1]) : 6461);
+            default: throw new IllegalArgumentException("Unknown replacement policy: " + name
+                    + " (fifo, lru, plru or random[:seed])");
+        }
+    }
+
+    /** First in, first out: evicts the way filled longest ago; hits do not matter. */
+    final class Fifo implements ReplacementPolicy {
+        private final int sets;
+        private final int ways;
+        private final int[] ring; // per set, filled ways, oldest at head
+        private final int[] head;
+        private final int[] size;
+
+        Fifo(int sets, int ways) {
+            this.sets = sets;
+            this.ways = ways;
+            ring = new int[sets * ways];
+            head = new int[sets];
+            size = new int[sets];
+        }
+
+        @Override
+        public String name() {
+            return "fifo";
+        }
+
+        @Override
+        public void filled(int set, int way) {
+            int tail = head[set] + size[set];
+            ring[set * ways + (tail < ways ? tail : tail - ways)] = way;
+            size[set]++;
+        }
+
+        @Override
+        public void touched(int set, int way) {
+        }
+
+        @Override
+        public int evict(int set) {
+            int way = ring[set * ways + head[set]];
+            if (++head[set] == ways) {
+                head[set] = 0;
+            }
+            size[set]--;
+            return way;
+        }
+
+        @Override
+        public void clear() {
+            Arrays.fill(head, 0);
+            Arrays.fill(size, 0);
+        }
+
+        /** Per set: the number of filled ways, then those ways oldest first. */
+        @Override
+        public int[] capture() {
+            int[] state = new int[sets + sets * ways];
+            int k = 0;
+            for (int set = 0; set < sets; set++) {
+                state[k++] = size[set];
+                for (int n = 0; n < size[set]; n++) {
+                    state[k++] = ring[set * ways + (head[set] + n) % ways];
+                }
+            }
+            return Arrays.copyOf(state, k);
+        }
+
+        @Override
+        public void restore(int[] state) {
+            clear();
+            int k = 0;
+            for (int set = 0; set < sets; set++) {
+                int count = checkState(state, k++, ways);
+                for (int n = 0; n < count; n++) {
+                    filled(set, checkState(state, k++, ways - 1));
+                }
+            }
+        }
+    }
+
+    /**
+     * True least recently used: each set keeps its ways in a doubly linked
+     * list from least to most recently used, so hits and evictions are O(1).
+     */
+    final class Lru implements ReplacementPolicy {
+        private final int sets;
+        private final int ways;
+        private final int[] prev; // per line (set * ways + way), toward the LRU end
+        private final int[] next; // toward the MRU end
+        private final int[] lru;  // per set, least recently used way
+        private final int[] mru;
+
+        Lru(int sets, int ways) {
+            this.sets = sets;
+            this.ways = ways;
+            prev = new int[sets * ways];
+            next = new int[sets * ways];
+            lru = new int[sets];
+            mru = new int[sets];
+            clear();
+        }
+
+        @Override
+        public String name() {
+            return "lru";
+        }
+
+        @Override
+        public void filled(int set, int way) {
+            touched(set, way);
+        }
+
+        @Override
+        public void touched(int set, int way) {
+            if (mru[set] == way) {
+                return;
+            }
+            int base = set * ways;
+            // unlink
+            int before = prev[base + way];
+            int after = next[base + way];
+            if (before < 0) {
+                lru[set] = after;
+            } else {
+                next[base + before] = after;
+            }
+            prev[base + after] = before;
+            // append at the MRU end
+            prev[base + way] = mru[set];
+            next[base + way] = -1;
+            next[base + mru[set]] = way;
+            mru[set] = way;
+        }
+
+        @Override
+        public int evict(int set) {
+            return lru[set]; // becomes most recent when the cache fills it
+        }
+
+        @Override
+        public void clear() {
+            for (int set = 0; set < sets; set++) {
+                int base = set * ways;
+                for (int way = 0; way < ways; way++) {
+                    prev[base + way] = way - 1;
+                    next[base + way] = (way + 1 < ways) ? way + 1 : -1;
+                }
+                lru[set] = 0;
+                mru[set] = ways - 1;
+            }
+        }
+
+        /** Per set: every way, least recently used first. */
+        @Override
+        public int[] capture() {
+            int[] state = new int[sets * ways];
+            for (int set = 0; set < sets; set++) {
+                int way = lru[set];
+                for (int n = 0; n < ways; n++) {
+                    state[set * ways + n] = way;
+                    way = next[set * ways + way];
+                }
+            }
+            return state;
+        }
+
+        @Override
+        public void restore(int[] state) {
+            if (state.length != sets * ways) {
+                throw new IllegalArgumentException("Corrupt LRU state");
+            }
+            clear();
+            for (int k = 0; k < state.length; k++) {
+                touched(k / ways, checkState(state, k, ways - 1));
+            }
+        }
+    }
+
+    /**
+     * Tree pseudo-LRU: per set, a binary tree of ways - 1 bits, each pointing
+     * to the half that was used less recently. A victim is found by following
+     * the bits; a hit or fill turns the bits on its path away from it.
+     */
+    final class TreePlru implements ReplacementPolicy {
+        private final int sets;
+        private final int ways;
+        private final boolean[] bits; // per set, nodes 1 .. ways - 1 (heap order); true = go right
+
+        TreePlru(int sets, int ways) {
+            if (Integer.bitCount(ways) != 1) {
+                throw new IllegalArgumentException("Tree-PLRU needs a power-of-two number of ways: " + ways);
+            }
+            this.sets = sets;
+            this.ways = ways;
+            bits = new boolean[sets * ways];
+        }
+
+        @Override
+        public String name() {
+            return "plru";
+        }
+
+        @Override
+        public void filled(int set, int way) {
+            touched(set, way);
+        }
+
+        @Override
+        public void touched(int set, int way) {
+            int base = set * ways;
+            for (int node = way + ways; node > 1; node >>>= 1) {
+                bits[base + (node >>> 1)] = (node & 1) == 0; // point at the sibling
+            }
+        }
+
+        @Override
+        public int evict(int set) {
+            int base = set * ways;
+            int node = 1;
+            while (node < ways) {
+                node = 2 * node + (bits[base + node] ? 1 : 0);
+            }
+            return node - ways;
+        }
+
+        @Override
+        public void clear() {
+            Arrays.fill(bits, false);
+        }
+
+        /** One int per tree bit, node 0 of each set unused. */
+        @Override
+        public int[] capture() {
+            int[] state = new int[bits.length];
+            for (int k = 0; k < bits.length; k++) {
+                state[k] = bits[k] ? 1 : 0;
+            }
+            return state;
+        }
+
+        @Override
+        public void restore(int[] state) {
+            if (state.length != bits.length) {
+                throw new IllegalArgumentException("Corrupt PLRU state");
+            }
+            for (int k = 0; k < bits.length; k++) {
+                bits[k] = checkState(state, k, 1) != 0;
+            }
+        }
+    }
+
+    /**
+     * Evicts a uniformly chosen way, from a seeded xorshift generator so
+     * runs are repeatable.
+     */
+    final class RandomPolicy implements ReplacementPolicy {
+        private final int ways;
+        private final long seed;
+        private long state;
+
+        RandomPolicy(int sets, int ways, long seed) {
+            this.ways = ways;
+            this.seed = seed;
+            clear();
+        }
+
+        @Override
+        public String name() {
+            return "random:" + seed;
+        }
+
+        @Override
+        public void filled(int set, int way) {
+        }
+
+        @Override
+        public void touched(int set, int way) {
+        }
+
+        @Override
+        public int evict(int set) {
+            state ^= state << 13;
+            state ^= state >>> 7;
+            state ^= state << 17;
+            return (int) Long.remainderUnsigned(state, ways);
+        }
+
+        @Override
+        public void clear() {
+            state = seed * 0x9E3779B97F4A7C15L | 1; // never 0
+        }
+
+        @Override
+        public int[] capture() {
+            return new int[] {(int) (state >>> 32), (int) state};
+        }
+
+        @Override
+        public void restore(int[] state) {
+            if (state.length != 2) {
+                throw new IllegalArgumentException("Corrupt random policy state");
+            }
+            this.state = ((long) state[0] << 32) | (state[1] & 0xFFFFFFFFL);
+        }
+    }
+
+    /** {@code state[index]}, checked to lie in 0..max. */
+    private static int checkState(int[] state, int index, int max) {
+        if (index >= state.length || state[index] < 0 || state[index] > max) {
+            throw new IllegalArgumentException("Corrupt replacement policy state");
+        }
+        return state[index];
+    }
+}
@@ -0,0 +1,43 @@
+package com.gwu.simulator;
+
+/**
+ * Summary of one headless run: why it stopped, how many instructions
+ * executed, and how long it took.
+ */
+public class RunStats {
+
+    /** Reason a headless run stopped. */
+    public enum StopReason {
+        HALTED,            // HLT executed
+        FAULT,             // machine fault raised (MFR != 0)
+        INSTRUCTION_LIMIT, // instruction budget used up
+        TIME_LIMIT,        // wall-clock budget used up
+        INPUT_EXHAUSTED,   // IN executed with no console input left
+        BREAKPOINT         // PC breakpoint or watchpoint hit
+    }
+
+    private final StopReason reason;
+    private final long instructions;
+    private final long wallNanos;
+
+    public RunStats(StopReason reason, long instructions, long wallNanos) {
+        this.reason = reason;
+        this.instructions = instructions;
+        this.wallNanos = wallNanos;
+    }
+
+    public StopReason getReason() { return reason; }
+    public long getInstructions() { return instructions; }
+    public long getWallNanos() { return wallNanos; }
+
+    /** Millions of instructions per second of wall time. */
+    public double getMips() {
+        if (wallNanos <= 0) return 0.0;
+        return instructions * 1000.0 / wallNanos;
+    }
+
+    public String toString() {
+        return String.format("Stopped: %s, instructions: %d, wall time: %.3f ms, MIPS: %.2f",
+                reason, instructions, wallNanos / 1_000_000.0, getMips());
+    }
+}
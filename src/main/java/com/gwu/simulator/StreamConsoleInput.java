@@ -0,0 +1,76 @@
+package com.gwu.simulator;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.function.Supplier;
+
+/**
+ * Console keyboard input read from a stream instead of the GUI.
+ * Values are decimal, separated by spaces, commas or newlines (same format
+ * the Console Input field accepts). Invalid tokens are skipped.
+ * Returns null once the stream is exhausted.
+ *
+ * The stream is read on the CPU thread, so use it for files and pipes that
+ * are already available; {@link CardReader} reads a file ahead on its own thread.
+ */
+public class StreamConsoleInput implements Supplier<Integer>, Device {
+    private final Reader reader;
+    private final StringBuilder token = new StringBuilder();
+    private boolean exhausted;
+
+    public StreamConsoleInput(Reader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public Integer get() {
+        while (!exhausted) {
+            String next = nextToken();
+            if (next == null) {
+                exhausted = true;
+                break;
+            }
+            try {
+                return Integer.parseInt(next, 10);
+            } catch (NumberFormatException ex) {
+                // Skip invalid values like the GUI does
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Integer read() {
+        return get();
+    }
+
+    /** Ready until the stream runs out; reading never has to wait. */
+    @Override
+    public int status() {
+        return exhausted ? STATUS_END : STATUS_READY;
+    }
+
+    /** True once every value in the stream has been consumed. */
+    public boolean isExhausted() {
+        return exhausted;
+    }
+
+    private String nextToken() {
+        token.setLength(0);
+        try {
+            int c;
+            while ((c = reader.read()) != -1) {
+                boolean separator = Character.isWhitespace(c) || c == ',';
+                if (!separator) {
+                    token.append((char) c);
+                } else if (token.length() > 0) {
+                    break;
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return token.length() > 0 ? token.toString() : null;
+    }
+}
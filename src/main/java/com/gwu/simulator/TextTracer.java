@@ -0,0 +1,142 @@
+package com.gwu.simulator;
+
+/**
+ * Tracer that produces one text line per instruction, for example
+ * <pre>
+ *   000101  002416  LDR  r1 ix0 i0 adr 16  EA 000016  R1 000000-&gt;000007 CC 0-&gt;4
+ * </pre>
+ * At {@link TraceLevel#OPCODE} only the first part (PC, word, mnemonic,
+ * fields, effective address) is written; {@link TraceLevel#REGISTERS} adds
+ * every register the instruction changed. Addresses and values are octal.
+ *
+ * The execution thread only copies numbers into a record; the text is built
+ * when the {@link AsyncTraceSink} writes it.
+ */
+public class TextTracer implements Tracer {
+    // Registers compared at REGISTERS level, in snapshot order
+    private static final String[] REGISTER_NAMES = { "R0", "R1", "R2", "R3", "X1", "X2", "X3", "CC", "MFR" };
+
+    private final TraceLevel level;
+    private final AsyncTraceSink sink;
+    private final int[] before = new int[REGISTER_NAMES.length];
+    private final int[] after = new int[REGISTER_NAMES.length];
+
+    public TextTracer(TraceLevel level, AsyncTraceSink sink) {
+        if (level == TraceLevel.OFF) {
+            throw new IllegalArgumentException("TraceLevel.OFF means no tracer; use CPU.setTracer(null)");
+        }
+        this.level = level;
+        this.sink = sink;
+    }
+
+    public TraceLevel getLevel() {
+        return level;
+    }
+
+    @Override
+    public void beforeInstruction(CPU cpu, int pc) {
+        if (level == TraceLevel.REGISTERS) {
+            snapshot(cpu, before);
+        }
+    }
+
+    @Override
+    public void afterInstruction(CPU cpu, int pc, DecodedInstruction instr) {
+        int[] changes = null;
+        if (level == TraceLevel.REGISTERS) {
+            snapshot(cpu, after);
+            changes = changes(cpu.getPC(), pc + 1);
+        }
+        sink.accept(new InstructionRecord(pc, instr, cpu.hasLastEffectiveAddress(),
+                cpu.getLastEffectiveAddress(), changes));
+    }
+
+    @Override
+    public void panelAccess(CPU cpu, boolean store, int address, int value) {
+        sink.accept(new PanelRecord(store, address, value));
+    }
+
+    private static void snapshot(CPU cpu, int[] regs) {
+        for (int i = 0; i < 4; i++) {
+            regs[i] = cpu.getGPR(i);
+        }
+        for (int i = 1; i <= 3; i++) {
+            regs[3 + i] = cpu.getIXR(i);
+        }
+        regs[7] = cpu.getCC();
+        regs[8] = cpu.getMFR();
+    }
+
+    /** Packs {register, before, after} triples for every changed register; PC uses index -1. */
+    private int[] changes(int newPc, int nextPc) {
+        int count = (newPc != nextPc) ? 1 : 0;
+        for (int k = 0; k < before.length; k++) {
+            if (before[k] != after[k]) count++;
+        }
+        int[] changes = new int[count * 3];
+        int n = 0;
+        if (newPc != nextPc) {
+            changes[n++] = -1;
+            changes[n++] = nextPc;
+            changes[n++] = newPc;
+        }
+        for (int k = 0; k < before.length; k++) {
+            if (before[k] != after[k]) {
+                changes[n++] = k;
+                changes[n++] = before[k];
+                changes[n++] = after[k];
+            }
+        }
+        return changes;
+    }
+
+    private static final class InstructionRecord {
+        final int pc;
+        final DecodedInstruction instr;
+        final boolean hasEa;
+        final int ea;
+        final int[] changes; // null at OPCODE level
+
+        InstructionRecord(int pc, DecodedInstruction instr, boolean hasEa, int ea, int[] changes) {
+            this.pc = pc;
+            this.instr = instr;
+            this.hasEa = hasEa;
+            this.ea = ea;
+            this.changes = changes;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder line = new StringBuilder(96);
+            line.append(String.format("%06o  %06o  %-4s r%d ix%d i%d adr %o", pc, instr.word, instr.mnemonic(),
+                    instr.r, instr.ix, instr.i, instr.address));
+            if (hasEa) {
+                line.append(String.format("  EA %06o", ea & 0xFFFF)); // a word, like registers
+            }
+            if (changes != null) {
+                for (int n = 0; n < changes.length; n += 3) {
+                    String name = changes[n] < 0 ? "PC" : REGISTER_NAMES[changes[n]];
+                    line.append(String.format(" %s %o->%o", name, changes[n + 1], changes[n + 2]));
+                }
+            }
+            return line.toString();
+        }
+    }
+
+    private static final class PanelRecord {
+        final boolean store;
+        final int address;
+        final int value;
+
+        PanelRecord(boolean store, int address, int value) {
+            this.store = store;
+            this.address = address;
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("panel %s  %06o = %06o", store ? "store" : "load ", address, value);
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package com.gwu.simulator;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Properties;
+
+/**
+ * Cycle-level timing estimate, installed as the CPU's {@link Tracer}. Each
+ * instruction costs the execute cycles of its {@link InstructionClass}, plus
+ * a penalty if it is a taken jump, plus the latency of every memory access
+ * it made: the fetch, an indirect address word, and its data reads and
+ * writes. A read costs the cache hit time, and the miss penalty on top when
+ * it missed, plus a transfer time for each further word of the block filled;
+ * a store that goes straight to memory costs the memory write time, and one
+ * that stays in a write-back cache or the write buffer costs the hit time,
+ * with the memory write time charged later for each dirty block written
+ * back or buffered block drained. With an L2,
+ * an L1 miss costs the L2 hit time instead of the miss penalty, and every
+ * L2 miss (write allocations included) adds the miss penalty and the
+ * transfer of the L2 block.
+ *
+ * All costs are configurable, in code or from a properties file (see
+ * {@link #configure}). After the run, {@link #writeReport} prints total
+ * cycles, CPI per instruction class, and the average memory access time.
+ *
+ * Like any tracer, a timing model makes every engine run as the interpreter.
+ */
+public class TimingModel implements Tracer {
+
+    /** Instruction groups that share an execute cost. */
+    public enum InstructionClass {
+        LOAD_STORE(1),   // LDR STR LDA LDX STX
+        ARITHMETIC(1),   // AMR SMR
+        IMMEDIATE(1),    // AIR SIR
+        JUMP(1),         // JZ JNE JCC JMA JSR RFS SOB JGE
+        MULTIPLY(4),     // MLT
+        DIVIDE(10),      // DVD
+        LOGICAL(1),      // TRR AND ORR NOT
+        SHIFT_ROTATE(1), // SRC RRC
+        IO(4),           // IN OUT CHK
+        OTHER(1);        // HLT and illegal opcodes
+
+        final int defaultCycles;
+
+        InstructionClass(int defaultCycles) {
+            this.defaultCycles = defaultCycles;
+        }
+
+        /** Class of a (decimal) opcode as the CPU decodes it. */
+        public static InstructionClass of(int opcode) {
+            switch (opcode) {
+                case 1: case 2: case 3: case 33: case 34: return LOAD_STORE;
+                case 4: case 5: return ARITHMETIC;
+                case 6: case 7: return IMMEDIATE;
+                case 10: case 11: case 12: case 13: case 14: case 15: case 16: case 17: return JUMP;
+                case 20: return MULTIPLY;
+                case 21: return DIVIDE;
+                case 22: case 23: case 24: case 25: return LOGICAL;
+                case 31: case 32: return SHIFT_ROTATE;
+                case 61: case 62: case 63: return IO;
+                default: return OTHER;
+            }
+        }
+    }
+
+    private static final InstructionClass[] CLASSES = InstructionClass.values();
+
+    private final Memory memory;
+    private final int[] executeCycles = new int[CLASSES.length];
+    private int takenJumpPenalty = 1;
+    private int cacheHitCycles = 1;
+    private int missPenaltyCycles = 10;
+    private int l2HitCycles = 4;
+    private int memoryWriteCycles = 10;
+    private int transferCycles = 1;
+    private double clockMhz = 1.0;
+
+    // Per class totals
+    private final long[] classInstructions = new long[CLASSES.length];
+    private final long[] classCycles = new long[CLASSES.length];
+    private long instructions;
+    private long cycles;
+    private long memoryCycles;
+    private long readHits;
+    private long readMisses;
+    private long fetchHits;
+    private long fetchMisses;
+    private long l2Hits;
+    private long l2Misses;
+    private long writes;
+    private long memoryWrites;
+    private long indirect;
+    private long takenJumps;
+
+    // Memory counters when the current instruction started
+    private long startHits;
+    private long startMisses;
+    private long startFetchHits;
+    private long startFetchMisses;
+    private long startL2Hits;
+    private long startL2Misses;
+    private long startWrites;
+    private long startMemoryWrites;
+    private long startDirectWrites;
+
+    /** Times accesses to {@code memory}, which must be the memory of the traced CPU. */
+    public TimingModel(Memory memory) {
+        this.memory = memory;
+        for (InstructionClass c : CLASSES) {
+            executeCycles[c.ordinal()] = c.defaultCycles;
+        }
+    }
+
+    public void setExecuteCycles(InstructionClass instructionClass, int cycles) {
+        executeCycles[instructionClass.ordinal()] = checkCycles(cycles);
+    }
+
+    public int getExecuteCycles(InstructionClass instructionClass) {
+        return executeCycles[instructionClass.ordinal()];
+    }
+
+    /** Extra cycles when a jump is taken (pipeline refill). */
+    public void setTakenJumpPenalty(int cycles) {
+        takenJumpPenalty = checkCycles(cycles);
+    }
+
+    public int getTakenJumpPenalty() {
+        return takenJumpPenalty;
+    }
+
+    /** Cycles for a read that hits in the cache. */
+    public void setCacheHitCycles(int cycles) {
+        cacheHitCycles = checkCycles(cycles);
+    }
+
+    /** Cycles a read miss adds on top of the hit time. */
+    public void setMissPenaltyCycles(int cycles) {
+        missPenaltyCycles = checkCycles(cycles);
+    }
+
+    /** Cycles an L1 miss adds on top of the hit time when it hits in the L2. */
+    public void setL2HitCycles(int cycles) {
+        l2HitCycles = checkCycles(cycles);
+    }
+
+    /** Cycles a miss adds for each word of the block after the first. */
+    public void setTransferCycles(int cycles) {
+        transferCycles = checkCycles(cycles);
+    }
+
+    /** Cycles for a write to memory. */
+    public void setMemoryWriteCycles(int cycles) {
+        memoryWriteCycles = checkCycles(cycles);
+    }
+
+    /** Clock rate used to turn cycles into an estimated run time. */
+    public void setClockMhz(double mhz) {
+        if (!(mhz > 0)) {
+            throw new IllegalArgumentException("Clock rate must be positive: " + mhz);
+        }
+        clockMhz = mhz;
+    }
+
+    /**
+     * Reads costs from properties; keys that are missing keep their value:
+     * <pre>
+     * cycles.load_store=1   (one key per instruction class, lower case)
+     * jump.taken=1
+     * cache.hit=1
+     * cache.miss=10         (penalty on top of cache.hit)
+     * cache.l2.hit=4        (instead of cache.miss when an L1 miss hits the L2)
+     * cache.transfer=1      (per block word after the first)
+     * memory.write=10
+     * clock.mhz=1
+     * </pre>
+     */
+    public void configure(Reader reader) throws IOException {
+        Properties properties = new Properties();
+        properties.load(reader);
+        for (String key : properties.stringPropertyNames()) {
+            String value = properties.getProperty(key).trim();
+            switch (key) {
+                case "jump.taken" -> setTakenJumpPenalty(Integer.parseInt(value));
+                case "cache.hit" -> setCacheHitCycles(Integer.parseInt(value));
+                case "cache.miss" -> setMissPenaltyCycles(Integer.parseInt(value));
+                case "cache.l2.hit" -> setL2HitCycles(Integer.parseInt(value));
+                case "cache.transfer" -> setTransferCycles(Integer.parseInt(value));
+                case "memory.write" -> setMemoryWriteCycles(Integer.parseInt(value));
+                case "clock.mhz" -> setClockMhz(Double.parseDouble(value));
+                default -> {
+                    if (!key.startsWith("cycles.")) {
+                        throw new IllegalArgumentException("Unknown timing key: " + key);
+                    }
+                    setExecuteCycles(InstructionClass.valueOf(key.substring(7).toUpperCase()),
+                            Integer.parseInt(value));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void beforeInstruction(CPU cpu, int pc) {
+        startHits = memory.getReadHits();
+        startMisses = memory.getReadMisses();
+        startFetchHits = memory.getFetchHits();
+        startFetchMisses = memory.getFetchMisses();
+        startL2Hits = memory.getL2Hits();
+        startL2Misses = memory.getL2Misses();
+        startWrites = memory.getWrites();
+        startMemoryWrites = memory.getMemoryWrites();
+        startDirectWrites = memory.getDirectWrites();
+    }
+
+    @Override
+    public void afterInstruction(CPU cpu, int pc, DecodedInstruction instr) {
+        long hits = memory.getReadHits() - startHits;
+        long misses = memory.getReadMisses() - startMisses;
+        long fetchHit = memory.getFetchHits() - startFetchHits;
+        long fetchMiss = memory.getFetchMisses() - startFetchMisses;
+        long l2Hit = memory.getL2Hits() - startL2Hits;
+        long l2Miss = memory.getL2Misses() - startL2Misses;
+        long stores = memory.getWrites() - startWrites;
+        long toMemory = memory.getMemoryWrites() - startMemoryWrites;
+        long direct = memory.getDirectWrites() - startDirectWrites;
+        long access = accessCycles(hits, fetchMiss, misses, l2Miss, stores, toMemory, direct);
+
+        int c = InstructionClass.of(instr.opcode).ordinal();
+        long cost = executeCycles[c] + access;
+        if (CLASSES[c] == InstructionClass.JUMP && cpu.getPC() != ((pc + 1) & 0xFFF)) {
+            cost += takenJumpPenalty;
+            takenJumps++;
+        }
+        if (instr.i == 1 && cpu.hasLastEffectiveAddress()) {
+            indirect++;
+        }
+
+        classInstructions[c]++;
+        classCycles[c] += cost;
+        instructions++;
+        cycles += cost;
+        memoryCycles += access;
+        readHits += hits;
+        readMisses += misses;
+        fetchHits += fetchHit;
+        fetchMisses += fetchMiss;
+        l2Hits += l2Hit;
+        l2Misses += l2Miss;
+        writes += stores;
+        memoryWrites += toMemory;
+    }
+
+    /** Cost of the given accesses; every count is linear, so deltas and totals are costed alike. */
+    private long accessCycles(long hits, long fetchMisses, long misses, long l2Misses, long stores,
+            long toMemory, long direct) {
+        return hits * cacheHitCycles + fetchMisses * missCycles(memory.getInstructionCache())
+                + (misses - fetchMisses) * missCycles(memory.getCache()) + l2Misses * l2MissCycles()
+                + (stores - direct) * cacheHitCycles + toMemory * memoryWriteCycles;
+    }
+
+    /**
+     * Memory access cycles for every access the memory has counted since it
+     * was created or its statistics were reset, costed as a traced run would
+     * cost them. Used to time accesses replayed without a CPU (see CacheSweep).
+     */
+    public long estimateMemoryCycles() {
+        return accessCycles(memory.getReadHits(), memory.getFetchMisses(), memory.getReadMisses(),
+                memory.getL2Misses(), memory.getWrites(), memory.getMemoryWrites(), memory.getDirectWrites());
+    }
+
+    /** Cost of a read that misses {@code l1}, up to the L2 if there is one. */
+    private long missCycles(Cache l1) {
+        return cacheHitCycles + (memory.getL2Cache() == null ? missPenaltyCycles : l2HitCycles)
+                + (long) (l1.getBlockWords() - 1) * transferCycles;
+    }
+
+    /** What an L2 miss adds on top of the L1 miss. */
+    private long l2MissCycles() {
+        Cache l2 = memory.getL2Cache();
+        return l2 == null ? 0 : missPenaltyCycles + (long) (l2.getBlockWords() - 1) * transferCycles;
+    }
+
+    public long getInstructions() {
+        return instructions;
+    }
+
+    public long getCycles() {
+        return cycles;
+    }
+
+    /** Cycles per instruction. */
+    public double getCpi() {
+        return instructions == 0 ? 0.0 : (double) cycles / instructions;
+    }
+
+    /** Writes that reached memory (see {@link Memory#getMemoryWrites}). */
+    public long getMemoryWrites() {
+        return memoryWrites;
+    }
+
+    /** Average memory access time in cycles, over fetches, data reads and writes. */
+    public double getAverageMemoryAccessTime() {
+        long accesses = readHits + readMisses + writes;
+        return accesses == 0 ? 0.0 : (double) memoryCycles / accesses;
+    }
+
+    /** Estimated run time in microseconds at the configured clock rate. */
+    public double getEstimatedMicros() {
+        return cycles / clockMhz;
+    }
+
+    /** Writes cycles, CPI per instruction class and the memory access breakdown. */
+    public void writeReport(Writer writer) {
+        PrintWriter out = new PrintWriter(writer);
+        out.printf("Timing: %d instructions, %d cycles, CPI %.3f, %.1f us at %.3f MHz%n",
+                instructions, cycles, getCpi(), getEstimatedMicros(), clockMhz);
+
+        out.printf("%n== Instruction classes ==%n%-13s %12s %14s %8s%n", "class", "instructions", "cycles", "CPI");
+        for (InstructionClass c : CLASSES) {
+            long count = classInstructions[c.ordinal()];
+            if (count > 0) {
+                out.printf("%-13s %12d %14d %8.3f%n", c, count, classCycles[c.ordinal()],
+                        (double) classCycles[c.ordinal()] / count);
+            }
+        }
+        out.printf("taken jumps: %d (+%d cycles each)%n", takenJumps, takenJumpPenalty);
+
+        long reads = readHits + readMisses;
+        out.printf("%n== Memory ==%n");
+        if (memory.isSplit()) {
+            out.printf("L1I: %s%n", memory.getInstructionCache());
+            out.printf("L1D: %s%n", memory.getCache());
+        } else {
+            out.printf("cache: %s%n", memory.getCache());
+        }
+        if (memory.getL2Cache() != null) {
+            out.printf("L2:  %s%n", memory.getL2Cache());
+        }
+        out.printf("reads:  %d (%d hits, %d misses, hit ratio %.2f%%), %d indirect address words%n",
+                reads, readHits, readMisses, ratio(readHits, readMisses), indirect);
+        out.printf("  fetches: %d (%d hits, %d misses, hit ratio %.2f%%)%n", fetchHits + fetchMisses,
+                fetchHits, fetchMisses, ratio(fetchHits, fetchMisses));
+        out.printf("  data:    %d (%d hits, %d misses, hit ratio %.2f%%)%n", reads - fetchHits - fetchMisses,
+                readHits - fetchHits, readMisses - fetchMisses, ratio(readHits - fetchHits, readMisses - fetchMisses));
+        if (memory.getL2Cache() != null) {
+            out.printf("L2 accesses: %d (%d hits, %d misses, hit ratio %.2f%%)%n", l2Hits + l2Misses,
+                    l2Hits, l2Misses, ratio(l2Hits, l2Misses));
+        }
+        out.printf("writes: %d (%s)%n", writes, memory.describeWritePolicy());
+        out.printf("memory writes: %d (%d write-backs, %d coalesced), %d still owed%n", memoryWrites,
+                memory.getWriteBacks(), memory.getCoalescedWrites(), memory.getPendingWrites());
+        out.printf("memory cycles: %d (%.1f%% of all cycles)%n",
+                memoryCycles, cycles == 0 ? 0.0 : 100.0 * memoryCycles / cycles);
+        if (memory.getL2Cache() == null) {
+            out.printf("average memory access time: %.3f cycles (hit %d, miss %d, write %d)%n",
+                    getAverageMemoryAccessTime(), cacheHitCycles, missCycles(memory.getCache()), memoryWriteCycles);
+        } else {
+            out.printf("average memory access time: %.3f cycles (hit %d, L1 miss %d, L2 miss +%d, write %d)%n",
+                    getAverageMemoryAccessTime(), cacheHitCycles, missCycles(memory.getCache()), l2MissCycles(),
+                    memoryWriteCycles);
+        }
+        out.flush();
+    }
+
+    private static double ratio(long hits, long misses) {
+        return hits + misses == 0 ? 0.0 : 100.0 * hits / (hits + misses);
+    }
+
+    private static int checkCycles(int cycles) {
+        if (cycles < 0) {
+            throw new IllegalArgumentException("Cycle count must not be negative: " + cycles);
+        }
+        return cycles;
+    }
+}
@@ -0,0 +1,11 @@
+package com.gwu.simulator;
+
+/** How much {@link TextTracer} records for each executed instruction. */
+public enum TraceLevel {
+    /** Nothing is recorded; the CPU runs without a tracer. */
+    OFF,
+    /** PC, instruction word, mnemonic and effective address. */
+    OPCODE,
+    /** Everything in OPCODE plus every register the instruction changed. */
+    REGISTERS
+}
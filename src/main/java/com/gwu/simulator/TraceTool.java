@@ -0,0 +1,107 @@
+package com.gwu.simulator;
+
+import java.io.*;
+import java.nio.file.Paths;
+
+/**
+ * Prints records from a binary trace file (see {@link BinaryTraceRecorder}).
+ *
+ * Usage: TraceTool trace.bin [options]
+ *   --pc <low>[-<high>]   only instructions at these addresses (octal)
+ *   --opcode <op>         only this opcode, by mnemonic (LDR) or number; repeatable
+ *   --limit <n>           stop after n matching records
+ *   --count               print only the number of matching records (at most --limit)
+ *   --chunks              list the chunk headers instead of records
+ */
+public class TraceTool {
+    private static final String[] REGISTER_NAMES = { "R0", "R1", "R2", "R3", "X1", "X2", "X3" };
+
+    /** One line per record, in the same spirit as the text trace. */
+    static String format(BinaryTraceReader.Record record) {
+        StringBuilder line = new StringBuilder(96);
+        line.append(String.format("%10d  %06o  %06o  %-4s", record.getIndex(), record.getPC(), record.getIR(),
+                DecodedInstruction.decode(record.getIR()).mnemonic()));
+        if (record.hasEffectiveAddress()) {
+            line.append(String.format("  EA %06o", record.getEffectiveAddress() & 0xFFFF)); // a word, like registers
+        }
+        if (record.getMBR() != record.getIR()) {
+            line.append(String.format("  MBR %06o", record.getMBR()));
+        }
+        for (int k = 0; k < REGISTER_NAMES.length; k++) {
+            if ((record.getWrittenMask() & (1 << k)) != 0) {
+                line.append(String.format("  %s=%06o", REGISTER_NAMES[k], record.registers[k]));
+            }
+        }
+        if (record.isCCChanged()) {
+            line.append(String.format("  CC=%o", record.getCC()));
+        }
+        if (record.isMFRChanged()) {
+            line.append(String.format("  MFR=%o", record.getMFR()));
+        }
+        return line.toString();
+    }
+
+    private static final String USAGE = "Usage: TraceTool <trace-file> [--pc low[-high]] [--opcode op]... [--limit n]"
+            + " [--count] [--chunks]";
+
+    /** Value of the option at {@code args[i]}; exits with the usage line if it is missing. */
+    private static String value(String[] args, int i) {
+        if (i + 1 == args.length) {
+            System.err.println("Missing value for " + args[i]);
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        return args[i + 1];
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        BinaryTraceReader.Filter filter = new BinaryTraceReader.Filter();
+        long limit = Long.MAX_VALUE;
+        boolean countOnly = false;
+        boolean listChunks = false;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--pc" -> {
+                    String[] range = value(args, i).split("-");
+                    int low = Integer.parseInt(range[0], 8);
+                    filter.pcRange(low, range.length > 1 ? Integer.parseInt(range[1], 8) : low);
+                    i++;
+                }
+                case "--opcode" -> {
+                    String value = value(args, i);
+                    int opcode = value.matches("\\d+") ? Integer.parseInt(value) : DecodedInstruction.opcodeFor(value);
+                    if (opcode < 0) {
+                        throw new IllegalArgumentException("Unknown opcode: " + value);
+                    }
+                    filter.opcode(opcode);
+                    i++;
+                }
+                case "--limit" -> {
+                    limit = Long.parseLong(value(args, i));
+                    i++;
+                }
+                case "--count" -> countOnly = true;
+                case "--chunks" -> listChunks = true;
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+        try (BinaryTraceReader reader = new BinaryTraceReader(Paths.get(args[0]))) {
+            if (listChunks) {
+                for (BinaryTraceReader.Chunk chunk : reader.getChunks()) {
+                    out.println(chunk);
+                }
+            } else if (countOnly) {
+                out.println(reader.scan(filter, limit, record -> { }));
+            } else {
+                reader.scan(filter, limit, record -> out.println(format(record)));
+            }
+        }
+        out.flush();
+    }
+}
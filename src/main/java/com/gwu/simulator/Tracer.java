@@ -0,0 +1,32 @@
+package com.gwu.simulator;
+
+/**
+ * Receives a callback around every instruction the CPU executes while a
+ * tracer is installed (see {@link CPU#setTracer(Tracer)}).
+ *
+ * Callbacks run on the execution thread, so implementations should only
+ * capture values and hand them off (for example to an {@link AsyncTraceSink});
+ * formatting and I/O belong on another thread.
+ */
+public interface Tracer {
+    /** Called before the instruction at {@code pc} is fetched. */
+    void beforeInstruction(CPU cpu, int pc);
+
+    /**
+     * Called after the instruction at {@code pc} has executed.
+     * {@link CPU#getLastEffectiveAddress()} holds its effective address if
+     * {@link CPU#hasLastEffectiveAddress()} says it computed one.
+     */
+    void afterInstruction(CPU cpu, int pc, DecodedInstruction instr);
+
+    /**
+     * Called for every data read and write the CPU makes, including indirect
+     * address words, but not for instruction fetches.
+     */
+    default void memoryAccess(CPU cpu, boolean write, int address) {
+    }
+
+    /** Called for front panel Load and Store, which are not instructions. */
+    default void panelAccess(CPU cpu, boolean store, int address, int value) {
+    }
+}
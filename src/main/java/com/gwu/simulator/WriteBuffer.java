@@ -0,0 +1,81 @@
+package com.gwu.simulator;
+
+import java.util.Arrays;
+
+/**
+ * Coalescing write buffer between the caches and memory. It holds up to
+ * {@code entries} blocks waiting to be written; a write to a block that is
+ * already waiting merges into it, and a write that finds the buffer full
+ * first drains the oldest block to memory. Only the traffic is modelled:
+ * Memory stores every word at once, so the buffer keeps block addresses
+ * but no data.
+ */
+final class WriteBuffer {
+    private final int entries;
+    private final int blockShift;
+    private final int[] ring;          // waiting blocks, oldest at head
+    private final boolean[] buffered;  // block -> waiting
+    private int head;
+    private int size;
+    private long coalesced;
+
+    /** A buffer of {@code entries} blocks of {@code blockWords} words (a power of two). */
+    WriteBuffer(int entries, int blockWords) {
+        if (entries < 1) {
+            throw new IllegalArgumentException("Write buffer needs at least one entry: " + entries);
+        }
+        this.entries = entries;
+        this.blockShift = Integer.numberOfTrailingZeros(blockWords);
+        ring = new int[entries];
+        buffered = new boolean[Cache.ADDRESS_SPACE >> blockShift];
+    }
+
+    int getEntries() {
+        return entries;
+    }
+
+    /**
+     * Buffers a write of the word, or block, at {@code address}.
+     * @return Blocks drained to memory to make room (0 or 1)
+     */
+    int write(int address) {
+        int block = address >>> blockShift;
+        if (buffered[block]) {
+            coalesced++;
+            return 0;
+        }
+        int drained = 0;
+        if (size == entries) {
+            buffered[ring[head]] = false;
+            head = (head + 1 == entries) ? 0 : head + 1;
+            size--;
+            drained = 1;
+        }
+        int tail = head + size;
+        ring[tail < entries ? tail : tail - entries] = block;
+        buffered[block] = true;
+        size++;
+        return drained;
+    }
+
+    /** Blocks waiting to be written. */
+    int getPending() {
+        return size;
+    }
+
+    /** Writes merged into a block that was already waiting. */
+    long getCoalesced() {
+        return coalesced;
+    }
+
+    void resetStats() {
+        coalesced = 0;
+    }
+
+    /** Drops every waiting block (power-on reset or restore). */
+    void clear() {
+        Arrays.fill(buffered, false);
+        head = 0;
+        size = 0;
+    }
+}
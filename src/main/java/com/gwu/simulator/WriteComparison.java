@@ -0,0 +1,110 @@
+package com.gwu.simulator;
+
+import java.io.*;
+import java.nio.file.Files;
+
+/**
+ * Runs the same load image once per write policy: write-through and
+ * write-back, each with and without write allocate, and each of those with
+ * and without a write buffer. Prints the stores the program made and the
+ * writes that reached memory, so store-heavy loops can be compared.
+ *
+ * Usage: WriteComparison load.txt [--cache sets:ways:words[:policy]] [--l2 sets:ways:words[:policy]]
+ *        [--write-buffer n] [--input file] [--pc octal] [--max-instructions n]
+ */
+public class WriteComparison {
+
+    /** Outcome of one run. */
+    static class Result {
+        final String mode;
+        final RunStats stats;
+        final Memory memory;
+
+        Result(String mode, RunStats stats, Memory memory) {
+            this.mode = mode;
+            this.stats = stats;
+            this.memory = memory;
+        }
+    }
+
+    /** Runs the image with the given caches and write policy. */
+    static Result runWith(String cache, String l2, WriteMode writeMode, boolean allocate, int buffer,
+            LoadImage image, String input, int startPc, long maxInstructions) {
+        Memory memory = Memory.withCaches(cache, null, null, l2);
+        memory.setWriteMode(writeMode);
+        memory.setWriteAllocate(allocate);
+        memory.setWriteBuffer(buffer);
+        memory.load(image);
+        CPU cpu = new CPU(memory);
+        cpu.setPC(startPc);
+
+        HeadlessRunner runner = new HeadlessRunner(cpu);
+        runner.setInput(new StringReader(input));
+        runner.setOutput(Writer.nullWriter());
+        runner.setInstructionLimit(maxInstructions);
+        String mode = (writeMode == WriteMode.WRITE_BACK ? "back" : "through") + (allocate ? "" : ", no alloc")
+                + (buffer == 0 ? "" : ", buffer " + buffer);
+        return new Result(mode, runner.run(), memory);
+    }
+
+    private static final String USAGE = "Usage: WriteComparison <load-file> [--cache sets:ways:words[:policy]]"
+            + " [--l2 sets:ways:words[:policy]] [--write-buffer n] [--input file] [--pc octal]"
+            + " [--max-instructions n]";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        String loadFile = args[0];
+        String cache = null;
+        String l2 = null;
+        int buffer = 4;
+        String input = "";
+        int startPc = 64; // 0o100 - program entry point
+        long maxInstructions = 10_000_000L;
+        for (int i = 1; i < args.length; i += 2) {
+            if (i + 1 == args.length) { // every option takes a value
+                System.err.println("Missing value for " + args[i]);
+                System.err.println(USAGE);
+                System.exit(2);
+            }
+            switch (args[i]) {
+                case "--cache" -> cache = args[i + 1];
+                case "--l2" -> l2 = args[i + 1];
+                case "--write-buffer" -> buffer = Integer.parseInt(args[i + 1]);
+                case "--input" -> input = new String(Files.readAllBytes(new File(args[i + 1]).toPath()));
+                case "--pc" -> startPc = Integer.parseInt(args[i + 1], 8);
+                case "--max-instructions" -> maxInstructions = Long.parseLong(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        LoadImage image = LoadImage.read(loadFile, Memory.DEFAULT_SIZE);
+        System.out.printf("%-30s %10s %12s %11s %10s %6s%n", "write policy", "stores", "to memory", "write-backs",
+                "coalesced", "owed");
+        long instructions = -1;
+        boolean agree = true;
+        for (WriteMode writeMode : WriteMode.values()) {
+            for (boolean allocate : new boolean[] {true, false}) {
+                for (int entries : buffer == 0 ? new int[] {0} : new int[] {0, buffer}) {
+                    Result result = runWith(cache, l2, writeMode, allocate, entries, image, input, startPc,
+                            maxInstructions);
+                    Memory memory = result.memory;
+                    System.out.printf("%-30s %10d %12d %11d %10d %6d%n", result.mode, memory.getWrites(),
+                            memory.getMemoryWrites(), memory.getWriteBacks(), memory.getCoalescedWrites(),
+                            memory.getPendingWrites());
+                    if (instructions >= 0 && result.stats.getInstructions() != instructions) {
+                        agree = false;
+                    }
+                    instructions = result.stats.getInstructions();
+                }
+            }
+        }
+        if (!agree) {
+            System.out.println("Runs executed different instruction counts");
+            System.exit(1);
+        }
+        System.out.println(instructions + " instructions per run");
+    }
+}
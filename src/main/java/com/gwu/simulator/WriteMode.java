@@ -0,0 +1,7 @@
+package com.gwu.simulator;
+
+/** When a store reaches memory (see Memory.setWriteMode). */
+public enum WriteMode {
+    WRITE_THROUGH, // every store goes on to memory at once
+    WRITE_BACK     // stores mark cache lines dirty; a dirty line goes to memory when evicted
+}
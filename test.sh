@@ -23,3 +23,97 @@ echo ""
 echo "---- Testing Load Store Operations (Register to Register) ----"
 java -jar Assembler.jar 6 test
 echo ""
+
+# The scenarios below run the current sources, built (without the JavaFX GUI)
+# into temp/test as run_bench.sh does; Simulator.jar may predate them.
+mkdir -p temp/test
+javac -d temp/test \
+    src/main/java/com/gwu/simulator/*.java \
+    src/main/java/com/gwu/assembler/Assembler.java \
+    src/main/java/com/gwu/assembler/Instruction.java \
+    src/main/java/com/gwu/assembler/Opcode.java || exit 1
+
+echo "---- Execution engines agree (interpreter vs basic-block vs JIT) ----"
+java -cp temp/test com.gwu.simulator.EngineComparison Program1.txt --input test/program1_input.txt
+java -cp temp/test com.gwu.simulator.EngineComparison test/engine_load.txt
+java -cp temp/test com.gwu.simulator.EngineComparison test/jit_load.txt
+java -cp temp/test com.gwu.simulator.EngineComparison test/jit_fault_load.txt
+echo ""
+
+echo "---- Card reader and CHK (expect 4500 and 20000) ----"
+java -cp temp/test com.gwu.simulator.HeadlessRunner test/card_load.txt --card-reader test/card_deck.txt
+echo ""
+
+echo "---- Conditional breakpoint (expect BREAKPOINT after 1077319 instructions, R1=100) ----"
+java -cp temp/test com.gwu.simulator.HeadlessRunner test/jit_load.txt --engine jit --break 120:R1==100
+echo ""
+
+echo "---- Profile call stacks (expect main 304 and main;SUB 3) ----"
+java -cp temp/test com.gwu.simulator.HeadlessRunner test/engine_load.txt --output /dev/null \
+    --profile test/engine_profile.txt --profile-stacks test/engine_stacks.txt
+cat test/engine_stacks.txt
+rm -f test/engine_profile.txt test/engine_stacks.txt
+echo ""
+
+echo "---- Timing estimate (expect 522 instructions, 7716 cycles) ----"
+java -cp temp/test com.gwu.simulator.HeadlessRunner Program1.txt --input test/program1_input.txt \
+    --output /dev/null --timing - 2>&1 | grep '^Timing'
+echo ""
+
+echo "---- Replacement policies (expect fifo 41.95%, lru 47.86%, plru 52.14%) ----"
+java -cp temp/test com.gwu.simulator.PolicyComparison Program1.txt --input test/program1_input.txt
+echo ""
+
+echo "---- Split L1 and L2 (expect 522 instructions, 4944 cycles) ----"
+java -cp temp/test com.gwu.simulator.HeadlessRunner Program1.txt --input test/program1_input.txt \
+    --output /dev/null --timing - --l1i 1:8:1 --l1d 1:8:1 --l2 4:8:2 2>&1 | grep '^Timing'
+echo ""
+
+echo "---- Write policies on a store-heavy loop (expect through 200001 memory writes, back 120001) ----"
+java -cp temp/test com.gwu.simulator.WriteComparison test/jit_load.txt
+echo ""
+
+echo "---- Prefetchers leave results unchanged (expect next:1 7716 -> 4696 cycles, same architectural state) ----"
+java -cp temp/test com.gwu.simulator.PrefetchComparison Program1.txt --input test/program1_input.txt
+java -cp temp/test com.gwu.simulator.PrefetchComparison test/engine_load.txt --cache 4:2:4:lru | tail -1
+echo ""
+
+echo "---- Cache sweep over a recorded address trace (expect 1:16:1:fifo through 7716 cycles, back 7446) ----"
+java -cp temp/test com.gwu.simulator.HeadlessRunner Program1.txt --input test/program1_input.txt \
+    --output /dev/null --address-trace test/program1.trace
+java -cp temp/test com.gwu.simulator.CacheSweep test/program1.trace --sizes 16,32 --ways 2,full --blocks 1
+rm -f test/program1.trace
+echo ""
+
+echo "---- Memory statistics (expect fetch 522, read 175, write 110, indirect 166) ----"
+java -cp temp/test com.gwu.simulator.HeadlessRunner Program1.txt --input test/program1_input.txt \
+    --output /dev/null --stats - 2>&1 | grep -A5 '^Memory statistics'
+echo ""
+
+echo "---- Binary trace records every instruction (expect 522) ----"
+java -cp temp/test com.gwu.simulator.HeadlessRunner Program1.txt --input test/program1_input.txt \
+    --output /dev/null --trace-binary test/program1_trace.bin
+java -cp temp/test com.gwu.simulator.TraceTool test/program1_trace.bin --count
+rm -f test/program1_trace.bin
+echo ""
+
+echo "---- Checkpoint and restore (expect 80010 instructions after restoring at 1000000) ----"
+java -cp temp/test com.gwu.simulator.HeadlessRunner test/jit_load.txt \
+    --checkpoint-every 500000 --checkpoint-file test/jit_load
+java -cp temp/test com.gwu.simulator.HeadlessRunner test/jit_load.txt --restore test/jit_load.1000000.ckpt
+rm -f test/jit_load.*.ckpt
+echo ""
+
+echo "---- Full 12-bit memory (expect FAULT at 4095 with 2048 words, 668 with 4096 on or off the heap) ----"
+java -cp temp/test com.gwu.simulator.HeadlessRunner test/high_memory_load.txt
+java -cp temp/test com.gwu.simulator.HeadlessRunner test/high_memory_load.txt --memory-size 4096
+java -cp temp/test com.gwu.simulator.HeadlessRunner test/high_memory_load.txt --memory-size 4096 \
+    --memory-backend offheap --engine jit
+echo ""
+
+echo "---- Batch run of Program 1 over several input vectors ----"
+java -cp temp/test com.gwu.simulator.BatchRunner Program1.txt test/program1_corpus.txt
+echo ""
+
+# Clean up
+rm -rf temp